@@ -0,0 +1,161 @@
+package com.wildducktheories.promise.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+
+/**
+ * Measures the cost of the {@link API} factory methods: <code>resolved()</code>, <code>rejected()</code>
+ * and the <code>when()</code> round trip from the synchronous thread to an asynchronous thread and back.
+ * <p>
+ * The <code>when()</code> benchmarks include the cost of establishing the execution context with
+ * {@link API#call(Callable)} so that they can be compared directly with
+ * {@link CompletableFutureBenchmark#supplyAsyncJoin()}.
+ * <p>
+ * The batch benchmarks compare submitting {@link #BATCH} callables one <code>when()</code> at a time with
+ * submitting them all with <code>whenAll()</code>; their scores are per callable.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class APIImplBenchmark {
+
+	private static final Object VALUE = new Object();
+	private static final Object FAILURE = new Object();
+	private static final int BATCH = 1000;
+
+	private API api;
+	private Object sink;
+
+	private final Callable<Object> callable = new Callable<Object>() {
+		@Override
+		public Object call() {
+			return VALUE;
+		}
+	};
+
+	private final Runnable runnable = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	private final DoneCallback<Object> done = new DoneCallback<Object>() {
+		@Override
+		public void onDone(Object p) {
+			sink = p;
+		}
+	};
+
+	private final DoneCallback<Void> doneVoid = new DoneCallback<Void>() {
+		@Override
+		public void onDone(Void p) {
+			sink = p;
+		}
+	};
+
+	private final DoneCallback<List<Object>> doneList = new DoneCallback<List<Object>>() {
+		@Override
+		public void onDone(List<Object> p) {
+			sink = p;
+		}
+	};
+
+	private final List<Callable<Object>> batch = new ArrayList<Callable<Object>>();
+
+	@Setup
+	public void setup() {
+		api = PromiseAPI.get();
+		for (int i = 0; i < BATCH; i++) {
+			batch.add(callable);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		PromiseAPI.reset();
+	}
+
+	@Benchmark
+	public Promise<Object, Object> resolved() {
+		return api.resolved(VALUE, Object.class, Object.class);
+	}
+
+	@Benchmark
+	public Promise<Object, Object> rejected() {
+		return api.rejected(FAILURE, Object.class, Object.class);
+	}
+
+	@Benchmark
+	public Object whenCallable() throws Exception {
+		api.call(new Callable<Void>() {
+			@Override
+			public Void call() {
+				api.when(callable).done(done);
+				return null;
+			}
+		});
+		return sink;
+	}
+
+	@Benchmark
+	public Object whenRunnable() {
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api.when(runnable).done(doneVoid);
+			}
+		});
+		return sink;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public Object whenBatch() {
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				final List<Promise<Object, Exception>> promises = new ArrayList<Promise<Object, Exception>>(BATCH);
+				for (Callable<Object> c : batch) {
+					promises.add(api.when(c));
+				}
+				api.all(promises).done(doneList);
+			}
+		});
+		return sink;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public Object whenAllBatch() {
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api.<Object>whenAll(batch).done(doneList);
+			}
+		});
+		return sink;
+	}
+}
@@ -0,0 +1,194 @@
+package com.wildducktheories.promise.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link CompletableFuture} equivalents of the {@link DeferredImplBenchmark} and
+ * {@link APIImplBenchmark} benchmarks. Benchmark names match those of the equivalent
+ * promise benchmark so that results can be compared side by side.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompletableFutureBenchmark {
+
+	private static final Object VALUE = new Object();
+	private static final RuntimeException FAILURE = new RuntimeException("failure", null, false, false) {
+		private static final long serialVersionUID = 1L;
+	};
+
+	private Object sink;
+
+	private final Consumer<Object> done = new Consumer<Object>() {
+		@Override
+		public void accept(Object p) {
+			sink = p;
+		}
+	};
+
+	private final Function<Throwable, Object> fail = new Function<Throwable, Object>() {
+		@Override
+		public Object apply(Throwable f) {
+			sink = f;
+			return null;
+		}
+	};
+
+	private final BiConsumer<Object, Throwable> complete = new BiConsumer<Object, Throwable>() {
+		@Override
+		public void accept(Object p, Throwable f) {
+			sink = f == null ? p : f;
+		}
+	};
+
+	private final Function<Object, Object> identity = new Function<Object, Object>() {
+		@Override
+		public Object apply(Object p) {
+			return p;
+		}
+	};
+
+	private final Function<Object, CompletionStage<Object>> resolved = new Function<Object, CompletionStage<Object>>() {
+		@Override
+		public CompletionStage<Object> apply(Object p) {
+			return CompletableFuture.completedFuture(p);
+		}
+	};
+
+	private final Supplier<Object> supplier = new Supplier<Object>() {
+		@Override
+		public Object get() {
+			return VALUE;
+		}
+	};
+
+	@Benchmark
+	public Object resolve() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.complete(VALUE);
+		return future;
+	}
+
+	@Benchmark
+	public Object reject() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.completeExceptionally(FAILURE);
+		return future;
+	}
+
+	@Benchmark
+	public Object doneBefore() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.thenAccept(done);
+		future.complete(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object doneAfter() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.complete(VALUE);
+		future.thenAccept(done);
+		return sink;
+	}
+
+	@Benchmark
+	public Object failBefore() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.exceptionally(fail);
+		future.completeExceptionally(FAILURE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object failAfter() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.completeExceptionally(FAILURE);
+		future.exceptionally(fail);
+		return sink;
+	}
+
+	@Benchmark
+	public Object completeBefore() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.whenComplete(complete);
+		future.complete(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object completeAfter() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.complete(VALUE);
+		future.whenComplete(complete);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenBefore() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.thenApply(identity).thenAccept(done);
+		future.complete(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenAfter() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.complete(VALUE);
+		future.thenApply(identity).thenAccept(done);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenPromiseBefore() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.thenCompose(resolved).thenAccept(done);
+		future.complete(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenPromiseAfter() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.complete(VALUE);
+		future.thenCompose(resolved).thenAccept(done);
+		return sink;
+	}
+
+	@Benchmark
+	public Object resolved() {
+		return CompletableFuture.completedFuture(VALUE);
+	}
+
+	@Benchmark
+	public Object rejected() {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		future.completeExceptionally(FAILURE);
+		return future;
+	}
+
+	@Benchmark
+	public Object supplyAsyncJoin() {
+		return CompletableFuture.supplyAsync(supplier).thenAccept(done).join();
+	}
+}
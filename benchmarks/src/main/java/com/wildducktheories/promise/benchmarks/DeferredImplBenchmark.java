@@ -0,0 +1,189 @@
+package com.wildducktheories.promise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wildducktheories.promise.CompletionCallback;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Filter;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.promise.impl.DeferredImpl;
+
+/**
+ * Measures the cost of the {@link DeferredImpl} resolution and registration paths.
+ * <p>
+ * Each registration benchmark comes in two flavours: <code>...Before</code> registers the
+ * callback or filter while the promise is still pending (and so pays for the pending
+ * callback bookkeeping) and <code>...After</code> registers it once the promise has
+ * already been resolved or rejected.
+ * <p>
+ * Run with <code>-prof gc</code> to obtain the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeferredImplBenchmark {
+
+	private static final Object VALUE = new Object();
+	private static final Object FAILURE = new Object();
+
+	private Object sink;
+
+	private final DoneCallback<Object> done = new DoneCallback<Object>() {
+		@Override
+		public void onDone(Object p) {
+			sink = p;
+		}
+	};
+
+	private final FailCallback<Object> fail = new FailCallback<Object>() {
+		@Override
+		public void onFail(Object f) {
+			sink = f;
+		}
+	};
+
+	private final CompletionCallback<Object, Object> complete = new CompletionCallback<Object, Object>() {
+		@Override
+		public void onDone(Object p) {
+			sink = p;
+		}
+
+		@Override
+		public void onFail(Object f) {
+			sink = f;
+		}
+	};
+
+	private final Filter<Object, Object> identity = new Filter<Object, Object>() {
+		@Override
+		public Object filter(Object p) {
+			return p;
+		}
+	};
+
+	private final Filter<Object, Promise<Object, Object>> resolved = new Filter<Object, Promise<Object, Object>>() {
+		@Override
+		public Promise<Object, Object> filter(Object p) {
+			return new DeferredImpl<Object, Object>().resolve(p).promise();
+		}
+	};
+
+	@TearDown
+	public void tearDown() {
+		PromiseAPI.reset();
+	}
+
+	@Benchmark
+	public Object resolve() {
+		return new DeferredImpl<Object, Object>().resolve(VALUE);
+	}
+
+	@Benchmark
+	public Object reject() {
+		return new DeferredImpl<Object, Object>().reject(FAILURE);
+	}
+
+	@Benchmark
+	public Object doneBefore() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.done(done);
+		deferred.resolve(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object doneAfter() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.resolve(VALUE);
+		deferred.done(done);
+		return sink;
+	}
+
+	@Benchmark
+	public Object failBefore() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.fail(fail);
+		deferred.reject(FAILURE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object failAfter() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.reject(FAILURE);
+		deferred.fail(fail);
+		return sink;
+	}
+
+	@Benchmark
+	public Object completeBefore() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.complete(complete);
+		deferred.resolve(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object completeAfter() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.resolve(VALUE);
+		deferred.complete(complete);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenBefore() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.then(identity).done(done);
+		deferred.resolve(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenAfter() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.resolve(VALUE);
+		deferred.then(identity).done(done);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenChainBefore() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.then(identity).then(identity).then(identity).then(identity).then(identity).done(done);
+		deferred.resolve(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenPromiseBefore() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.thenPromise(resolved).done(done);
+		deferred.resolve(VALUE);
+		return sink;
+	}
+
+	@Benchmark
+	public Object thenPromiseAfter() {
+		final DeferredImpl<Object, Object> deferred = new DeferredImpl<Object, Object>();
+		deferred.resolve(VALUE);
+		deferred.thenPromise(resolved).done(done);
+		return sink;
+	}
+}
@@ -1,6 +1,14 @@
 package com.wildducktheories.promise;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Publisher;
 
 import com.wildducktheories.tasklet.Scheduler;
 import com.wildducktheories.tasklet.SchedulerNotRunningException;
@@ -31,6 +39,9 @@ public interface API extends com.wildducktheories.api.API {
 
 	/**
 	 * Returns a resolved promise for a value of the specified type.
+	 * <p>
+	 * Resolved promises for common values (e.g. <code>null</code> and {@link Boolean#TRUE}) may be 
+	 * shared, immutable instances, so callers must not rely on the identity of the returned {@link Promise}.
 	 * @param resolution The resolution of the promise.
 	 * @param promiseType The promise type.
 	 * @param failureType The failure type.
@@ -41,6 +52,9 @@ public interface API extends com.wildducktheories.api.API {
 
 	/**
 	 * Returns a rejected promise for a value of the specified type.
+	 * <p>
+	 * Rejected promises for common values (e.g. <code>null</code> and {@link Boolean#TRUE}) may be 
+	 * shared, immutable instances, so callers must not rely on the identity of the returned {@link Promise}.
 	 * @param rejection The rejection of the promise.
 	 * @param promiseType The promise type.
 	 * @param failureType The failure type.
@@ -55,6 +69,168 @@ public interface API extends com.wildducktheories.api.API {
 	 */
 	public abstract <P, F> Deferred<P, F> deferred();
 
+	/**
+	 * Return a completable {@link IntDeferred} instance which stores its promised <code>int</code> unboxed.
+	 * @return A completable {@link IntDeferred} instance.
+	 */
+	public abstract <F> IntDeferred<F> intDeferred();
+
+	/**
+	 * Return a completable {@link LongDeferred} instance which stores its promised <code>long</code> unboxed.
+	 * @return A completable {@link LongDeferred} instance.
+	 */
+	public abstract <F> LongDeferred<F> longDeferred();
+
+	/**
+	 * Return a completable {@link DoubleDeferred} instance which stores its promised <code>double</code> unboxed.
+	 * @return A completable {@link DoubleDeferred} instance.
+	 */
+	public abstract <F> DoubleDeferred<F> doubleDeferred();
+
+	/**
+	 * Returns an {@link IntPromise} for the unboxed value of a generic {@link Promise}. 
+	 * See {@link IntPromise#boxed()} for the reverse conversion.
+	 * <p>
+	 * A <code>null</code> resolution, which has no unboxed value, rejects the returned promise with a 
+	 * <code>null</code> failure.
+	 * @param promise A generic {@link Promise}.
+	 * @return An {@link IntPromise} that is resolved or rejected when the specified {@link Promise} is.
+	 */
+	public abstract <F> IntPromise<F> asIntPromise(Promise<Integer, F> promise);
+
+	/**
+	 * Returns a {@link LongPromise} for the unboxed value of a generic {@link Promise}. 
+	 * See {@link LongPromise#boxed()} for the reverse conversion.
+	 * <p>
+	 * A <code>null</code> resolution, which has no unboxed value, rejects the returned promise with a 
+	 * <code>null</code> failure.
+	 * @param promise A generic {@link Promise}.
+	 * @return A {@link LongPromise} that is resolved or rejected when the specified {@link Promise} is.
+	 */
+	public abstract <F> LongPromise<F> asLongPromise(Promise<Long, F> promise);
+
+	/**
+	 * Returns a {@link DoublePromise} for the unboxed value of a generic {@link Promise}. 
+	 * See {@link DoublePromise#boxed()} for the reverse conversion.
+	 * <p>
+	 * A <code>null</code> resolution, which has no unboxed value, rejects the returned promise with a 
+	 * <code>null</code> failure.
+	 * @param promise A generic {@link Promise}.
+	 * @return A {@link DoublePromise} that is resolved or rejected when the specified {@link Promise} is.
+	 */
+	public abstract <F> DoublePromise<F> asDoublePromise(Promise<Double, F> promise);
+
+	/**
+	 * Returns a {@link Promise} for the outcome of a {@link CompletionStage} (e.g. a {@link CompletableFuture}).
+	 * <p>
+	 * If the stage is a {@link CompletableFuture} that has already completed, a settled promise is returned 
+	 * without registering anything with the stage. Otherwise the returned promise is itself the action 
+	 * registered with the stage, so no intermediate {@link Deferred} is allocated. Either way, callbacks 
+	 * registered with the returned promise are delivered on the synchronous thread of the current {@link Scheduler}
+	 * at the time of registration, like those of any other promise.
+	 * <p>
+	 * A stage that completes exceptionally rejects the promise with the cause of the failure, unwrapped 
+	 * from any {@link java.util.concurrent.CompletionException}. Cancelling the stage cancels the promise and
+	 * cancelling the promise cancels the stage, if it is a {@link java.util.concurrent.Future}.
+	 * @param stage A {@link CompletionStage}.
+	 * @return A {@link Promise} that is resolved or rejected when the stage completes.
+	 */
+	public abstract <P> Promise<P, Throwable> asPromise(CompletionStage<P> stage);
+
+	/**
+	 * Returns a {@link CompletableFuture} for the outcome of a {@link Promise}.
+	 * <p>
+	 * The future is completed directly by the thread that resolves or rejects the promise, or immediately if 
+	 * the promise is already settled, without a hop through the current {@link Scheduler}; actions registered 
+	 * with the future run according to the rules of {@link CompletableFuture}. A rejection that is not a 
+	 * {@link Throwable} completes the future exceptionally with a {@link RejectedException}.
+	 * <p>
+	 * Cancelling the future cancels the promise, unless the promise has other callbacks or derived promises 
+	 * that still require its result.
+	 * @param promise A {@link Promise}.
+	 * @return A {@link CompletableFuture} that is completed when the promise is resolved or rejected.
+	 */
+	public abstract <P, F> CompletableFuture<P> asCompletableFuture(Promise<P, F> promise);
+
+	/**
+	 * Returns a promise that is resolved with the resolutions of all the specified promises, in iteration
+	 * order, once all of them have been resolved, or which is rejected with the rejection of the first of 
+	 * them to be rejected.
+	 * <p>
+	 * The returned promise is delivered with a single hop onto the synchronous thread of the {@link Scheduler}
+	 * current at the time callbacks are registered with it, irrespective of the number of specified promises.
+	 * @param promises The promises to be joined.
+	 * @return A {@link Promise} for the list of resolutions.
+	 */
+	public abstract <P, F> Promise<List<P>, F> all(Collection<? extends Promise<P, F>> promises);
+
+	/**
+	 * Returns a promise that is resolved with the resolutions of all the specified promises, in argument
+	 * order, once all of them have been resolved, or which is rejected with the rejection of the first of 
+	 * them to be rejected.
+	 * @param promises The promises to be joined.
+	 * @return A {@link Promise} for the list of resolutions.
+	 * @see #all(Collection)
+	 */
+	@SuppressWarnings("unchecked")
+	public abstract <P, F> Promise<List<P>, F> all(Promise<P, F>... promises);
+
+	/**
+	 * Returns a promise that is resolved or rejected with the outcome of the first of the specified 
+	 * promises to be resolved or rejected.
+	 * <p>
+	 * Once the returned promise is settled, it stops waiting on the other promises so that 
+	 * it does not retain them or keep the current {@link Scheduler} waiting for them. Those of the other promises
+	 * that nothing else is waiting on are then cancelled, so that the work still in progress on their behalf is 
+	 * abandoned: a losing promise that is only observed by the returned promise, such as the promise of a 
+	 * {@link Deferred} that is raced before any callback is registered with it, ignores a later resolution or 
+	 * rejection. Register a callback with a promise before racing it to keep it from being cancelled.
+	 * @param promises The competing promises.
+	 * @return A {@link Promise} for the first outcome.
+	 * @throws IllegalArgumentException If no promises are specified.
+	 */
+	public abstract <P, F> Promise<P, F> race(Collection<? extends Promise<P, F>> promises);
+
+	/**
+	 * Returns a promise that is resolved or rejected with the outcome of the first of the specified 
+	 * promises to be resolved or rejected.
+	 * The promises that lose are cancelled unless something else is waiting on them.
+	 * @param promises The competing promises.
+	 * @return A {@link Promise} for the first outcome.
+	 * @throws IllegalArgumentException If no promises are specified.
+	 * @see #race(Collection)
+	 */
+	@SuppressWarnings("unchecked")
+	public abstract <P, F> Promise<P, F> race(Promise<P, F>... promises);
+
+	/**
+	 * Returns a promise that is resolved with the resolution of the first of the specified promises to 
+	 * be resolved, or which is rejected with the last rejection if all of them are rejected.
+	 * <p>
+	 * Once the returned promise is settled, it stops waiting on the other promises so that 
+	 * it does not retain them or keep the current {@link Scheduler} waiting for them. Those of the other promises
+	 * that nothing else is waiting on are then cancelled, so that the work still in progress on their behalf is 
+	 * abandoned: a losing promise that is only observed by the returned promise, such as the promise of a 
+	 * {@link Deferred} that is raced before any callback is registered with it, ignores a later resolution or 
+	 * rejection. Register a callback with a promise before racing it to keep it from being cancelled.
+	 * @param promises The competing promises.
+	 * @return A {@link Promise} for the first resolution.
+	 * @throws IllegalArgumentException If no promises are specified.
+	 */
+	public abstract <P, F> Promise<P, F> any(Collection<? extends Promise<P, F>> promises);
+
+	/**
+	 * Returns a promise that is resolved with the resolution of the first of the specified promises to 
+	 * be resolved, or which is rejected with the last rejection if all of them are rejected.
+	 * The promises that lose are cancelled unless something else is waiting on them.
+	 * @param promises The competing promises.
+	 * @return A {@link Promise} for the first resolution.
+	 * @throws IllegalArgumentException If no promises are specified.
+	 * @see #any(Collection)
+	 */
+	@SuppressWarnings("unchecked")
+	public abstract <P, F> Promise<P, F> any(Promise<P, F>... promises);
+
 	/**
 	 * Schedules the specified {@link Callable} asynchronously with respect to the synchronous thread of the 
 	 * current thread's current {@link Scheduler} instance.
@@ -154,6 +330,144 @@ public interface API extends com.wildducktheories.api.API {
 	 */
 	public abstract Promise<Void, RuntimeException> when(Runnable runnable);
 
+	/**
+	 * Submits the specified {@link Callable} to the specified {@link Executor}, which allows blocking work to 
+	 * be run somewhere other than the asynchronous threads of the current {@link Scheduler}, for example on 
+	 * virtual threads or on a bounded pool of platform threads.
+	 * <p>
+	 * As with {@link #when(Callable)}, the returned {@link Promise} is delivered on the synchronous thread of 
+	 * the current {@link Scheduler}, which also waits for the promise to be settled before its {@link Scheduler#run()} 
+	 * returns, but the call-site does not require the {@link Scheduler} to be running. If the {@link Executor} rejects 
+	 * the work, the promise is rejected with the {@link java.util.concurrent.RejectedExecutionException}.
+	 * @param callable The {@link Callable} to be called.
+	 * @param executor The {@link Executor} that calls it.
+	 * @return A {@link Promise} for the result of the {@link Callable}.
+	 */
+	public abstract <P> Promise<P, Exception> when(Callable<P> callable, Executor executor);
+
+	/**
+	 * Submits the specified {@link Runnable} to the specified {@link Executor}.
+	 * @param runnable The {@link Runnable} to be run.
+	 * @param executor The {@link Executor} that runs it.
+	 * @return A {@link Promise} which is delivered on the current {@link Scheduler}'s synchronous thread
+	 * when the specified {@link Runnable} finishes.
+	 * @see #when(Callable, Executor)
+	 */
+	public abstract Promise<Void, RuntimeException> when(Runnable runnable, Executor executor);
+
+	/**
+	 * Schedules all the specified {@link Callable}s asynchronously, as per {@link #when(Callable)}, and returns 
+	 * a single promise for their results.
+	 * <p>
+	 * Rather than scheduling each {@link Callable} separately, the callables are divided into a small number of
+	 * contiguous chunks (a few per available processor) and each chunk is scheduled once and calls its callables 
+	 * in turn. Use {@link #whenAll(Collection, int)} to choose the chunk size explicitly, for example to allow
+	 * more blocking callables to run concurrently.
+	 * <p>
+	 * The call-site requires the same execution context as {@link #when(Callable)}.
+	 * @param callables The callables.
+	 * @return A {@link Promise} that is resolved with the results of the callables, in iteration order, once all 
+	 * of them have returned, or rejected with the first exception thrown by any of them, in which case callables 
+	 * which have not yet been called are skipped.
+	 */
+	public abstract <P> Promise<List<P>, Exception> whenAll(Collection<? extends Callable<? extends P>> callables);
+
+	/**
+	 * Schedules all the specified {@link Callable}s asynchronously in chunks of the specified size and returns
+	 * a single promise for their results.
+	 * @param callables The callables.
+	 * @param chunkSize The maximum number of callables called in turn by each scheduled chunk.
+	 * @return A {@link Promise} for the results of the callables.
+	 * @throws IllegalArgumentException If chunkSize is not positive.
+	 * @see #whenAll(Collection)
+	 */
+	public abstract <P> Promise<List<P>, Exception> whenAll(Collection<? extends Callable<? extends P>> callables, int chunkSize);
+
+	/**
+	 * Returns a promise that is resolved once the specified delay has elapsed.
+	 * <p>
+	 * All delays (and {@link Promise#timeout(long, TimeUnit, Object)} timeouts) share a single timer thread,
+	 * so a pending delay costs no more than a pending {@link Promise}, but a delay may be resolved a few 
+	 * milliseconds late. Cancelling the returned promise cancels the delay.
+	 * @param delay The delay.
+	 * @param unit The unit of the delay.
+	 * @return A {@link Promise} that is resolved after the specified delay.
+	 */
+	public abstract Promise<Void, RuntimeException> delay(long delay, TimeUnit unit);
+
+	/**
+	 * Schedules the specified {@link Callable} asynchronously, as per {@link #when(Callable)}, once the
+	 * specified delay has elapsed.
+	 * <p>
+	 * The call-site requires the same execution context as {@link #when(Callable)}, which the {@link Scheduler} must 
+	 * still provide when the delay elapses. Cancelling the returned promise before the delay has elapsed 
+	 * cancels the delay, so the {@link Callable} is never called. 
+	 * @param delay The delay.
+	 * @param unit The unit of the delay.
+	 * @param callable The {@link Callable} to be called after the delay.
+	 * @return A {@link Promise} for the result of the {@link Callable}.
+	 * @see #delay(long, TimeUnit)
+	 */
+	public abstract <P> Promise<P, Exception> after(long delay, TimeUnit unit, Callable<P> callable);
+
+	/**
+	 * Returns a {@link Publisher} that publishes the resolution of a {@link Promise} as a single element, followed 
+	 * by completion, or signals its rejection as an error. A resolution of null, which Reactive Streams does not allow
+	 * as an element, is signalled by completion alone. A rejection that is not a {@link Throwable} is signalled
+	 * as a {@link RejectedException}, and a cancelled promise as a {@link java.util.concurrent.CancellationException}.
+	 * <p>
+	 * Subscribers are signalled directly on the thread that settles the promise, or on the thread that requests
+	 * the element if that happens later, without a hop through the current {@link Scheduler}. Cancelling a
+	 * subscription cancels the promise, unless the promise has other callbacks or derived promises that still
+	 * require its result.
+	 * <p>
+	 * The Reactive Streams interfaces are used, rather than {@link java.util.concurrent.Flow} itself, so that this
+	 * library continues to run on Java 8; on later JVMs, <code>org.reactivestreams.FlowAdapters</code> converts
+	 * between the two without buffering.
+	 * @param promise A {@link Promise}.
+	 * @return A single element {@link Publisher}.
+	 */
+	public abstract <P, F> Publisher<P> asPublisher(Promise<P, F> promise);
+
+	/**
+	 * Returns a lazy {@link PromiseStream} of the elements published by a {@link Publisher}, which may then be 
+	 * collected into a list or reduced into a single promise.
+	 * <p>
+	 * The publisher is subscribed to when the stream is consumed, and is only ever asked for as many elements 
+	 * as fit in the next batch of the stream, so a slow consumer holds back the publisher rather than causing
+	 * elements to be buffered. Closing the stream (for example, by cancelling the promise returned by its terminal
+	 * operation, or by <code>take()</code>) cancels the subscription.
+	 * @param publisher A {@link Publisher}.
+	 * @return A {@link PromiseStream} of the published elements, which fails with the error signalled by the
+	 * publisher, if any.
+	 * @see #asPublisher(Promise)
+	 */
+	public abstract <T> PromiseStream<T, Throwable> asStream(Publisher<? extends T> publisher);
+
+	/**
+	 * Returns a lazy {@link PromiseStream} of the values supplied by the specified {@link StreamSource}, which are
+	 * requested in batches of at most 64 values.
+	 * @param source The source of the values.
+	 * @return A {@link PromiseStream} of the values of the source.
+	 */
+	public abstract <T, F> PromiseStream<T, F> stream(StreamSource<T, F> source);
+
+	/**
+	 * Returns a lazy {@link PromiseStream} of the values supplied by the specified {@link StreamSource}, which are
+	 * requested in batches of at most the specified size.
+	 * @param source The source of the values.
+	 * @param batchSize The maximum number of values requested from the source at once.
+	 * @return A {@link PromiseStream} of the values of the source.
+	 * @throws IllegalArgumentException If batchSize is not positive.
+	 */
+	public abstract <T, F> PromiseStream<T, F> stream(StreamSource<T, F> source, int batchSize);
+
+	/**
+	 * Returns a new {@link DeferredStream}, whose producer pushes the values of its {@link PromiseStream}.
+	 * @return A new {@link DeferredStream}.
+	 */
+	public abstract <T, F> DeferredStream<T, F> deferredStream();
+
 	/**
 	 * Releases thread local resources that MAY be allocated by use of {@link PromiseAPI} methods outside
 	 * of an active {@link API#call(Callable)} and {@link API#run(Runnable)} call.
@@ -14,6 +14,8 @@ package com.wildducktheories.promise;
 public interface Deferred<P,F> {
 	/**
 	 * Resolve the promise associated with the receiver.
+	 * <p>
+	 * If the promise has been cancelled, the resolution is silently discarded.
 	 * @param p The value of the promise.
 	 * @return The receiver.
 	 * @throws IllegalStateException If the promise has already been resolved or rejected.
@@ -22,6 +24,8 @@ public interface Deferred<P,F> {
 
 	/**
 	 * Reject the promise associated with the receiver.
+	 * <p>
+	 * If the promise has been cancelled, the rejection is silently discarded.
 	 * @param f The value of the rejection.
 	 * @return The receiver.
 	 * @throws IllegalStateException If the promise has already been resolved or rejected.
@@ -34,4 +38,11 @@ public interface Deferred<P,F> {
 	 * result or failure.
 	 */
 	public Promise<P,F> promise();
+	
+	/**
+	 * @return true if the promise associated with the receiver has been cancelled by a consumer. Code producing
+	 * the result can use this to abandon work that is no longer required.
+	 * @see Promise#cancel()
+	 */
+	public boolean isCancelled();
 }
@@ -0,0 +1,48 @@
+package com.wildducktheories.promise;
+
+/**
+ * The producer side of a {@link PromiseStream} whose values are pushed by a producer, for example from an event
+ * feed or a subscription, rather than pulled from a {@link StreamSource}.
+ * <p>
+ * Values may be emitted from any thread; they are buffered until the stream requests them. To honour the
+ * demand of the stream, producers should emit no more than <code>getDemand()</code> values before checking
+ * it again.
+ *
+ * @author jonseymour
+ *
+ * @param <T> The type of the values.
+ * @param <F> The failure type.
+ * @see API#deferredStream()
+ */
+public interface DeferredStream<T, F> {
+
+	/**
+	 * Emit the next value of the stream.
+	 * @param t The value.
+	 * @return false if the stream has ended, failed or been closed by its consumer, in which case the value is
+	 * discarded and the producer should stop.
+	 */
+	public boolean emit(T t);
+
+	/**
+	 * End the stream, once the values already emitted have been delivered.
+	 */
+	public void end();
+
+	/**
+	 * Fail the stream, once the values already emitted have been delivered.
+	 * @param f The failure.
+	 */
+	public void fail(F f);
+
+	/**
+	 * @return The number of values the consumer of the stream is ready to receive, which is zero until the
+	 * stream is consumed and once enough values to fill its next batch have been buffered.
+	 */
+	public long getDemand();
+
+	/**
+	 * @return The stream of the emitted values.
+	 */
+	public PromiseStream<T, F> stream();
+}
@@ -0,0 +1,31 @@
+package com.wildducktheories.promise;
+
+/**
+ * A specialisation of {@link Deferred} for promised values of type <code>double</code> which 
+ * stores the promised value without boxing it.
+ *
+ * @param <F> The failure type.
+ * @see API#doubleDeferred()
+ */
+public interface DoubleDeferred<F> {
+	/**
+	 * Resolve the promise associated with the receiver.
+	 * @param p The value of the promise.
+	 * @return The receiver.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	public DoubleDeferred<F> resolve(double p);
+
+	/**
+	 * Reject the promise associated with the receiver.
+	 * @param f The value of the rejection.
+	 * @return The receiver.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	public DoubleDeferred<F> reject(F f);
+
+	/**
+	 * @return The {@link DoublePromise} associated with the receiver.
+	 */
+	public DoublePromise<F> promise();
+}
@@ -0,0 +1,14 @@
+package com.wildducktheories.promise;
+
+/**
+ * A callback that is used to receive the value of a resolved {@link DoublePromise} without boxing.
+ *
+ * @see DoublePromise#done(DoubleDoneCallback)
+ */
+public interface DoubleDoneCallback {
+	/**
+	 * Called to communicate the value of a resolved {@link DoublePromise}.
+	 * @param p The resolved {@link DoublePromise} value.
+	 */
+	public void onDone(double p);
+}
@@ -0,0 +1,15 @@
+package com.wildducktheories.promise;
+
+/**
+ * A filter used to transform a <code>double</code> into another <code>double</code> without boxing.
+ *
+ * @see DoublePromise#then(DoubleFilter)
+ */
+public interface DoubleFilter {
+	/**
+	 * @param p
+	 *            A value of type <code>double</code>.
+	 * @return A transformed value of type <code>double</code>.
+	 */
+	double filter(double p);
+}
@@ -0,0 +1,31 @@
+package com.wildducktheories.promise;
+
+/**
+ * A specialisation of {@link Deferred} for promised values of type <code>int</code> which 
+ * stores the promised value without boxing it.
+ *
+ * @param <F> The failure type.
+ * @see API#intDeferred()
+ */
+public interface IntDeferred<F> {
+	/**
+	 * Resolve the promise associated with the receiver.
+	 * @param p The value of the promise.
+	 * @return The receiver.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	public IntDeferred<F> resolve(int p);
+
+	/**
+	 * Reject the promise associated with the receiver.
+	 * @param f The value of the rejection.
+	 * @return The receiver.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	public IntDeferred<F> reject(F f);
+
+	/**
+	 * @return The {@link IntPromise} associated with the receiver.
+	 */
+	public IntPromise<F> promise();
+}
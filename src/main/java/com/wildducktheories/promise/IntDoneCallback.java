@@ -0,0 +1,14 @@
+package com.wildducktheories.promise;
+
+/**
+ * A callback that is used to receive the value of a resolved {@link IntPromise} without boxing.
+ *
+ * @see IntPromise#done(IntDoneCallback)
+ */
+public interface IntDoneCallback {
+	/**
+	 * Called to communicate the value of a resolved {@link IntPromise}.
+	 * @param p The resolved {@link IntPromise} value.
+	 */
+	public void onDone(int p);
+}
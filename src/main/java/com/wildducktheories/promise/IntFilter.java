@@ -0,0 +1,15 @@
+package com.wildducktheories.promise;
+
+/**
+ * A filter used to transform an <code>int</code> into another <code>int</code> without boxing.
+ *
+ * @see IntPromise#then(IntFilter)
+ */
+public interface IntFilter {
+	/**
+	 * @param p
+	 *            A value of type <code>int</code>.
+	 * @return A transformed value of type <code>int</code>.
+	 */
+	int filter(int p);
+}
@@ -0,0 +1,42 @@
+package com.wildducktheories.promise;
+
+import com.wildducktheories.tasklet.Scheduler;
+
+/**
+ * A specialisation of {@link Promise} for promised values of type <code>int</code>. Values are
+ * stored, transformed and delivered without boxing.
+ * <p>
+ * As with {@link Promise}, callbacks are delivered on the synchronous {@link Thread} of the 
+ * current {@link Thread}'s {@link Scheduler} at the time the callback or filter is registered.
+ *
+ * @param <F> The failure type.
+ */
+public interface IntPromise<F> {
+	/**
+	 * Uses an {@link IntFilter} to transform the promised value and then return a promise for the 
+	 * transformed value.
+	 * @param filter A filter that transforms the promised value.
+	 * @return A {@link IntPromise} for the transformed value.
+	 */
+	public IntPromise<F> then(IntFilter filter);
+
+	/**
+	 * Register an {@link IntDoneCallback} that is called if and when the receiving promise is resolved.
+	 * @param callback The callback to be invoked if and when the receiving promise is resolved.
+	 * @return The receiver.
+	 */
+	public IntPromise<F> done(IntDoneCallback callback);
+
+	/**
+	 * Register a {@link FailCallback} that is called when the receiving promise is rejected.
+	 * @param callback The callback to be invoked if and when the receiving promise is rejected.
+	 * @return The receiver.
+	 */
+	public IntPromise<F> fail(FailCallback<F> callback);
+
+	/**
+	 * @return A generic {@link Promise} for the boxed value of the receiver.
+	 * @see API#asIntPromise(Promise)
+	 */
+	public Promise<Integer, F> boxed();
+}
@@ -0,0 +1,31 @@
+package com.wildducktheories.promise;
+
+/**
+ * A specialisation of {@link Deferred} for promised values of type <code>long</code> which 
+ * stores the promised value without boxing it.
+ *
+ * @param <F> The failure type.
+ * @see API#longDeferred()
+ */
+public interface LongDeferred<F> {
+	/**
+	 * Resolve the promise associated with the receiver.
+	 * @param p The value of the promise.
+	 * @return The receiver.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	public LongDeferred<F> resolve(long p);
+
+	/**
+	 * Reject the promise associated with the receiver.
+	 * @param f The value of the rejection.
+	 * @return The receiver.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	public LongDeferred<F> reject(F f);
+
+	/**
+	 * @return The {@link LongPromise} associated with the receiver.
+	 */
+	public LongPromise<F> promise();
+}
@@ -0,0 +1,14 @@
+package com.wildducktheories.promise;
+
+/**
+ * A callback that is used to receive the value of a resolved {@link LongPromise} without boxing.
+ *
+ * @see LongPromise#done(LongDoneCallback)
+ */
+public interface LongDoneCallback {
+	/**
+	 * Called to communicate the value of a resolved {@link LongPromise}.
+	 * @param p The resolved {@link LongPromise} value.
+	 */
+	public void onDone(long p);
+}
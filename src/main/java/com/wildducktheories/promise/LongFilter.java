@@ -0,0 +1,15 @@
+package com.wildducktheories.promise;
+
+/**
+ * A filter used to transform a <code>long</code> into another <code>long</code> without boxing.
+ *
+ * @see LongPromise#then(LongFilter)
+ */
+public interface LongFilter {
+	/**
+	 * @param p
+	 *            A value of type <code>long</code>.
+	 * @return A transformed value of type <code>long</code>.
+	 */
+	long filter(long p);
+}
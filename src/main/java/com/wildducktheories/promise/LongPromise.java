@@ -0,0 +1,42 @@
+package com.wildducktheories.promise;
+
+import com.wildducktheories.tasklet.Scheduler;
+
+/**
+ * A specialisation of {@link Promise} for promised values of type <code>long</code>. Values are
+ * stored, transformed and delivered without boxing.
+ * <p>
+ * As with {@link Promise}, callbacks are delivered on the synchronous {@link Thread} of the 
+ * current {@link Thread}'s {@link Scheduler} at the time the callback or filter is registered.
+ *
+ * @param <F> The failure type.
+ */
+public interface LongPromise<F> {
+	/**
+	 * Uses a {@link LongFilter} to transform the promised value and then return a promise for the 
+	 * transformed value.
+	 * @param filter A filter that transforms the promised value.
+	 * @return A {@link LongPromise} for the transformed value.
+	 */
+	public LongPromise<F> then(LongFilter filter);
+
+	/**
+	 * Register a {@link LongDoneCallback} that is called if and when the receiving promise is resolved.
+	 * @param callback The callback to be invoked if and when the receiving promise is resolved.
+	 * @return The receiver.
+	 */
+	public LongPromise<F> done(LongDoneCallback callback);
+
+	/**
+	 * Register a {@link FailCallback} that is called when the receiving promise is rejected.
+	 * @param callback The callback to be invoked if and when the receiving promise is rejected.
+	 * @return The receiver.
+	 */
+	public LongPromise<F> fail(FailCallback<F> callback);
+
+	/**
+	 * @return A generic {@link Promise} for the boxed value of the receiver.
+	 * @see API#asLongPromise(Promise)
+	 */
+	public Promise<Long, F> boxed();
+}
@@ -1,5 +1,8 @@
 package com.wildducktheories.promise;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import com.wildducktheories.tasklet.Scheduler;
 
 
@@ -8,7 +11,9 @@ import com.wildducktheories.tasklet.Scheduler;
  * <p>
  * Promises are delivered on the synchronous {@link Thread} of the current {@link Thread}'s {@link Scheduler}
  * as determined by the return value of <code>SchedulerAPI.get().getScheduler()</code> at the time the callback or filter
- * is registered irrespective of which {@link Thread} resolves or rejects the promise.
+ * is registered irrespective of which {@link Thread} resolves or rejects the promise, except for the callbacks
+ * and filters registered with <code>doneAsync()</code>, <code>failAsync()</code> and <code>thenAsync()</code>, 
+ * which are called on a thread of a specified {@link Executor}.
  * <p>
  * @author jonseymour
  *
@@ -56,5 +61,83 @@ public interface Promise<P, F> {
 	 * @return The receiver.
 	 */
 	public Promise<P,F> complete(CompletionCallback<P, F> callback);
+
+	/**
+	 * Register a {@link DoneCallback} that is called on a thread of the specified {@link Executor}, rather than on the 
+	 * synchronous thread of the current {@link Scheduler}, if and when the receiving {@link Promise} is resolved.
+	 * <p>
+	 * Use this for callbacks that are too expensive to run on the synchronous thread (for example, callbacks which 
+	 * serialize large results), where they would delay the delivery of every other promise of the scheduler. The 
+	 * callback must not touch state that is confined to the synchronous thread; use 
+	 * {@link #thenAsync(Filter, Executor)} to do the expensive work on the executor and then return to the 
+	 * synchronous thread. The current {@link Scheduler} waits until the callback has returned.
+	 * <p>
+	 * If the executor rejects the callback, it is called on the synchronous thread instead.
+	 * @param callback The callback to be invoked if and when the receiving {@link Promise} is resolved.
+	 * @param executor The executor that runs the callback.
+	 * @return The receiver.
+	 */
+	public Promise<P,F> doneAsync(DoneCallback<P> callback, Executor executor);
+
+	/**
+	 * Register a {@link FailCallback} that is called on a thread of the specified {@link Executor} if and when 
+	 * the receiving promise is rejected.
+	 * @param callback The callback to be invoked if and when the receiving {@link Promise} is rejected.
+	 * @param executor The executor that runs the callback.
+	 * @return The receiver.
+	 * @see #doneAsync(DoneCallback, Executor)
+	 */
+	public Promise<P,F> failAsync(FailCallback<F> callback, Executor executor);
+
+	/**
+	 * Uses a {@link Filter}, run on a thread of the specified {@link Executor}, to transform a value of type P into 
+	 * a value of type Q and then return a promise for that value.
+	 * <p>
+	 * Only the filter runs on the executor: callbacks and filters registered with the returned promise are 
+	 * delivered on the synchronous thread of their {@link Scheduler} as usual, so a chain returns to the synchronous
+	 * thread as soon as the expensive step is done. As for <code>then()</code>, the filter should not throw: if it 
+	 * does, the returned promise is cancelled and the exception is rethrown on the synchronous thread.
+	 * @param filter A filter that transforms a value of type P into a value of type Q.
+	 * @param executor The executor that runs the filter.
+	 * @return A {@link Promise} for a value of type Q.
+	 * @see #doneAsync(DoneCallback, Executor)
+	 */
+	public <Q> Promise<Q,F> thenAsync(Filter<P,Q> filter, Executor executor);
+	
+	/**
+	 * Signal that the result of the receiving {@link Promise} is no longer required.
+	 * <p>
+	 * If the receiver is still pending, it is cancelled: callbacks registered with it are never called, 
+	 * promises derived from it with <code>then()</code> or <code>thenPromise()</code> are cancelled too and
+	 * work that has not yet started on its behalf (for example, by {@link API#when(java.util.concurrent.Callable)}) 
+	 * is skipped, while work that is in progress is interrupted. If the receiver was itself derived from another 
+	 * promise with <code>then()</code> or <code>thenPromise()</code>, the cancellation is propagated to that promise 
+	 * unless it has other callbacks or derived promises that still require its result.
+	 * <p>
+	 * A later attempt to resolve or reject a cancelled promise is silently ignored.
+	 * @return true if the receiver was cancelled by this call, false if it had already been resolved, rejected or cancelled.
+	 */
+	public boolean cancel();
+	
+	/**
+	 * @return true if the receiving {@link Promise} has been cancelled.
+	 */
+	public boolean isCancelled();
+
+	/**
+	 * Answer a promise that is resolved or rejected with the outcome of the receiver or which is rejected with 
+	 * the specified failure if the receiver is still pending once the specified timeout has elapsed. 
+	 * <p>
+	 * When the timeout expires, the receiver is cancelled unless it has other callbacks or derived promises that 
+	 * still require its result. All timeouts share a single timer, so timeouts are cheap, but may expire a few 
+	 * milliseconds late.
+	 * <p>
+	 * If the receiver is already settled, the receiver is returned.
+	 * @param timeout The maximum time to wait for the receiver.
+	 * @param unit The unit of the timeout.
+	 * @param failure The rejection to use if the timeout expires.
+	 * @return A {@link Promise} bounded by the specified timeout.
+	 */
+	public Promise<P,F> timeout(long timeout, TimeUnit unit, F failure);
 	
 }
@@ -1,10 +1,16 @@
 package com.wildducktheories.promise;
 
+import java.util.Iterator;
+import java.util.ServiceLoader;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.wildducktheories.api.APIManager;
 import com.wildducktheories.api.impl.AbstractAPIManagerImpl;
 import com.wildducktheories.promise.impl.APIImpl;
+import com.wildducktheories.promise.impl.LeakDetector;
 
 /**
  * Provides a suite of static methods for obtaining an instance of the promise {@link API} (i.e. <code>get()</code>),
@@ -19,13 +25,52 @@ public final class PromiseAPI {
 	 */
 	private static final APIManager<API> manager = new AbstractAPIManagerImpl<API>() {
 		public API create() {
-			return new APIImpl();
+			return new APIImpl(null, LISTENER, DETECTOR);
 		}
 	};
 
+	/**
+	 * The {@link PromiseListener} registered with {@link ServiceLoader}, if any.
+	 */
+	private static final PromiseListener LISTENER = loadListener();
+
+	/**
+	 * The {@link LeakDetector} shared by all API instances, which is enabled by setting the system property
+	 * <code>com.wildducktheories.promise.leakDetection.sampleRate</code> to a fraction between 0 and 1 (e.g. 0.01).
+	 * Sampled promises that are still pending after <code>com.wildducktheories.promise.leakDetection.threshold</code>
+	 * milliseconds (default: 60000) are reported.
+	 */
+	private static final LeakDetector DETECTOR = loadDetector();
+
 	private PromiseAPI() {
 	}
 
+	/**
+	 * Load the shared {@link LeakDetector} from the system properties. A malformed configuration is logged and
+	 * disables leak detection rather than making this class unusable.
+	 */
+	private static LeakDetector loadDetector() {
+		final String property = System.getProperty("com.wildducktheories.promise.leakDetection.sampleRate", "0");
+		try {
+			final double sampleRate = Double.parseDouble(property);
+			if (sampleRate <= 0) {
+				return null;
+			}
+			final long threshold = Long.getLong("com.wildducktheories.promise.leakDetection.threshold", 60000L);
+			return new LeakDetector(sampleRate, threshold, TimeUnit.MILLISECONDS);
+		} catch (IllegalArgumentException e) {
+			// includes the NumberFormatException of a malformed sample rate.
+			Logger.getLogger(PromiseAPI.class.getName()).log(Level.WARNING,
+				"leak detection disabled: invalid sample rate: " + property, e);
+			return null;
+		}
+	}
+
+	private static PromiseListener loadListener() {
+		final Iterator<PromiseListener> listeners = ServiceLoader.load(PromiseListener.class).iterator();
+		return listeners.hasNext() ? listeners.next() : null;
+	}
+
 	/**
 	 * Answer the current {@link API} instance.
 	 * <p>
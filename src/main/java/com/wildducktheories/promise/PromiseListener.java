@@ -0,0 +1,50 @@
+package com.wildducktheories.promise;
+
+/**
+ * An instrumentation interface that observes the lifecycle of the {@link Promise}s created by an {@link API}:
+ * their creation, their resolution or rejection, the registration of callbacks with them and the delivery
+ * and execution of those callbacks.
+ * <p>
+ * A listener is installed by constructing an {@link API} implementation with it or, for the {@link API} instances
+ * created by {@link PromiseAPI}, by registering an implementation with {@link java.util.ServiceLoader}. Promises
+ * created while no listener is installed are not instrumented and incur no cost.
+ * <p>
+ * Listener methods are called on the threads on which the events occur, so they must be thread-safe and
+ * should be fast.
+ *
+ * @author jonseymour
+ */
+public interface PromiseListener {
+
+	/**
+	 * Called when a {@link Deferred} is created.
+	 * @param promise The promise.
+	 */
+	public void onCreated(Promise<?, ?> promise);
+
+	/**
+	 * Called when a promise is resolved or rejected.
+	 * @param promise The promise.
+	 * @param rejected true if the promise was rejected, false if it was resolved.
+	 * @param pendingNanos The time for which the promise was pending, from creation to resolution or rejection.
+	 */
+	public void onSettled(Promise<?, ?> promise, boolean rejected, long pendingNanos);
+
+	/**
+	 * Called when a callback, or the filter of a <code>then()</code>, <code>thenPromise()</code> or
+	 * <code>thenAsync()</code>, is registered with a promise.
+	 * @param promise The promise.
+	 */
+	public void onRegistered(Promise<?, ?> promise);
+
+	/**
+	 * Called when a callback registered with a promise has been executed. A filter is only executed, and so only
+	 * reported, when the promise is resolved.
+	 * @param promise The promise.
+	 * @param deliveryNanos The time from the resolution or rejection of the promise (or the registration of the
+	 * callback, if later) until the callback started, which is the time spent waiting for the synchronous
+	 * thread of the {@link com.wildducktheories.tasklet.Scheduler} to deliver the callback.
+	 * @param executionNanos The time taken to execute the callback.
+	 */
+	public void onDelivered(Promise<?, ?> promise, long deliveryNanos, long executionNanos);
+}
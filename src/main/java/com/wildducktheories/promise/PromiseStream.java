@@ -0,0 +1,78 @@
+package com.wildducktheories.promise;
+
+import java.util.List;
+
+/**
+ * A stream of zero or more values of type T, followed either by the end of the stream or by a failure of type F.
+ * <p>
+ * A {@link Promise} delivers exactly one value; a PromiseStream delivers many without allocating a promise per
+ * value. The values are pulled from a {@link StreamSource} in batches, and each batch is delivered to the
+ * current {@link com.wildducktheories.tasklet.Scheduler}'s main thread in a single hop, where it passes through
+ * the stream's operators (<code>map()</code>, <code>filter()</code> and <code>take()</code>) one value at a time.
+ * <p>
+ * Streams are lazy: nothing is read from the source until one of the terminal operations (<code>reduce()</code>,
+ * <code>collect()</code> or <code>forEach()</code>) is called, and the next batch is not requested until every
+ * value of the previous batch has been processed, so a slow consumer slows the source rather than causing values
+ * to be buffered. The size of each request is also limited by the remaining demand of the stream, so that, for
+ * example, <code>take(10)</code> never requests more than 10 values.
+ * <p>
+ * Cancelling the promise returned by a terminal operation stops the stream and closes its source. The source is
+ * also closed when the stream ends, fails or is truncated by <code>take()</code>.
+ * <p>
+ * If an operator, a reducer or a <code>forEach()</code> callback throws a {@link RuntimeException}, the stream is
+ * stopped, its source is closed and the promise returned by the terminal operation is cancelled, since the
+ * exception is not a failure of type F. The exception is then rethrown to the thread that delivered the batch,
+ * as it would be by any other callback.
+ * <p>
+ * A stream may be consumed by only one terminal operation. Terminal operations require the same execution context
+ * as {@link Promise#done(DoneCallback)}.
+ *
+ * @author jonseymour
+ *
+ * @param <T> The type of the values of the stream.
+ * @param <F> The failure type.
+ * @see API#stream(StreamSource)
+ * @see API#deferredStream()
+ */
+public interface PromiseStream<T, F> {
+
+	/**
+	 * @param filter A filter that transforms each value of type T into a value of type Q.
+	 * @return A stream of the transformed values.
+	 */
+	public <Q> PromiseStream<Q, F> map(Filter<T, Q> filter);
+
+	/**
+	 * @param predicate A filter that answers true for each value to be retained.
+	 * @return A stream of the values for which the predicate answers true.
+	 */
+	public PromiseStream<T, F> filter(Filter<T, Boolean> predicate);
+
+	/**
+	 * @param n The maximum number of values.
+	 * @return A stream of at most the first n values of the receiver, which stops reading from the source once
+	 * n values have been taken.
+	 */
+	public PromiseStream<T, F> take(long n);
+
+	/**
+	 * Combine the values of the stream, in order, into a single result.
+	 * @param initial The initial value of the accumulator.
+	 * @param reducer The reducer that combines the accumulator with each value.
+	 * @return A {@link Promise} that is resolved with the final value of the accumulator when the stream ends, or
+	 * rejected with the failure of the stream.
+	 */
+	public <A> Promise<A, F> reduce(A initial, Reducer<A, T> reducer);
+
+	/**
+	 * @return A {@link Promise} that is resolved with a list of the values of the stream, in order, when the
+	 * stream ends, or rejected with the failure of the stream.
+	 */
+	public Promise<List<T>, F> collect();
+
+	/**
+	 * @param callback The callback to be invoked with each value of the stream, in order.
+	 * @return A {@link Promise} that is resolved when the stream ends, or rejected with the failure of the stream.
+	 */
+	public Promise<Void, F> forEach(DoneCallback<T> callback);
+}
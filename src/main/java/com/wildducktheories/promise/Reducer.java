@@ -0,0 +1,19 @@
+package com.wildducktheories.promise;
+
+/**
+ * A function that combines an accumulator of type A with a value of type T.
+ *
+ * @author jonseymour
+ *
+ * @param <A> The accumulator type.
+ * @param <T> The value type.
+ * @see PromiseStream#reduce(Object, Reducer)
+ */
+public interface Reducer<A, T> {
+	/**
+	 * @param accumulator The current value of the accumulator.
+	 * @param t The next value.
+	 * @return The new value of the accumulator.
+	 */
+	public A reduce(A accumulator, T t);
+}
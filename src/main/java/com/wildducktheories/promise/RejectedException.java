@@ -0,0 +1,29 @@
+package com.wildducktheories.promise;
+
+/**
+ * Carries the rejection of a {@link Promise} whose failure type is not a {@link Throwable} across an interface
+ * that can only report failures as exceptions, such as {@link java.util.concurrent.CompletableFuture}.
+ *
+ * @author jonseymour
+ */
+public class RejectedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient Object rejection;
+
+	/**
+	 * @param rejection The rejection of the promise.
+	 */
+	public RejectedException(Object rejection) {
+		super(String.valueOf(rejection));
+		this.rejection = rejection;
+	}
+
+	/**
+	 * @return The rejection of the promise.
+	 */
+	public Object getRejection() {
+		return rejection;
+	}
+}
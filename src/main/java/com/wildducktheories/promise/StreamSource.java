@@ -0,0 +1,33 @@
+package com.wildducktheories.promise;
+
+import java.util.List;
+
+/**
+ * The source of the values of a {@link PromiseStream}, which supplies them in batches on request.
+ * <p>
+ * A paged query, for example, can be adapted to a {@link PromiseStream} by a source that answers a promise
+ * for the next page on each call to <code>next()</code>.
+ *
+ * @author jonseymour
+ *
+ * @param <T> The type of the values.
+ * @param <F> The failure type.
+ * @see API#stream(StreamSource)
+ */
+public interface StreamSource<T, F> {
+
+	/**
+	 * Request the next batch of values. The stream does not call this method again until the returned promise
+	 * has been resolved and its values processed.
+	 * @param max The maximum number of values requested, which is always positive.
+	 * @return A {@link Promise} for the next batch of at most max values, which is resolved with an empty
+	 * list (or <code>null</code>) at the end of the stream, or rejected if the stream fails.
+	 */
+	public Promise<List<T>, F> next(int max);
+
+	/**
+	 * Release any resources held by the source. Called exactly once, when the stream ends, fails, is truncated or is
+	 * cancelled, possibly while a batch is still outstanding.
+	 */
+	public void close();
+}
@@ -1,10 +1,34 @@
 package com.wildducktheories.promise.impl;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Publisher;
 
 import com.wildducktheories.promise.API;
 import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DeferredStream;
+import com.wildducktheories.promise.DoubleDeferred;
+import com.wildducktheories.promise.DoublePromise;
+import com.wildducktheories.promise.Filter;
+import com.wildducktheories.promise.IntDeferred;
+import com.wildducktheories.promise.IntPromise;
+import com.wildducktheories.promise.LongDeferred;
+import com.wildducktheories.promise.LongPromise;
 import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseListener;
+import com.wildducktheories.promise.PromiseStream;
+import com.wildducktheories.promise.StreamSource;
 import com.wildducktheories.tasklet.Directive;
 import com.wildducktheories.tasklet.SchedulerAPI;
 import com.wildducktheories.tasklet.Tasklet;
@@ -14,13 +38,221 @@ import com.wildducktheories.tasklet.Tasklet;
  * @author jonseymour
  */
 public final class APIImpl implements API {
-	
+
+	/**
+	 * A cache of shared, already settled promises for commonly used values: <code>null</code>,
+	 * {@link Boolean#TRUE}, {@link Boolean#FALSE} and the {@link Integer} instances cached by
+	 * {@link Integer#valueOf(int)}.
+	 * <p>
+	 * Values are matched by identity so that callbacks always receive the very instance that was
+	 * passed to <code>resolved()</code> or <code>rejected()</code>.
+	 */
+	private static final class Constants {
+		private static final int LOW = -128;
+		private static final int HIGH = 127;
+
+		private final Promise<Object, Object> nullPromise;
+		private final Promise<Object, Object> truePromise;
+		private final Promise<Object, Object> falsePromise;
+		private final Promise<?, ?>[] integerPromises = new Promise<?, ?>[HIGH - LOW + 1];
+
+		private Constants(boolean failed) {
+			nullPromise = new DeferredImpl<Object, Object>(failed, null);
+			truePromise = new DeferredImpl<Object, Object>(failed, Boolean.TRUE);
+			falsePromise = new DeferredImpl<Object, Object>(failed, Boolean.FALSE);
+			for (int i = LOW; i <= HIGH; i++) {
+				integerPromises[i - LOW] = new DeferredImpl<Object, Object>(failed, Integer.valueOf(i));
+			}
+		}
+
+		/**
+		 * @param value A resolution or rejection.
+		 * @return The shared promise for the specified value or null, if there is no such promise.
+		 */
+		@SuppressWarnings("unchecked")
+		private <P, F> Promise<P, F> get(Object value) {
+			final Promise<?, ?> promise;
+			if (value == null) {
+				promise = nullPromise;
+			} else if (value == Boolean.TRUE) {
+				promise = truePromise;
+			} else if (value == Boolean.FALSE) {
+				promise = falsePromise;
+			} else if (value instanceof Integer) {
+				final int i = (Integer)value;
+				promise = (i >= LOW && i <= HIGH && value == Integer.valueOf(i)) ? integerPromises[i - LOW] : null;
+			} else {
+				promise = null;
+			}
+			return (Promise<P, F>)promise;
+		}
+	}
+
+	/**
+	 * Executes a {@link Callable} on behalf of <code>when()</code>, unless the promise is cancelled first,
+	 * either as an ASYNC {@link Tasklet} or as a {@link Runnable} submitted to an {@link Executor}.
+	 */
+	private static final class CallableTasklet<P> extends Interrupter<P, Exception> implements Tasklet, Runnable {
+		private final DeferredImpl<P, Exception> deferred;
+		private final Callable<P> callable;
+
+		private CallableTasklet(DeferredImpl<P, Exception> deferred, Callable<P> callable) {
+			this.deferred = deferred;
+			this.callable = callable;
+		}
+
+		@Override
+		public Directive task() {
+			try {
+				if (enter(deferred)) {
+					deferred.resolve(callable.call());
+				}
+			} catch (Exception e) {
+				deferred.reject(e);
+			} finally {
+				exit();
+			}
+			return Directive.DONE;
+		}
+
+		@Override
+		public void run() {
+			task();
+		}
+	}
+
+	/**
+	 * Executes a {@link Runnable} on behalf of <code>when()</code>, unless the promise is cancelled first,
+	 * either as an ASYNC {@link Tasklet} or as a {@link Runnable} submitted to an {@link Executor}.
+	 */
+	private static final class RunnableTasklet extends Interrupter<Void, RuntimeException> implements Tasklet, Runnable {
+		private final DeferredImpl<Void, RuntimeException> deferred;
+		private final Runnable runnable;
+
+		private RunnableTasklet(DeferredImpl<Void, RuntimeException> deferred, Runnable runnable) {
+			this.deferred = deferred;
+			this.runnable = runnable;
+		}
+
+		@Override
+		public Directive task() {
+			try {
+				if (enter(deferred)) {
+					runnable.run();
+					deferred.resolve(null);
+				}
+			} catch (RuntimeException e) {
+				deferred.reject(e);
+			} finally {
+				exit();
+			}
+			return Directive.DONE;
+		}
+
+		@Override
+		public void run() {
+			task();
+		}
+	}
+
+	private static final Constants RESOLVED = new Constants(false);
+	private static final Constants REJECTED = new Constants(true);
+
+	/**
+	 * The number of chunks per available processor into which <code>whenAll()</code> divides its callables by default.
+	 */
+	private static final int CHUNKS_PER_PROCESSOR = 4;
+
+	/**
+	 * The {@link Executor} used by <code>when()</code>, or <code>null</code> to run <code>when()</code> work as 
+	 * ASYNC tasklets of the current {@link com.wildducktheories.tasklet.Scheduler}.
+	 */
+	private final Executor executor;
+
+	/**
+	 * The listener notified of the lifecycle of the promises created by <code>deferred()</code> and
+	 * <code>when()</code>, or <code>null</code>.
+	 */
+	private final PromiseListener listener;
+
+	/**
+	 * The detector that samples the promises created by <code>deferred()</code> and <code>when()</code> for
+	 * leaks, or <code>null</code>.
+	 */
+	private final LeakDetector detector;
+
+	/**
+	 * Construct an API whose <code>when()</code> methods schedule their work as ASYNC tasklets of the 
+	 * current {@link com.wildducktheories.tasklet.Scheduler}.
+	 */
+	public APIImpl() {
+		this(null, null);
+	}
+
+	/**
+	 * Construct an API whose <code>when(Callable)</code> and <code>when(Runnable)</code> methods submit their 
+	 * work to the specified {@link Executor}. Suitable executors include a bounded pool of platform threads 
+	 * (e.g. {@link java.util.concurrent.Executors#newFixedThreadPool(int)}), a {@link ForkJoinExecutor} for 
+	 * CPU-bound work and, where the JVM supports them, the executor returned by {@link #newVirtualThreadExecutor()}. 
+	 * @param executor The executor, or <code>null</code> to use ASYNC tasklets.
+	 */
+	public APIImpl(Executor executor) {
+		this(executor, null);
+	}
+
+	/**
+	 * Construct an API which, in addition, reports the lifecycle of the promises it creates to the specified
+	 * {@link PromiseListener} (for example, a {@link LatencyRecorder}).
+	 * @param executor The executor, or <code>null</code> to use ASYNC tasklets.
+	 * @param listener The listener, or <code>null</code> if promises are not to be instrumented.
+	 */
+	public APIImpl(Executor executor, PromiseListener listener) {
+		this(executor, listener, null);
+	}
+
+	/**
+	 * Construct an API which, in addition, tracks a sample of the promises it creates with the specified
+	 * {@link LeakDetector}.
+	 * @param executor The executor, or <code>null</code> to use ASYNC tasklets.
+	 * @param listener The listener, or <code>null</code> if promises are not to be instrumented.
+	 * @param detector The detector, or <code>null</code> if promises are not to be tracked.
+	 */
+	public APIImpl(Executor executor, PromiseListener listener, LeakDetector detector) {
+		this.executor = executor;
+		this.listener = listener;
+		this.detector = detector;
+	}
+
+	/**
+	 * Answer a new {@link ExecutorService} that runs each task on a new virtual thread, which suits
+	 * <code>when()</code> work that mostly blocks (e.g. JDBC calls).
+	 * <p>
+	 * The executor is obtained reflectively, so that this library continues to run on JVMs that pre-date virtual threads.
+	 * @return A new virtual thread per task {@link ExecutorService}.
+	 * @throws UnsupportedOperationException If the current JVM does not support virtual threads.
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException("virtual threads are not supported by this JVM", e);
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException("virtual threads are not supported by this JVM", e);
+		} catch (InvocationTargetException e) {
+			throw new UnsupportedOperationException("virtual threads are not supported by this JVM", e.getCause());
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see com.wildducktheories.promise.impl.API#resolved(P, java.lang.Class, java.lang.Class)
 	 */
 	@SuppressWarnings("unchecked")
 	@Override
 	public final <P,F> Promise<P, F> resolved(P resolution, Class<P> promiseType, Class<F> failureType) {
+		final Promise<P, F> constant = RESOLVED.get(resolution);
+		if (constant != null) {
+			return constant;
+		}
 		return ((Deferred<P,F>)deferred()).resolve(resolution).promise();
 	}
 	
@@ -30,6 +262,10 @@ public final class APIImpl implements API {
 	@SuppressWarnings("unchecked")
 	@Override
 	public final <P,F> Promise<P, F> rejected(F rejection, Class<P> promiseType, Class<F> failureType) {
+		final Promise<P, F> constant = REJECTED.get(rejection);
+		if (constant != null) {
+			return constant;
+		}
 		return ((Deferred<P,F>)deferred()).reject(rejection).promise();
 	}
 	
@@ -38,26 +274,158 @@ public final class APIImpl implements API {
 	 */
 	@Override
 	public <P, F> Deferred<P, F> deferred() {
+		return newDeferred();
+	}
+	
+	/**
+	 * Create a {@link DeferredImpl} through the specified API, so that the promises created by the decorators and
+	 * operators of this package are reported to its {@link PromiseListener} and sampled by its {@link LeakDetector},
+	 * like those returned by <code>deferred()</code>.
+	 * @param api The API, usually <code>PromiseAPI.get()</code>.
+	 * @return A new, pending {@link DeferredImpl}.
+	 */
+	static <P, F> DeferredImpl<P, F> newDeferred(API api) {
+		if (api instanceof APIImpl) {
+			return ((APIImpl)api).newDeferred();
+		}
+		return new DeferredImpl<P, F>();
+	}
+
+	private <P, F> DeferredImpl<P, F> newDeferred() {
+		final boolean sampled = detector != null && detector.sample();
+		if (listener != null || sampled) {
+			return new InstrumentedDeferredImpl<P, F>(listener, sampled ? detector : null);
+		}
 		return new DeferredImpl<P,F>();
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#intDeferred()
+	 */
+	@Override
+	public <F> IntDeferred<F> intDeferred() {
+		return new IntDeferredImpl<F>();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#longDeferred()
+	 */
+	@Override
+	public <F> LongDeferred<F> longDeferred() {
+		return new LongDeferredImpl<F>();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#doubleDeferred()
+	 */
+	@Override
+	public <F> DoubleDeferred<F> doubleDeferred() {
+		return new DoubleDeferredImpl<F>();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#asIntPromise(com.wildducktheories.promise.Promise)
+	 */
+	@Override
+	public <F> IntPromise<F> asIntPromise(Promise<Integer, F> promise) {
+		return IntDeferredImpl.unbox(promise);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#asLongPromise(com.wildducktheories.promise.Promise)
+	 */
+	@Override
+	public <F> LongPromise<F> asLongPromise(Promise<Long, F> promise) {
+		return LongDeferredImpl.unbox(promise);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#asDoublePromise(com.wildducktheories.promise.Promise)
+	 */
+	@Override
+	public <F> DoublePromise<F> asDoublePromise(Promise<Double, F> promise) {
+		return DoubleDeferredImpl.unbox(promise);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#asPromise(java.util.concurrent.CompletionStage)
+	 */
+	@Override
+	public <P> Promise<P, Throwable> asPromise(CompletionStage<P> stage) {
+		return StagePromiseImpl.bridge(this, stage);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#asCompletableFuture(com.wildducktheories.promise.Promise)
+	 */
+	@Override
+	public <P, F> CompletableFuture<P> asCompletableFuture(Promise<P, F> promise) {
+		return PromiseFutureImpl.bridge(promise);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#all(java.util.Collection)
+	 */
+	@Override
+	public <P, F> Promise<List<P>, F> all(Collection<? extends Promise<P, F>> promises) {
+		return new AllImpl<P, F>(promises.size()).join(promises);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#all(com.wildducktheories.promise.Promise[])
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <P, F> Promise<List<P>, F> all(Promise<P, F>... promises) {
+		return all(Arrays.asList(promises));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#race(java.util.Collection)
+	 */
+	@Override
+	public <P, F> Promise<P, F> race(Collection<? extends Promise<P, F>> promises) {
+		return new RaceImpl<P, F>(promises.size(), true).join(promises);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#race(com.wildducktheories.promise.Promise[])
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <P, F> Promise<P, F> race(Promise<P, F>... promises) {
+		return race(Arrays.asList(promises));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#any(java.util.Collection)
+	 */
+	@Override
+	public <P, F> Promise<P, F> any(Collection<? extends Promise<P, F>> promises) {
+		return new RaceImpl<P, F>(promises.size(), false).join(promises);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#any(com.wildducktheories.promise.Promise[])
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <P, F> Promise<P, F> any(Promise<P, F>... promises) {
+		return any(Arrays.asList(promises));
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.wildducktheories.promise.impl.API#when(java.util.concurrent.Callable)
 	 */
 	@Override
 	public <P> Promise<P, Exception> when(final Callable<P> callable) {
-		final Deferred<P, Exception> deferred = deferred();
-		SchedulerAPI.get().getScheduler().schedule(new Tasklet() {
-			@Override
-			public Directive task() {
-				try {
-					deferred.resolve(callable.call());
-				} catch (Exception e) {
-					deferred.reject(e);
-				}
-				return Directive.DONE;
-			}
-		}, Directive.ASYNC);
+		if (executor != null) {
+			return when(callable, executor);
+		}
+		final DeferredImpl<P, Exception> deferred = newDeferred();
+		final CallableTasklet<P> tasklet = new CallableTasklet<P>(deferred, callable);
+		deferred.addWaiter(tasklet);
+		SchedulerAPI.get().getScheduler().schedule(tasklet, Directive.ASYNC);
 		return deferred.promise();
 	}
 
@@ -66,22 +434,168 @@ public final class APIImpl implements API {
 	 */
 	@Override
 	public Promise<Void, RuntimeException> when(final Runnable runnable) {
-		final Deferred<Void, RuntimeException> deferred = deferred();
-		SchedulerAPI.get().getScheduler().schedule(new Tasklet() {
-			@Override
-			public Directive task() {
-				try {
-					runnable.run();
-					deferred.resolve(null);
-				} catch (RuntimeException e) {
-					deferred.reject(e);
-				}
-				return Directive.DONE;
-			}
-		}, Directive.ASYNC);
+		if (executor != null) {
+			return when(runnable, executor);
+		}
+		final DeferredImpl<Void, RuntimeException> deferred = newDeferred();
+		final RunnableTasklet tasklet = new RunnableTasklet(deferred, runnable);
+		deferred.addWaiter(tasklet);
+		SchedulerAPI.get().getScheduler().schedule(tasklet, Directive.ASYNC);
+		return deferred.promise();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#when(java.util.concurrent.Callable, java.util.concurrent.Executor)
+	 */
+	@Override
+	public <P> Promise<P, Exception> when(final Callable<P> callable, final Executor executor) {
+		final DeferredImpl<P, Exception> deferred = newDeferred();
+		final CallableTasklet<P> tasklet = new CallableTasklet<P>(deferred, callable);
+		deferred.addWaiter(tasklet);
+		deferred.hold();
+		try {
+			executor.execute(tasklet);
+		} catch (RejectedExecutionException e) {
+			deferred.reject(e);
+		}
+		return deferred.promise();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#when(java.lang.Runnable, java.util.concurrent.Executor)
+	 */
+	@Override
+	public Promise<Void, RuntimeException> when(final Runnable runnable, final Executor executor) {
+		final DeferredImpl<Void, RuntimeException> deferred = newDeferred();
+		final RunnableTasklet tasklet = new RunnableTasklet(deferred, runnable);
+		deferred.addWaiter(tasklet);
+		deferred.hold();
+		try {
+			executor.execute(tasklet);
+		} catch (RejectedExecutionException e) {
+			deferred.reject(e);
+		}
 		return deferred.promise();
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#whenAll(java.util.Collection)
+	 */
+	@Override
+	public <P> Promise<List<P>, Exception> whenAll(Collection<? extends Callable<? extends P>> callables) {
+		final int chunks = CHUNKS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors();
+		return whenAll(callables, Math.max(1, (callables.size() + chunks - 1) / chunks));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#whenAll(java.util.Collection, int)
+	 */
+	@Override
+	public <P> Promise<List<P>, Exception> whenAll(Collection<? extends Callable<? extends P>> callables, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		return new BatchImpl<P>(callables).submit(chunkSize, SchedulerAPI.get().getScheduler(), executor);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#asPublisher(com.wildducktheories.promise.Promise)
+	 */
+	@Override
+	public <P, F> Publisher<P> asPublisher(Promise<P, F> promise) {
+		return new PromisePublisherImpl<P, F>(promise);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#asStream(org.reactivestreams.Publisher)
+	 */
+	@Override
+	public <T> PromiseStream<T, Throwable> asStream(Publisher<? extends T> publisher) {
+		return PromiseStreamImpl.of(new PublisherSourceImpl<T>(publisher), PromiseStreamImpl.DEFAULT_BATCH_SIZE);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#stream(com.wildducktheories.promise.StreamSource)
+	 */
+	@Override
+	public <T, F> PromiseStream<T, F> stream(StreamSource<T, F> source) {
+		return PromiseStreamImpl.of(source, PromiseStreamImpl.DEFAULT_BATCH_SIZE);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#stream(com.wildducktheories.promise.StreamSource, int)
+	 */
+	@Override
+	public <T, F> PromiseStream<T, F> stream(StreamSource<T, F> source, int batchSize) {
+		return PromiseStreamImpl.of(source, batchSize);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#deferredStream()
+	 */
+	@Override
+	public <T, F> DeferredStream<T, F> deferredStream() {
+		return new DeferredStreamImpl<T, F>(PromiseStreamImpl.DEFAULT_BATCH_SIZE);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#delay(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public Promise<Void, RuntimeException> delay(long delay, TimeUnit unit) {
+		return this.<RuntimeException>newDelay(delay, unit).promise();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.API#after(long, java.util.concurrent.TimeUnit, java.util.concurrent.Callable)
+	 */
+	@Override
+	public <P> Promise<P, Exception> after(long delay, TimeUnit unit, final Callable<P> callable) {
+		return this.<Exception>newDelay(delay, unit).thenPromise(new Filter<Void, Promise<P, Exception>>() {
+			@Override
+			public Promise<P, Exception> filter(Void p) {
+				return when(callable);
+			}
+		});
+	}
+
+	/**
+	 * Answer a deferred that is resolved by the shared {@link TimerWheel} once the specified delay has elapsed. 
+	 * Cancelling the deferred cancels the timer.
+	 * @param delay The delay.
+	 * @param unit The unit of the delay.
+	 * @return A pending {@link DeferredImpl}.
+	 */
+	private <F> DeferredImpl<Void, F> newDelay(long delay, TimeUnit unit) {
+		final DeferredImpl<Void, F> deferred = newDeferred();
+		final TimerWheel.Timeout expiry = TimerWheel.shared().schedule(new Runnable() {
+			@Override
+			public void run() {
+				deferred.tryResolve(null);
+			}
+		}, delay, unit);
+		deferred.addWaiter(new Waiter<Void, F>() {
+			@Override
+			public void onDone(Void p) {
+			}
+
+			@Override
+			public void onFail(F f) {
+			}
+
+			@Override
+			void onCancel() {
+				expiry.cancel();
+			}
+
+			@Override
+			boolean isObserving() {
+				return false;
+			}
+		});
+		return deferred;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.wildducktheories.promise.impl.API#reset()
 	 */
@@ -51,7 +51,12 @@
 		@Override
 		public final Promise<P, F> call() {
 			final Deferred<P, F> deferred = PromiseAPI.get().deferred();
+			final Interrupter<P, F> interrupter = new Interrupter<P, F>();
+			if (deferred instanceof DeferredImpl) {
+				((DeferredImpl<P, F>)deferred).addWaiter(interrupter);
+			}
 			
+			final Deferred<?, ?> outer = CurrentCall.enter(deferred);
 			try {
 				final R r = build();
 				SchedulerAPI.get().getScheduler().schedule(new Tasklet() {
@@ -60,13 +65,27 @@
 					private Exception e;
 					@Override
 					public Directive task() {
+						final Deferred<?, ?> outer = CurrentCall.enter(deferred);
 						try {
 							if (!sent) {
 								sent = true;
-								s = send(r);
+								if (deferred instanceof DeferredImpl) {
+									try {
+										if (!interrupter.enter((DeferredImpl<P, F>)deferred)) {
+											return Directive.DONE;
+										}
+										s = send(r);
+									} finally {
+										interrupter.exit();
+									}
+								} else {
+									s = send(r);
+								}
 								return Directive.SYNC;
 							} else {
-								if (e == null) {
+								if (deferred.isCancelled()) {
+									return Directive.DONE;
+								} else if (e == null) {
 									final P p = receive(s);
 									deferred.resolve(p);
 								} else {
@@ -77,14 +96,32 @@
 						} catch (Exception e) {
 							this.e = e;
 							return Directive.SYNC;
+						} finally {
+							CurrentCall.exit(outer);
 						}
 					}			
 				}, Directive.SYNC);
 				return deferred.promise();
 			} catch (Exception e) {
 				return deferred.reject(handle(e)).promise();
+			} finally {
+				CurrentCall.exit(outer);
 			}
 		}
+		
+		/**
+		 * Answer true if the caller of the current call no longer requires its result. 
+		 * <p>
+		 * This method may be called from within any of the <b>build</b>, <b>send</b> and <b>receive</b> phases
+		 * to decide whether to abandon work early. If the promise returned by <code>call()</code> is cancelled
+		 * before the <b>send</b> phase starts, the <b>send</b> and <b>receive</b> phases are skipped and if it is cancelled
+		 * during the <b>send</b> phase, the thread executing the <b>send</b> phase is interrupted.
+		 * @return true if the promise for the current call has been cancelled.
+		 * @see Promise#cancel()
+		 */
+		protected final boolean isCancelled() {
+			return CurrentCall.isCancelled();
+		}
 	
 		/**
 		 * Build a request of type R in the caller's thread.
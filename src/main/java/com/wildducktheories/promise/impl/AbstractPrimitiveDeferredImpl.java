@@ -0,0 +1,285 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.wildducktheories.promise.CompletionCallback;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.tasklet.Directive;
+import com.wildducktheories.tasklet.Scheduler;
+import com.wildducktheories.tasklet.SchedulerAPI;
+
+/**
+ * The state machine, filtering and boxing shared by the primitive specialisations of the
+ * {@link com.wildducktheories.promise.Deferred} and {@link com.wildducktheories.promise.Promise} interfaces.
+ * <p>
+ * The promised value is stored unboxed as the raw bits of a <code>long</code>. Subclasses convert their
+ * primitive type, and its boxed type B, to and from those bits and dispatch the value to their specialised
+ * callbacks and filters.
+ * <p>
+ * As with {@link DeferredImpl}, the state is held in a single atomically updated reference which is
+ * <code>null</code> or the top of a stack of waiting {@link PrimitiveCompletionTasklet}s while the promise is
+ * pending. A resolving thread claims the right to settle the promise with a separate flag, stores the value and
+ * then swaps the stack for the DONE or FAILED marker in a single atomic operation, so settling a primitive promise
+ * does not allocate. Registering threads never wait for a resolving thread: until the marker is published, they
+ * push their tasklets as though the promise were still pending, and the swap hands those tasklets to the resolver.
+ *
+ * @param <B> The boxed type of the promised value.
+ * @param <F> The failure type.
+ */
+abstract class AbstractPrimitiveDeferredImpl<B, F> {
+
+	/**
+	 * A done callback of the base class itself, which receives the raw bits of the resolution.
+	 */
+	private interface BitsCallback {
+		void onDone(long bits);
+	}
+
+	/**
+	 * Resolves or rejects a deferred of the same type with the filtered outcome of the receiver.
+	 */
+	private static final class Forward<B, F> implements BitsCallback, FailCallback<F> {
+		private final AbstractPrimitiveDeferredImpl<B, F> deferred;
+		private final Object filter;
+
+		private Forward(AbstractPrimitiveDeferredImpl<B, F> deferred, Object filter) {
+			this.deferred = deferred;
+			this.filter = filter;
+		}
+
+		@Override
+		public void onDone(long bits) {
+			deferred.settleDone(deferred.filter(filter, bits));
+		}
+
+		@Override
+		public void onFail(F f) {
+			deferred.settleFailed(f);
+		}
+	}
+
+	/**
+	 * Resolves or rejects a generic deferred with the boxed outcome of the receiver.
+	 */
+	private final class Box implements BitsCallback, FailCallback<F> {
+		private final Deferred<B, F> deferred;
+
+		private Box(Deferred<B, F> deferred) {
+			this.deferred = deferred;
+		}
+
+		@Override
+		public void onDone(long bits) {
+			deferred.resolve(toBoxed(bits));
+		}
+
+		@Override
+		public void onFail(F f) {
+			deferred.reject(f);
+		}
+	}
+
+	private static final Object DONE = new Object();
+	private static final Object FAILED = new Object();
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<AbstractPrimitiveDeferredImpl, Object> STATE =
+		AtomicReferenceFieldUpdater.newUpdater(AbstractPrimitiveDeferredImpl.class, Object.class, "state");
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<AbstractPrimitiveDeferredImpl> CLAIMED =
+		AtomicIntegerFieldUpdater.newUpdater(AbstractPrimitiveDeferredImpl.class, "claimed");
+
+	private volatile Object state = null;
+	private volatile int claimed = 0;
+	private long bits;
+	private F failure;
+
+	/**
+	 * @param value A boxed value, which is not null.
+	 * @return The raw bits of the value.
+	 */
+	abstract long toBits(B value);
+
+	/**
+	 * @param bits The raw bits of a value.
+	 * @return The boxed value.
+	 */
+	abstract B toBoxed(long bits);
+
+	/**
+	 * Apply a specialised filter to a value.
+	 * @param filter The specialised filter.
+	 * @param bits The raw bits of the value.
+	 * @return The raw bits of the filtered value.
+	 */
+	abstract long filter(Object filter, long bits);
+
+	/**
+	 * Deliver the resolution of the receiver to a specialised done callback.
+	 * @param callback The specialised done callback.
+	 * @param bits The resolution.
+	 */
+	abstract void deliver(Object callback, long bits);
+
+	/**
+	 * Deliver the resolution of the receiver to a done callback registered with <code>addCallbacks()</code>.
+	 * @param callback The done callback.
+	 * @param bits The resolution.
+	 */
+	final void notifyDone(Object callback, long bits) {
+		if (callback instanceof BitsCallback) {
+			((BitsCallback)callback).onDone(bits);
+		} else {
+			deliver(callback, bits);
+		}
+	}
+
+	/**
+	 * Resolve the receiver.
+	 * @param bits The resolution.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	final void settleDone(long bits) {
+		claim();
+		this.bits = bits;
+		for (PrimitiveCompletionTasklet<F> t = reverse(publish(DONE)); t != null; t = t.next) {
+			t.onDone(bits);
+		}
+	}
+
+	/**
+	 * Reject the receiver.
+	 * @param f The rejection.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	final void settleFailed(F f) {
+		claim();
+		this.failure = f;
+		for (PrimitiveCompletionTasklet<F> t = reverse(publish(FAILED)); t != null; t = t.next) {
+			t.onFail(f);
+		}
+	}
+
+	/**
+	 * Settle the receiver with the outcome of a generic promise. A <code>null</code> resolution, which has
+	 * no unboxed value, rejects the receiver with a <code>null</code> failure, so that the receiver is settled
+	 * rather than left pending.
+	 * @param promise The generic promise.
+	 */
+	final void follow(Promise<B, F> promise) {
+		promise.complete(new CompletionCallback<B, F>() {
+			@Override
+			public void onDone(B p) {
+				if (p == null) {
+					settleFailed(null);
+				} else {
+					settleDone(toBits(p));
+				}
+			}
+
+			@Override
+			public void onFail(F f) {
+				settleFailed(f);
+			}
+		});
+	}
+
+	/**
+	 * Settle a deferred of the same type with the outcome of the receiver, transformed by a specialised filter.
+	 * @param filter The specialised filter.
+	 * @param filtered The deferred.
+	 * @return The deferred.
+	 */
+	final <D extends AbstractPrimitiveDeferredImpl<B, F>> D then(Object filter, D filtered) {
+		final Forward<B, F> forward = new Forward<B, F>(filtered, filter);
+		addCallbacks(forward, forward);
+		return filtered;
+	}
+
+	/**
+	 * @return A generic {@link Promise} for the boxed outcome of the receiver.
+	 */
+	final Promise<B, F> box() {
+		final Deferred<B, F> deferred = PromiseAPI.get().deferred();
+		final Box box = new Box(deferred);
+		addCallbacks(box, box);
+		return deferred.promise();
+	}
+
+	/**
+	 * Register callbacks with the receiver. The callbacks are always delivered on the synchronous thread of
+	 * the current thread's {@link Scheduler}, whether or not the receiver is already settled.
+	 * @param doneCallback A specialised done callback, or null.
+	 * @param failCallback A fail callback, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	final void addCallbacks(Object doneCallback, FailCallback<F> failCallback) {
+		final Scheduler scheduler = SchedulerAPI.get().getScheduler();
+		final PrimitiveCompletionTasklet<F> tasklet =
+			new PrimitiveCompletionTasklet<F>(scheduler, this, doneCallback, failCallback);
+
+		Object current = state;
+		if (current == null || current instanceof PrimitiveCompletionTasklet) {
+
+			// Dequeue the tasklet to tell the scheduler that there is a pending resolution event.
+
+			scheduler.schedule(tasklet, Directive.WAIT);
+			for (;;) {
+				tasklet.next = (PrimitiveCompletionTasklet<F>)current;
+				if (STATE.compareAndSet(this, current, tasklet)) {
+					return;
+				}
+				current = state;
+				if (current == DONE || current == FAILED) {
+					break;
+				}
+			}
+		}
+		if (current == DONE) {
+			tasklet.onDone(bits);
+		} else {
+			tasklet.onFail(failure);
+		}
+	}
+
+	/**
+	 * Atomically claim the right to settle the receiver.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	private void claim() {
+		if (!CLAIMED.compareAndSet(this, 0, 1)) {
+			throw new IllegalStateException("illegal state: promise already resolved or rejected");
+		}
+	}
+
+	/**
+	 * Publish the outcome of the receiver, once its value has been stored.
+	 * @param outcome The DONE or FAILED marker.
+	 * @return The top of the stack of tasklets registered while the receiver was pending.
+	 */
+	@SuppressWarnings("unchecked")
+	private PrimitiveCompletionTasklet<F> publish(Object outcome) {
+		return (PrimitiveCompletionTasklet<F>)STATE.getAndSet(this, outcome);
+	}
+
+	/**
+	 * Reverse a stack of tasklets so that callbacks are notified in the order they were registered.
+	 * @param top The top of the stack.
+	 * @return The bottom of the stack, now linked in registration order.
+	 */
+	private static <F> PrimitiveCompletionTasklet<F> reverse(PrimitiveCompletionTasklet<F> top) {
+		PrimitiveCompletionTasklet<F> reversed = null;
+		while (top != null) {
+			final PrimitiveCompletionTasklet<F> next = top.next;
+			top.next = reversed;
+			reversed = top;
+			top = next;
+		}
+		return reversed;
+	}
+}
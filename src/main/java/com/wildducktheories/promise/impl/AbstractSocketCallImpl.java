@@ -0,0 +1,432 @@
+package com.wildducktheories.promise.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.wildducktheories.promise.Call;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.tasklet.Directive;
+import com.wildducktheories.tasklet.Rescheduler;
+import com.wildducktheories.tasklet.Scheduler;
+import com.wildducktheories.tasklet.SchedulerAPI;
+import com.wildducktheories.tasklet.Tasklet;
+
+/**
+ * A variant of {@link AbstractCallImpl} for calls to a socket server whose <b>send</b> phase is driven by the
+ * completion of non-blocking I/O on an {@link AsynchronousSocketChannel} rather than executed by a blocking
+ * method, so that a call in flight does not occupy a thread. The call process is broken into 3 normal phases:
+ * <ul>
+ * <li>build
+ * <li>send
+ * <li>receive
+ * </ul>
+ * <p>and one abnormal phase:
+ * <ul>
+ * <li>handle
+ * </ul>
+ * <p>
+ * The <b>build</b> phase executes in the current thread and is responsible for transforming
+ * state accessible to the current thread into a call request.
+ * <p>
+ * The <b>send</b> phase connects to the address returned by <code>getAddress()</code>, encodes the request onto
+ * the connection with the call's {@link Framing} and decodes a response of type S from it. Each step is started
+ * by the completion of the previous one, on a thread of the channel group, and the encoding and decoding are done
+ * in pooled direct buffers, so thousands of concurrent calls need only the few threads of the channel group.
+ * <p>
+ * The <b>receive</b> phase executes in the current {@link Scheduler}'s main thread and
+ * is responsible for integrating the response of type S into the state
+ * of the {@link Scheduler}'s main thread and/or transforming the
+ * result into the promised type, P.
+ * <p>
+ * The <b>handle</b> phase executes if either of the <b>build</b>, <b>send</b> or <b>receive</b> phase throws an Exception.
+ * It's responsibility is to translate the caught exception to an instance of the {@link Promise}'s failure type.
+ * <p>
+ * Each call uses its own connection, which is closed once the response has been decoded, a phase fails or the
+ * promise is cancelled. Cancelling the promise closes the connection, which aborts any I/O in progress.
+ * <p>
+ * <h2>Required Execution Context</h2>
+ * The current {@link Scheduler} waits for the <b>send</b> phase to complete, so <code>call()</code> requires
+ * the same execution context as {@link com.wildducktheories.promise.API#when(java.util.concurrent.Callable)}.
+ *
+ * @author jonseymour
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ * @param <R> The call request type.
+ * @param <S> The call response type.
+ */
+public abstract class AbstractSocketCallImpl<P,F,R,S> implements Call<P, F>
+{
+	/**
+	 * Encodes requests onto, and decodes responses from, the byte stream of a connection.
+	 * <p>
+	 * A framing is created for each call by <code>newFraming()</code>, so it may keep the state of a partially
+	 * encoded request or a partially decoded response between invocations. Its methods are called on the threads
+	 * of the channel group, one at a time.
+	 *
+	 * @param <R> The call request type.
+	 * @param <S> The call response type.
+	 */
+	public interface Framing<R, S> {
+
+		/**
+		 * Encode as much of the request as fits into the buffer. If the request does not fit, the buffer is
+		 * written to the connection and this method is called again, with the same request, to encode the rest.
+		 * @param r The request.
+		 * @param out A buffer ready for <code>put()</code>.
+		 * @return true if the whole request has been encoded.
+		 * @throws Exception
+		 */
+		boolean encode(R r, ByteBuffer out) throws Exception;
+
+		/**
+		 * Decode a response from the bytes read from the connection so far. Bytes that are consumed must
+		 * be removed from the buffer by advancing its position; bytes that are not are presented again, followed by
+		 * more bytes, on the next invocation. If the buffer is full, the framing must consume some of its bytes.
+		 * @param in A buffer ready for <code>get()</code>.
+		 * @param endOfStream true if the server has closed its side of the connection, so no more bytes will follow.
+		 * @return The response, or null if more bytes are required.
+		 * @throws Exception
+		 */
+		S decode(ByteBuffer in, boolean endOfStream) throws Exception;
+	}
+
+	/**
+	 * Drives the <b>send</b> phase of one call through the completion of its I/O operations, then hands the
+	 * response back to the scheduler's main thread for the <b>receive</b> or <b>handle</b> phase.
+	 */
+	private final class Exchange
+		extends Waiter<P, F>
+		implements Tasklet, CompletionHandler<Integer, Void>
+	{
+		private final Deferred<P, F> deferred;
+		private final R r;
+		private final Framing<R, S> framing;
+		private final BufferPool pool;
+		private final long timeout;
+		private final Rescheduler rescheduler;
+		private final AtomicBoolean finished = new AtomicBoolean();
+
+		private volatile AsynchronousSocketChannel channel;
+		private ByteBuffer buffer;
+		private boolean encoded = false;
+		private boolean reading = false;
+
+		/**
+		 * The response or the exception, once finished.
+		 */
+		private S s;
+		private Exception e;
+
+		private Exchange(Scheduler scheduler, Deferred<P, F> deferred, R r) {
+			this.deferred = deferred;
+			this.r = r;
+			this.framing = newFraming();
+			this.pool = getBufferPool();
+			this.timeout = getTimeout();
+			this.rescheduler = scheduler.suspend(this);
+		}
+
+		/**
+		 * Open the connection, unless the call has already been cancelled. A cancellation that arrives before the
+		 * channel is assigned finds no channel to close, so the call is checked again once it has been assigned.
+		 */
+		private void start() {
+			try {
+				if (deferred.isCancelled()) {
+					finish(null, null);
+					return;
+				}
+				channel = AsynchronousSocketChannel.open(getChannelGroup());
+				if (deferred.isCancelled()) {
+					finish(null, null);
+					return;
+				}
+				configure(channel);
+				channel.connect(getAddress(), null, new CompletionHandler<Void, Void>() {
+					@Override
+					public void completed(Void result, Void attachment) {
+						buffer = pool.acquire();
+						encode();
+					}
+
+					@Override
+					public void failed(Throwable exc, Void attachment) {
+						finish(null, exc);
+					}
+				});
+			} catch (Exception e) {
+				finish(null, e);
+			}
+		}
+
+		/**
+		 * Encode the next part of the request into the buffer and write it.
+		 */
+		private void encode() {
+			try {
+				buffer.clear();
+				encoded = framing.encode(r, buffer);
+				buffer.flip();
+				if (!encoded && !buffer.hasRemaining()) {
+					throw new IOException("request frame was not encoded into an empty buffer");
+				}
+				write();
+			} catch (Exception e) {
+				finish(null, e);
+			}
+		}
+
+		private void write() {
+			if (timeout > 0) {
+				channel.write(buffer, timeout, TimeUnit.MILLISECONDS, null, this);
+			} else {
+				channel.write(buffer, null, this);
+			}
+		}
+
+		private void read() {
+			if (timeout > 0) {
+				channel.read(buffer, timeout, TimeUnit.MILLISECONDS, null, this);
+			} else {
+				channel.read(buffer, null, this);
+			}
+		}
+
+		/**
+		 * Called when a write or read completes.
+		 */
+		@Override
+		public void completed(Integer n, Void attachment) {
+			try {
+				if (!reading) {
+					if (buffer.hasRemaining()) {
+						write();
+					} else if (!encoded) {
+						encode();
+					} else {
+						reading = true;
+						buffer.clear();
+						read();
+					}
+					return;
+				}
+				buffer.flip();
+				final S s = framing.decode(buffer, n < 0);
+				buffer.compact();
+				if (s != null) {
+					finish(s, null);
+				} else if (n < 0) {
+					throw new EOFException("connection closed before the response was complete");
+				} else if (!buffer.hasRemaining()) {
+					throw new IOException("response frame was not consumed from a full buffer");
+				} else {
+					read();
+				}
+			} catch (Exception e) {
+				finish(null, e);
+			}
+		}
+
+		@Override
+		public void failed(Throwable exc, Void attachment) {
+			finish(null, exc);
+		}
+
+		/**
+		 * Release the connection and the buffer, then hand the outcome of the <b>send</b> phase to the
+		 * scheduler's main thread. Called once no I/O is pending.
+		 */
+		private void finish(S s, Throwable t) {
+			if (!finished.compareAndSet(false, true)) {
+				return;
+			}
+			this.s = s;
+			this.e = t == null || t instanceof Exception ? (Exception)t : new ExecutionException(t);
+			close();
+			if (buffer != null) {
+				final ByteBuffer buffer = this.buffer;
+				this.buffer = null;
+				pool.release(buffer);
+			}
+			rescheduler.resume(Directive.SYNC);
+		}
+
+		private void close() {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					// the outcome of the call does not depend on a clean close.
+				}
+			}
+		}
+
+		/**
+		 * Execute the <b>receive</b> or <b>handle</b> phase on the scheduler's main thread.
+		 */
+		@Override
+		public Directive task() {
+			final Deferred<?, ?> outer = CurrentCall.enter(deferred);
+			try {
+				if (deferred.isCancelled()) {
+					return Directive.DONE;
+				} else if (e == null) {
+					final P p = receive(s);
+					deferred.resolve(p);
+				} else {
+					deferred.reject(handle(e));
+				}
+			} catch (Exception e) {
+				deferred.reject(handle(e));
+			} finally {
+				CurrentCall.exit(outer);
+			}
+			return Directive.DONE;
+		}
+
+		@Override
+		public void onDone(P p) {
+		}
+
+		@Override
+		public void onFail(F f) {
+		}
+
+		/**
+		 * Abort the I/O in progress, if any, by closing the connection. The handler of the aborted operation
+		 * then finishes the exchange.
+		 */
+		@Override
+		void onCancel() {
+			close();
+		}
+
+		/**
+		 * An exchange does not observe the outcome of the call, so it does not prevent its cancellation.
+		 */
+		@Override
+		boolean isObserving() {
+			return false;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.Call#call()
+	 */
+	@Override
+	public final Promise<P, F> call() {
+		final Deferred<P, F> deferred = PromiseAPI.get().deferred();
+		final Deferred<?, ?> outer = CurrentCall.enter(deferred);
+		try {
+			final R r = build();
+			final Scheduler scheduler = SchedulerAPI.get().getScheduler();
+			final Exchange exchange = new Exchange(scheduler, deferred, r);
+			scheduler.schedule(exchange, Directive.WAIT);
+			if (deferred instanceof DeferredImpl) {
+				((DeferredImpl<P, F>)deferred).addWaiter(exchange);
+			}
+			exchange.start();
+			return deferred.promise();
+		} catch (Exception e) {
+			return deferred.reject(handle(e)).promise();
+		} finally {
+			CurrentCall.exit(outer);
+		}
+	}
+
+	/**
+	 * Answer true if the caller of the current call no longer requires its result.
+	 * <p>
+	 * This method may be called from within the <b>build</b> and <b>receive</b> phases to decide whether to
+	 * abandon work early. If the promise returned by <code>call()</code> is cancelled during the <b>send</b>
+	 * phase, the connection is closed and the <b>receive</b> phase is skipped.
+	 * @return true if the promise for the current call has been cancelled.
+	 * @see Promise#cancel()
+	 */
+	protected final boolean isCancelled() {
+		return CurrentCall.isCancelled();
+	}
+
+	/**
+	 * Answer the channel group whose threads perform the I/O of the <b>send</b> phase.
+	 * @return The channel group, or null (the default) for the system-wide default group.
+	 * @throws IOException
+	 */
+	protected AsynchronousChannelGroup getChannelGroup() throws IOException {
+		return null;
+	}
+
+	/**
+	 * Answer the pool from which the buffers of the <b>send</b> phase are acquired.
+	 * @return The pool, {@link BufferPool#shared()} by default.
+	 */
+	protected BufferPool getBufferPool() {
+		return BufferPool.shared();
+	}
+
+	/**
+	 * Answer the maximum time to wait for each read or write of the <b>send</b> phase.
+	 * @return The timeout in milliseconds, or 0 (the default) to wait indefinitely.
+	 */
+	protected long getTimeout() {
+		return 0;
+	}
+
+	/**
+	 * Set the options of a newly opened channel before it is connected. The default implementation
+	 * disables Nagle's algorithm, since calls write a whole request and then wait for its response.
+	 * @param channel The channel.
+	 * @throws IOException
+	 */
+	protected void configure(AsynchronousSocketChannel channel) throws IOException {
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+	}
+
+	/**
+	 * Build a request of type R in the caller's thread.
+	 * @return A request of type R.
+	 * @throws Exception
+	 */
+	protected abstract R build() throws Exception;
+
+	/**
+	 * Answer the address of the server to which the request is sent.
+	 * @return The server address.
+	 * @throws Exception
+	 */
+	protected abstract SocketAddress getAddress() throws Exception;
+
+	/**
+	 * Create the framing that encodes the request and decodes the response of one call.
+	 * @return A new framing.
+	 */
+	protected abstract Framing<R, S> newFraming();
+
+	/**
+	 * Receive a result of type S and return a result of the promised type, P.
+	 * @param s The Call response type.
+	 * @return A result of type P.
+	 * @throws Exception
+	 */
+	protected abstract P receive(S s) throws Exception;
+
+	/**
+	 * Transform an exception into a failure of type F.
+	 * @param e An exception.
+	 * @return A failure of type F.
+	 */
+	protected abstract F handle(Exception e);
+
+}
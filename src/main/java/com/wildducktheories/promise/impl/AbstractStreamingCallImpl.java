@@ -0,0 +1,273 @@
+	package com.wildducktheories.promise.impl;
+
+	import java.util.ArrayList;
+	import java.util.List;
+
+	import com.wildducktheories.promise.Call;
+	import com.wildducktheories.promise.Deferred;
+	import com.wildducktheories.promise.Promise;
+	import com.wildducktheories.promise.PromiseAPI;
+	import com.wildducktheories.tasklet.Directive;
+	import com.wildducktheories.tasklet.Scheduler;
+	import com.wildducktheories.tasklet.SchedulerAPI;
+	import com.wildducktheories.tasklet.Tasklet;
+
+	/**
+	 * A variant of {@link AbstractCallImpl} for calls whose response is a stream of elements, which are
+	 * delivered to the current {@link Scheduler}'s main thread incrementally rather than being buffered into a
+	 * single result. The call process is broken into 4 normal phases:
+	 * <ul>
+	 * <li>build
+	 * <li>send
+	 * <li>read
+	 * <li>receive
+	 * </ul>
+	 * <p>and two final phases:
+	 * <ul>
+	 * <li>finish
+	 * <li>handle
+	 * </ul>
+	 * <p>
+	 * The <b>build</b> phase executes in the current thread and is responsible for transforming
+	 * state accessible to the current thread into a call request.
+	 * <p>
+	 * The <b>send</b> phase executes in an asynchronous thread and returns a response of type S (for example, an
+	 * open cursor or stream) from which the elements of the response can be read, or throws an {@link Exception}.
+	 * <p>
+	 * The <b>read</b> phase executes in an asynchronous thread and reads up to a batch of elements from the
+	 * response, one at a time, until the response is exhausted.
+	 * <p>
+	 * The <b>receive</b> phase executes in the current {@link Scheduler}'s main thread and integrates each element
+	 * of the batch, in order, into the state of the main thread. The next batch is not read until every element of
+	 * the previous batch has been received, so at most one batch is buffered at any time and a slow receiver
+	 * pauses further reads.
+	 * <p>
+	 * The <b>finish</b> phase executes in the current {@link Scheduler}'s main thread once the last element has been
+	 * received and transforms the response into the promised type, P.
+	 * <p>
+	 * The <b>handle</b> phase executes if any of the other phases throws an Exception. It's responsibility is to
+	 * translate the caught exception to an instance of the {@link Promise}'s failure type.
+	 * <p>
+	 * Once a response has been sent, it is always closed, whether the stream ends, a phase fails or the promise
+	 * is cancelled.
+	 * <p>
+	 * <h2>Required Execution Context</h2>
+	 * Because the <b>send</b> and <b>read</b> phases are scheduled asynchronously, <code>call()</code> requires
+	 * the same execution context as {@link com.wildducktheories.promise.API#when(java.util.concurrent.Callable)}.
+	 *
+	 * @author jonseymour
+	 *
+	 * @param <P> The promised type.
+	 * @param <F> The failure type.
+	 * @param <R> The call request type.
+	 * @param <S> The call response type.
+	 * @param <E> The type of each element of the response.
+	 */
+	public abstract class AbstractStreamingCallImpl<P,F,R,S,E> implements Call<P, F>
+	{
+		/**
+		 * The default maximum number of elements read per batch.
+		 */
+		public static final int DEFAULT_BATCH_SIZE = 64;
+
+		/* (non-Javadoc)
+		 * @see com.wildducktheories.promise.Call#call()
+		 */
+		@Override
+		public final Promise<P, F> call() {
+			final Deferred<P, F> deferred = PromiseAPI.get().deferred();
+			final Interrupter<P, F> interrupter = new Interrupter<P, F>();
+			if (deferred instanceof DeferredImpl) {
+				((DeferredImpl<P, F>)deferred).addWaiter(interrupter);
+			}
+
+			final Deferred<?, ?> outer = CurrentCall.enter(deferred);
+			try {
+				final R r = build();
+				final int batchSize = Math.max(1, getBatchSize());
+				SchedulerAPI.get().getScheduler().schedule(new Tasklet() {
+					private boolean sent = false;
+					private S s;
+					private List<E> batch;
+					private boolean ended = false;
+					private Exception e;
+
+					@Override
+					public Directive task() {
+						final Deferred<?, ?> outer = CurrentCall.enter(deferred);
+						try {
+							if (batch == null) {
+								// send and/or read on an asynchronous thread
+								if (deferred instanceof DeferredImpl) {
+									try {
+										if (!interrupter.enter((DeferredImpl<P, F>)deferred)) {
+											close();
+											return Directive.DONE;
+										}
+										read();
+									} finally {
+										interrupter.exit();
+									}
+								} else {
+									read();
+								}
+								return Directive.SYNC;
+							} else {
+								// receive and/or finish on the main thread
+								if (deferred.isCancelled()) {
+									close();
+									return Directive.DONE;
+								} else if (e != null) {
+									close();
+									deferred.reject(handle(e));
+									return Directive.DONE;
+								}
+								for (E element : batch) {
+									receive(element);
+									if (deferred.isCancelled()) {
+										close();
+										return Directive.DONE;
+									}
+								}
+								if (ended) {
+									try {
+										final P p = finish(s);
+										deferred.resolve(p);
+									} finally {
+										close();
+									}
+									return Directive.DONE;
+								}
+								batch = null;
+								return Directive.ASYNC;
+							}
+						} catch (Exception e) {
+							if (batch == null) {
+								this.batch = new ArrayList<E>(0);
+								this.e = e;
+								return Directive.SYNC;
+							} else {
+								deferred.reject(handle(e));
+								close();
+								return Directive.DONE;
+							}
+						} finally {
+							CurrentCall.exit(outer);
+						}
+					}
+
+					private void read() throws Exception {
+						if (!sent) {
+							sent = true;
+							s = send(r);
+						}
+						final List<E> batch = new ArrayList<E>(batchSize);
+						while (batch.size() < batchSize) {
+							final E element = AbstractStreamingCallImpl.this.read(s);
+							if (element == null) {
+								ended = true;
+								break;
+							}
+							batch.add(element);
+						}
+						this.batch = batch;
+					}
+
+					private void close() {
+						if (s != null) {
+							final S s = this.s;
+							this.s = null;
+							try {
+								AbstractStreamingCallImpl.this.close(s);
+							} catch (Exception e) {
+								// the outcome of the call has already been decided.
+							}
+						}
+					}
+				}, Directive.ASYNC);
+				return deferred.promise();
+			} catch (Exception e) {
+				return deferred.reject(handle(e)).promise();
+			} finally {
+				CurrentCall.exit(outer);
+			}
+		}
+
+		/**
+		 * Answer true if the caller of the current call no longer requires its result.
+		 * <p>
+		 * This method may be called from within any phase to decide whether to abandon work early. If the
+		 * promise returned by <code>call()</code> is cancelled, no further elements are read or received, and the
+		 * thread executing a <b>send</b> or <b>read</b> phase at the time is interrupted.
+		 * @return true if the promise for the current call has been cancelled.
+		 * @see Promise#cancel()
+		 */
+		protected final boolean isCancelled() {
+			return CurrentCall.isCancelled();
+		}
+
+		/**
+		 * Answer the maximum number of elements read before the batch is delivered to the main thread.
+		 * Larger batches cost fewer hops between threads; smaller batches buffer less and deliver the first
+		 * elements sooner.
+		 * @return The maximum batch size, {@link #DEFAULT_BATCH_SIZE} by default.
+		 */
+		protected int getBatchSize() {
+			return DEFAULT_BATCH_SIZE;
+		}
+
+		/**
+		 * Build a request of type R in the caller's thread.
+		 * @return A request of type R.
+		 * @throws Exception
+		 */
+		protected abstract R build() throws Exception;
+
+		/**
+		 * Send a Call request of type R in an asynchronous thread and return a response of type S
+		 * from which the elements of the response can be read.
+		 * @param r The request type.
+		 * @return The remote response type.
+		 * @throws Exception
+		 */
+		protected abstract S send(R r) throws Exception;
+
+		/**
+		 * Read the next element of the response in an asynchronous thread.
+		 * @param s The Call response.
+		 * @return The next element, or null if the response has been exhausted.
+		 * @throws Exception
+		 */
+		protected abstract E read(S s) throws Exception;
+
+		/**
+		 * Receive the next element of the response in the main thread.
+		 * @param e An element of the response.
+		 * @throws Exception
+		 */
+		protected abstract void receive(E e) throws Exception;
+
+		/**
+		 * Return a result of the promised type, P, once all the elements of the response have been received.
+		 * @param s The Call response.
+		 * @return A result of type P.
+		 * @throws Exception
+		 */
+		protected abstract P finish(S s) throws Exception;
+
+		/**
+		 * Release the resources held by the response. The default implementation does nothing.
+		 * @param s The Call response.
+		 * @throws Exception
+		 */
+		protected void close(S s) throws Exception {
+		}
+
+		/**
+		 * Transform an exception into a failure of type F.
+		 * @param e An exception.
+		 * @return A failure of type F.
+		 */
+		protected abstract F handle(Exception e);
+
+	}
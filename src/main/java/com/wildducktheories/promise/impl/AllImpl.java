@@ -0,0 +1,115 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.Promise;
+
+/**
+ * The promise returned by {@link API#all(Collection)}.
+ * <p>
+ * The receiver waits on each element promise with a {@link Waiter} that is notified directly on the resolving 
+ * thread rather than via a {@link SyncCompletionTasklet}, records each resolution in a pre-sized array and 
+ * counts down a single atomic counter. The only hop onto a synchronous thread is the one made by callbacks 
+ * registered with the receiver itself, once all the elements have been resolved or any one has been rejected.
+ * <p>
+ * If any element is cancelled, the receiver is cancelled too.
+ *
+ * @param <P> The promised type of each element.
+ * @param <F> The failure type.
+ */
+final class AllImpl<P, F> extends DeferredImpl<List<P>, F> {
+
+	/**
+	 * Waits on the element promise at a given index.
+	 */
+	private static final class Element<P, F> extends Waiter<P, F> {
+		private final AllImpl<P, F> all;
+		private final int index;
+
+		private Element(AllImpl<P, F> all, int index) {
+			this.all = all;
+			this.index = index;
+		}
+
+		@Override
+		public void onDone(P p) {
+			all.onDone(index, p);
+		}
+
+		@Override
+		public void onFail(F f) {
+			all.onFail(f);
+		}
+
+		@Override
+		void onCancel() {
+			all.cancel();
+		}
+
+		@Override
+		boolean isObserving() {
+			return !all.isCancelled();
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<AllImpl> REMAINING =
+		AtomicIntegerFieldUpdater.newUpdater(AllImpl.class, "remaining");
+
+	private final Object[] results;
+
+	/**
+	 * The number of elements that have yet to be resolved, or zero once the receiver is settled.
+	 */
+	private volatile int remaining;
+
+	AllImpl(int size) {
+		this.results = new Object[size];
+		this.remaining = size;
+	}
+
+	/**
+	 * Wait on each of the specified promises. Waiting stops early if one of the promises has already been rejected.
+	 * @param promises The element promises, of which there must be as many as the size of the receiver.
+	 * @return The receiver.
+	 */
+	@SuppressWarnings("unchecked")
+	AllImpl<P, F> join(Collection<? extends Promise<P, F>> promises) {
+		if (results.length == 0) {
+			resolve(Collections.<P>emptyList());
+			return this;
+		}
+		int index = 0;
+		for (Promise<P, F> promise : promises) {
+			if (remaining == 0) {
+				break;
+			}
+			final Element<P, F> element = new Element<P, F>(this, index++);
+			if (promise instanceof DeferredImpl) {
+				((DeferredImpl<P, F>)promise).addWaiter(element);
+			} else {
+				promise.complete(element);
+			}
+		}
+		return this;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void onDone(int index, P p) {
+		results[index] = p;
+		if (REMAINING.decrementAndGet(this) == 0) {
+			resolve((List<P>)(List<?>)Arrays.asList(results));
+		}
+	}
+
+	private void onFail(F f) {
+		if (REMAINING.getAndSet(this, 0) > 0) {
+			reject(f);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.tasklet.Directive;
+import com.wildducktheories.tasklet.Rescheduler;
+import com.wildducktheories.tasklet.Scheduler;
+import com.wildducktheories.tasklet.Tasklet;
+
+/**
+ * A variant of {@link SyncCompletionTasklet} that delivers the promise result on a thread of an {@link Executor}
+ * rather than on the scheduler's main thread. The scheduler waits for the tasklet until the callback has 
+ * returned, or the promise is cancelled.
+ * <p>
+ * If the executor rejects the delivery, the result is delivered on the scheduler's main thread instead. If a 
+ * callback throws on the executor, the exception is rethrown on the scheduler's main thread, as it would have been 
+ * had the callback been registered with <code>done()</code> or <code>fail()</code>.
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+final class AsyncCompletionTasklet<P, F>
+	extends Waiter<P, F>
+	implements Tasklet, Runnable
+{
+	private final Rescheduler rescheduler;
+	private final Executor executor;
+	private final DoneCallback<P> doneCallback;
+	private final FailCallback<F> failCallback;
+
+	/**
+	 * The result or failure, as indicated by isFailure.
+	 */
+	private Object outcome;
+	private boolean isFailure = false;
+
+	/**
+	 * The exception thrown by a callback on a thread of the executor, if any.
+	 */
+	private RuntimeException thrown;
+
+	public AsyncCompletionTasklet(Scheduler scheduler, Executor executor,
+			DoneCallback<P> doneCallback, FailCallback<F> failCallback) {
+		super();
+		this.rescheduler = scheduler.suspend(this);
+		this.executor = executor;
+		this.doneCallback = doneCallback;
+		this.failCallback = failCallback;
+	}
+
+	public void onDone(P p) {
+		isFailure = false;
+		outcome = p;
+		execute();
+	}
+
+	public void onFail(F f) {
+		isFailure = true;
+		outcome = f;
+		execute();
+	}
+
+	/**
+	 * Release the scheduler from waiting for this tasklet without calling either callback, other than to
+	 * pass the cancellation on to a callback that is itself a {@link Waiter}.
+	 */
+	@Override
+	void onCancel() {
+		try {
+			if (doneCallback instanceof Waiter) {
+				((Waiter<?, ?>)doneCallback).onCancel();
+			} else if (failCallback instanceof Waiter) {
+				((Waiter<?, ?>)failCallback).onCancel();
+			}
+		} finally {
+			rescheduler.resume(Directive.DONE);
+		}
+	}
+
+	@Override
+	boolean isObserving() {
+		if (doneCallback instanceof Waiter) {
+			return ((Waiter<?, ?>)doneCallback).isObserving();
+		} else if (failCallback instanceof Waiter) {
+			return ((Waiter<?, ?>)failCallback).isObserving();
+		} else {
+			return true;
+		}
+	}
+
+	private void execute() {
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {
+			rescheduler.resume(Directive.SYNC);
+		}
+	}
+
+	/**
+	 * Deliver the result on a thread of the executor. If the callback throws, the tasklet is resumed on the 
+	 * scheduler's main thread to rethrow the exception there.
+	 */
+	@Override
+	public void run() {
+		Directive directive = Directive.DONE;
+		try {
+			deliver();
+		} catch (RuntimeException e) {
+			thrown = e;
+			directive = Directive.SYNC;
+		} finally {
+			rescheduler.resume(directive);
+		}
+	}
+
+	/**
+	 * Deliver the result on the scheduler's main thread, if the executor rejected it, or rethrow the exception 
+	 * thrown by the callback on the executor.
+	 */
+	@Override
+	public Directive task() {
+		if (thrown != null) {
+			throw thrown;
+		}
+		deliver();
+		return Directive.DONE;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void deliver() {
+		if (isFailure) {
+			if (failCallback != null) {
+				failCallback.onFail((F)outcome);
+			}
+		} else {
+			if (doneCallback != null) {
+				doneCallback.onDone((P)outcome);
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.tasklet.Directive;
+import com.wildducktheories.tasklet.Scheduler;
+import com.wildducktheories.tasklet.Tasklet;
+
+/**
+ * The promise returned by {@link API#whenAll(Collection)}.
+ * <p>
+ * The callables are divided into contiguous chunks and each chunk is submitted as a single ASYNC {@link Tasklet}
+ * (or a single task of an {@link Executor}) that calls the callables of the chunk in turn, so submission costs
+ * one promise and one scheduling call per chunk rather than per callable. Each chunk records its results in
+ * a shared, pre-sized array and then counts down a single atomic counter of unfinished chunks; the chunk
+ * that finishes last resolves the receiver, so callbacks registered with the receiver make the only hop onto
+ * a synchronous thread.
+ * <p>
+ * The first failure rejects the receiver and stops the remaining chunks from starting further callables.
+ * Cancelling the receiver does the same and also interrupts the chunks that are running.
+ *
+ * @param <P> The result type of each callable.
+ */
+final class BatchImpl<P> extends DeferredImpl<List<P>, Exception> {
+
+	/**
+	 * Calls a contiguous range of the callables.
+	 */
+	private static final class Chunk<P> extends Interrupter<List<P>, Exception> implements Tasklet, Runnable {
+		private final BatchImpl<P> batch;
+		private final int from;
+		private final int to;
+
+		private Chunk(BatchImpl<P> batch, int from, int to) {
+			this.batch = batch;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Directive task() {
+			try {
+				if (enter(batch)) {
+					for (int i = from; i < to && batch.remaining > 0; i++) {
+						batch.results[i] = batch.callables[i].call();
+					}
+					batch.onDone();
+				}
+			} catch (Exception e) {
+				batch.onFail(e);
+			} finally {
+				exit();
+			}
+			return Directive.DONE;
+		}
+
+		@Override
+		public void run() {
+			task();
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<BatchImpl> REMAINING =
+		AtomicIntegerFieldUpdater.newUpdater(BatchImpl.class, "remaining");
+
+	private final Callable<? extends P>[] callables;
+	private final Object[] results;
+
+	/**
+	 * The number of chunks that have yet to finish, or zero once the receiver is settled.
+	 */
+	private volatile int remaining;
+
+	@SuppressWarnings("unchecked")
+	BatchImpl(Collection<? extends Callable<? extends P>> callables) {
+		this.callables = callables.toArray(new Callable[callables.size()]);
+		this.results = new Object[this.callables.length];
+	}
+
+	/**
+	 * Submit the callables in chunks of the specified size.
+	 * @param chunkSize The maximum number of callables per chunk.
+	 * @param scheduler The scheduler to which chunks are submitted if executor is <code>null</code>.
+	 * @param executor The executor to which chunks are submitted, or <code>null</code>.
+	 * @return The receiver.
+	 */
+	BatchImpl<P> submit(int chunkSize, Scheduler scheduler, Executor executor) {
+		final int length = callables.length;
+		if (length == 0) {
+			resolve(this.<P>list());
+			return this;
+		}
+		final int chunks = (length + chunkSize - 1) / chunkSize;
+		remaining = chunks;
+		if (executor != null) {
+			hold();
+		}
+		for (int from = 0; from < length && remaining > 0; from += chunkSize) {
+			final Chunk<P> chunk = new Chunk<P>(this, from, Math.min(length, from + chunkSize));
+			addWaiter(chunk);
+			if (executor == null) {
+				scheduler.schedule(chunk, Directive.ASYNC);
+			} else {
+				try {
+					executor.execute(chunk);
+				} catch (RejectedExecutionException e) {
+					onFail(e);
+				}
+			}
+		}
+		return this;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <Q> List<Q> list() {
+		return (List<Q>)(List<?>)Arrays.asList(results);
+	}
+
+	private void onDone() {
+		if (REMAINING.decrementAndGet(this) == 0) {
+			resolve(this.<P>list());
+		}
+	}
+
+	private void onFail(Exception e) {
+		if (REMAINING.getAndSet(this, 0) > 0) {
+			reject(e);
+		}
+	}
+
+	@Override
+	public boolean cancel() {
+		if (!super.cancel()) {
+			return false;
+		}
+		remaining = 0;
+		return true;
+	}
+}
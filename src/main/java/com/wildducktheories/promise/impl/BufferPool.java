@@ -0,0 +1,110 @@
+package com.wildducktheories.promise.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of direct {@link ByteBuffer}s of a fixed size.
+ * <p>
+ * Direct buffers are expensive to allocate and are only freed when they are garbage collected, but they
+ * let socket channels read and write without copying through a temporary native buffer. Pooling them
+ * means that calls in flight share a small, stable set of buffers rather than allocating per call.
+ * <p>
+ * Acquiring and releasing a buffer only poll and offer a lock-free queue. If the pool is empty, a new buffer
+ * is allocated; if the pool is full, a released buffer is dropped and left for the garbage collector.
+ *
+ * @author jonseymour
+ */
+public final class BufferPool {
+
+	/**
+	 * The size of the buffers of the shared pool, in bytes.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * The maximum number of idle buffers retained by the shared pool.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * The pool shared by all the calls of this class loader.
+	 */
+	private static final class Shared {
+		private static final BufferPool POOL = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_CAPACITY);
+	}
+
+	private final int bufferSize;
+	private final int capacity;
+	private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/**
+	 * @param bufferSize The size of each buffer, in bytes.
+	 * @param capacity The maximum number of idle buffers retained by the pool.
+	 */
+	public BufferPool(int bufferSize, int capacity) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+		}
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.bufferSize = bufferSize;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Answer the pool shared by all the calls of this class loader.
+	 * @return The shared pool.
+	 */
+	public static BufferPool shared() {
+		return Shared.POOL;
+	}
+
+	/**
+	 * @return The size of each buffer, in bytes.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return The number of idle buffers currently retained by the pool.
+	 */
+	public int getIdleCount() {
+		return idleCount.get();
+	}
+
+	/**
+	 * Take a cleared buffer from the pool, allocating a new one if the pool is empty.
+	 * @return A direct buffer of the pool's buffer size.
+	 */
+	public ByteBuffer acquire() {
+		final ByteBuffer buffer = idle.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		idleCount.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer to the pool. The caller must not use the buffer afterwards. Buffers that were
+	 * not acquired from a pool of the same buffer size are ignored.
+	 * @param buffer A buffer previously returned by <code>acquire()</code>.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) {
+			return;
+		}
+		if (idleCount.incrementAndGet() > capacity) {
+			idleCount.decrementAndGet();
+			return;
+		}
+		idle.offer(buffer);
+	}
+}
@@ -0,0 +1,222 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.wildducktheories.promise.Call;
+import com.wildducktheories.promise.CompletionCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+
+/**
+ * Caches the promises of {@link Call}s by a key supplied by the caller.
+ * <p>
+ * Concurrent calls with the same key share a single call of the underlying {@link Call} (single-flight): the
+ * first caller makes the call and later callers wait for its outcome. Each caller of a call in flight is given
+ * its own promise, so a caller that cancels its promise does not affect the others; the underlying call is
+ * only cancelled when all its callers have cancelled their promises.
+ * <p>
+ * Once the underlying call is resolved, its promise is retained for the specified time to live and later calls
+ * with the same key are answered with that promise, which is already settled, so no further call is made and
+ * callbacks registered with it are delivered without waiting. Rejections are not retained unless
+ * <code>isCacheable()</code> is overridden to allow it. The number of entries is bounded; when the bound is
+ * exceeded, the least recently used entry is evicted.
+ * <p>
+ * A call that throws instead of returning a promise is treated as a rejection with the failure produced by
+ * <code>handle()</code> for the exception it throws, which is delivered to every caller sharing the call.
+ *
+ * @author jonseymour
+ *
+ * @param <K> The key type.
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+public abstract class CachingCallImpl<K, P, F>
+{
+	/**
+	 * The cached state for a single key.
+	 */
+	private final class Slot extends Waiter<P, F> {
+		private final K key;
+		private final DeferredImpl<P, F> shared = APIImpl.newDeferred(PromiseAPI.get());
+
+		/**
+		 * The time, per {@link System#nanoTime()}, after which the entry is stale, or <code>Long.MAX_VALUE</code> while
+		 * the call is in flight.
+		 */
+		private volatile long expires = Long.MAX_VALUE;
+
+		private Slot(K key) {
+			this.key = key;
+		}
+
+		private boolean isStale(long now) {
+			return expires != Long.MAX_VALUE && now - expires >= 0;
+		}
+
+		/**
+		 * Answer a promise for the caller of a call: the shared promise itself, once it is settled, or a promise that
+		 * follows the shared promise, while the call is in flight.
+		 */
+		private Promise<P, F> promise() {
+			if (expires != Long.MAX_VALUE) {
+				return shared;
+			}
+			final DeferredImpl<P, F> promise = APIImpl.newDeferred(PromiseAPI.get());
+			shared.forwardTo(promise);
+			return promise;
+		}
+
+		@Override
+		public void onDone(P p) {
+			expires = System.nanoTime() + ttl;
+		}
+
+		@Override
+		public void onFail(F f) {
+			if (isCacheable(f)) {
+				expires = System.nanoTime() + ttl;
+			} else {
+				remove(this);
+			}
+		}
+
+		@Override
+		void onCancel() {
+			remove(this);
+		}
+
+		@Override
+		boolean isObserving() {
+			return false;
+		}
+	}
+
+	private final long ttl;
+	private final Map<K, Slot> entries;
+
+	/**
+	 * @param maximumSize The maximum number of entries.
+	 * @param ttl The time for which the outcome of a call is retained.
+	 * @param unit The unit of the time to live.
+	 */
+	public CachingCallImpl(final int maximumSize, long ttl, TimeUnit unit) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+		}
+		this.ttl = unit.toNanos(ttl);
+		this.entries = new LinkedHashMap<K, Slot>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Slot> eldest) {
+				return size() > maximumSize;
+			}
+		};
+	}
+
+	/**
+	 * Answer a promise for the outcome of the specified call, which is only called if there is neither a call in
+	 * flight nor a retained outcome for the specified key.
+	 * @param key The key.
+	 * @param call The call.
+	 * @return A {@link Promise} for the outcome of the call.
+	 */
+	@SuppressWarnings("unchecked")
+	public Promise<P, F> call(K key, Call<P, F> call) {
+		final long now = System.nanoTime();
+		final Slot entry;
+		synchronized (entries) {
+			final Slot existing = entries.get(key);
+			if (existing != null && !existing.isStale(now)) {
+				return existing.promise();
+			}
+			entry = new Slot(key);
+			entries.put(key, entry);
+		}
+
+		final Promise<P, F> caller = entry.promise();
+		entry.shared.addWaiter(entry);
+		try {
+			final Promise<P, F> promise = call.call();
+			if (promise instanceof DeferredImpl) {
+				((DeferredImpl<P, F>)promise).forwardTo(entry.shared);
+			} else {
+				promise.complete(new CompletionCallback<P, F>() {
+					@Override
+					public void onDone(P p) {
+						entry.shared.tryResolve(p);
+					}
+
+					@Override
+					public void onFail(F f) {
+						entry.shared.tryReject(f);
+					}
+				});
+			}
+		} catch (RuntimeException e) {
+			entry.shared.tryReject(handle(e));
+		}
+		return caller;
+	}
+
+	/**
+	 * Answer a {@link Call} which calls the specified call through the receiver, with the specified key.
+	 * @param key The key.
+	 * @param call The call.
+	 * @return A caching {@link Call}.
+	 */
+	public Call<P, F> decorate(final K key, final Call<P, F> call) {
+		return new Call<P, F>() {
+			@Override
+			public Promise<P, F> call() {
+				return CachingCallImpl.this.call(key, call);
+			}
+		};
+	}
+
+	/**
+	 * Discard the entry for the specified key, if any. A call in flight is not cancelled, but later calls
+	 * with the key will not share it.
+	 * @param key The key.
+	 */
+	public void invalidate(K key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+
+	/**
+	 * @return The number of entries, including stale entries that have not yet been discarded.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Transform an exception thrown by a call into a failure of type F.
+	 * @param e The exception thrown by the call.
+	 * @return A failure of type F.
+	 */
+	protected abstract F handle(Exception e);
+
+	/**
+	 * Answer true if the specified rejection should be retained like a resolution.
+	 * @param failure The rejection.
+	 * @return false by default.
+	 */
+	protected boolean isCacheable(F failure) {
+		return false;
+	}
+
+	private void remove(Slot entry) {
+		synchronized (entries) {
+			if (entries.get(entry.key) == entry) {
+				entries.remove(entry.key);
+			}
+		}
+	}
+}
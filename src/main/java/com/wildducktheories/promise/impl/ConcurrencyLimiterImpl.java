@@ -0,0 +1,338 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.wildducktheories.promise.Call;
+import com.wildducktheories.promise.CompletionCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.tasklet.Directive;
+import com.wildducktheories.tasklet.Scheduler;
+import com.wildducktheories.tasklet.SchedulerAPI;
+import com.wildducktheories.tasklet.Tasklet;
+
+/**
+ * Limits the number of {@link Call}s in flight to a limit that adapts to the observed latency of the calls.
+ * <p>
+ * The limit is adjusted after each successful call with a variant of the TCP Vegas algorithm: the minimum
+ * latency observed is taken as the latency of an unloaded downstream, and the ratio of that latency to the latency
+ * of the call estimates how many of the calls in flight were queued downstream rather than being served. If few
+ * calls were queued, the limit is raised; if many were, it is lowered, so the limit converges on the concurrency
+ * the downstream can serve without queueing. The minimum latency is re-measured periodically so that the limit
+ * can follow a downstream that becomes permanently slower.
+ * <p>
+ * Calls made while the limit is reached wait, in order, in a bounded queue and are started on the main thread
+ * of the {@link Scheduler} that was current when they were made as soon as calls in flight complete. Calls made
+ * while the queue is full are rejected immediately with the failure produced by <code>handle()</code> for a
+ * {@link RejectedExecutionException}. Calls that throw when they are started are rejected with the failure
+ * produced by <code>handle()</code> for the exception they throw. Cancelling the promise of a queued call removes
+ * it from the queue, and cancelling the promise of a call in flight releases its permit.
+ *
+ * @author jonseymour
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+public abstract class ConcurrencyLimiterImpl<P, F>
+{
+	/**
+	 * The number of latency samples after which the minimum latency is re-measured.
+	 */
+	private static final int PROBE_INTERVAL = 1000;
+
+	/**
+	 * The lowest limit.
+	 */
+	private static final int MIN_LIMIT = 1;
+
+	/**
+	 * A call that is waiting for, or has been granted, a permit.
+	 */
+	private final class Permit extends Waiter<P, F> implements Tasklet {
+		private final Call<P, F> call;
+		private final DeferredImpl<P, F> result;
+		private final Scheduler scheduler;
+		private final AtomicBoolean released = new AtomicBoolean();
+		private long start;
+
+		private Permit(Call<P, F> call, DeferredImpl<P, F> result, Scheduler scheduler) {
+			this.call = call;
+			this.result = result;
+			this.scheduler = scheduler;
+		}
+
+		/**
+		 * Start the call, having been granted a permit. If the call throws, the permit is released and the
+		 * result is rejected with the failure produced by <code>handle()</code> for the exception.
+		 */
+		@SuppressWarnings("unchecked")
+		private void start() {
+			start = System.nanoTime();
+			final Promise<P, F> promise;
+			try {
+				promise = call.call();
+			} catch (RuntimeException e) {
+				release(-1);
+				result.tryReject(handle(e));
+				return;
+			}
+			if (promise instanceof DeferredImpl) {
+				final DeferredImpl<P, F> deferred = (DeferredImpl<P, F>)promise;
+				deferred.addWaiter(this);
+				deferred.forwardTo(result);
+			} else {
+				promise.complete(new CompletionCallback<P, F>() {
+					@Override
+					public void onDone(P p) {
+						Permit.this.onDone(p);
+						result.tryResolve(p);
+					}
+
+					@Override
+					public void onFail(F f) {
+						Permit.this.onFail(f);
+						result.tryReject(f);
+					}
+				});
+				result.addWaiter(new Waiter<P, F>() {
+					@Override
+					public void onDone(P p) {
+					}
+
+					@Override
+					public void onFail(F f) {
+					}
+
+					@Override
+					void onCancel() {
+						release(-1);
+						promise.cancel();
+					}
+
+					@Override
+					boolean isObserving() {
+						return false;
+					}
+				});
+			}
+		}
+
+		@Override
+		public Directive task() {
+			if (!result.isCancelled()) {
+				start();
+			} else {
+				release(-1);
+			}
+			return Directive.DONE;
+		}
+
+		@Override
+		public void onDone(P p) {
+			release(System.nanoTime() - start);
+		}
+
+		@Override
+		public void onFail(F f) {
+			release(-1);
+		}
+
+		@Override
+		void onCancel() {
+			release(-1);
+		}
+
+		@Override
+		boolean isObserving() {
+			return false;
+		}
+
+		/**
+		 * Release the permit, unless it has already been released.
+		 * @param latency The latency of a successful call in nanoseconds, or -1 if the call did not succeed.
+		 */
+		private void release(long latency) {
+			if (released.compareAndSet(false, true)) {
+				ConcurrencyLimiterImpl.this.release(latency);
+			}
+		}
+	}
+
+	private final int maxLimit;
+	private final int maxQueue;
+	private final Queue<Permit> queue = new ArrayDeque<Permit>();
+
+	/*
+	 * The remaining fields are guarded by the queue.
+	 */
+	private double limit;
+	private int inFlight = 0;
+	private long minLatency = Long.MAX_VALUE;
+	private int samples = 0;
+
+	/**
+	 * @param initialLimit The initial limit on the number of calls in flight.
+	 * @param maxLimit The maximum limit on the number of calls in flight.
+	 * @param maxQueue The maximum number of calls waiting for a call in flight to complete.
+	 */
+	public ConcurrencyLimiterImpl(int initialLimit, int maxLimit, int maxQueue) {
+		if (initialLimit < 1 || maxLimit < initialLimit || maxQueue < 0) {
+			throw new IllegalArgumentException("require 1 <= initialLimit <= maxLimit and 0 <= maxQueue");
+		}
+		this.maxLimit = maxLimit;
+		this.maxQueue = maxQueue;
+		this.limit = initialLimit;
+	}
+
+	/**
+	 * Make the specified call as soon as the number of calls in flight is below the limit.
+	 * @param call The call.
+	 * @return A {@link Promise} for the outcome of the call.
+	 */
+	public Promise<P, F> call(Call<P, F> call) {
+		final DeferredImpl<P, F> result = APIImpl.newDeferred(PromiseAPI.get());
+		final Permit permit;
+		synchronized (queue) {
+			if (inFlight < (int)limit) {
+				inFlight++;
+				permit = new Permit(call, result, null);
+			} else if (queue.size() < maxQueue) {
+				queue.add(new Permit(call, result, SchedulerAPI.get().getScheduler()));
+				permit = null;
+			} else {
+				result.reject(handle(new RejectedExecutionException("concurrency limit exceeded")));
+				return result;
+			}
+		}
+		if (permit != null) {
+			permit.start();
+		} else {
+			result.hold();
+			result.addWaiter(new Waiter<P, F>() {
+				@Override
+				public void onDone(P p) {
+				}
+
+				@Override
+				public void onFail(F f) {
+				}
+
+				@Override
+				void onCancel() {
+					dequeue(result);
+				}
+
+				@Override
+				boolean isObserving() {
+					return false;
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Answer a {@link Call} which calls the specified call through the receiver.
+	 * @param call The call.
+	 * @return A limited {@link Call}.
+	 */
+	public Call<P, F> decorate(final Call<P, F> call) {
+		return new Call<P, F>() {
+			@Override
+			public Promise<P, F> call() {
+				return ConcurrencyLimiterImpl.this.call(call);
+			}
+		};
+	}
+
+	/**
+	 * @return The current limit on the number of calls in flight.
+	 */
+	public int getLimit() {
+		synchronized (queue) {
+			return (int)limit;
+		}
+	}
+
+	/**
+	 * @return The number of calls in flight.
+	 */
+	public int getInFlight() {
+		synchronized (queue) {
+			return inFlight;
+		}
+	}
+
+	/**
+	 * Transform an exception into a failure of type F.
+	 * @param e A {@link RejectedExecutionException} if a call is rejected because the queue is full, otherwise
+	 * the exception thrown by a call when it was started.
+	 * @return A failure of type F.
+	 */
+	protected abstract F handle(Exception e);
+
+	private void dequeue(DeferredImpl<P, F> result) {
+		synchronized (queue) {
+			for (Permit permit : queue) {
+				if (permit.result == result) {
+					queue.remove(permit);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Release the permit of a completed call, adapt the limit and then start as many queued calls as the limit allows.
+	 * @param latency The latency of a successful call in nanoseconds, or -1 if the call did not succeed.
+	 */
+	private void release(long latency) {
+		List<Permit> next = null;
+		synchronized (queue) {
+			inFlight--;
+			if (latency >= 0) {
+				adapt(latency);
+			}
+			while (inFlight < (int)limit && !queue.isEmpty()) {
+				inFlight++;
+				if (next == null) {
+					next = new ArrayList<Permit>(1);
+				}
+				next.add(queue.poll());
+			}
+		}
+		if (next != null) {
+			for (Permit permit : next) {
+				permit.scheduler.schedule(permit, Directive.SYNC);
+			}
+		}
+	}
+
+	/**
+	 * Adjust the limit for a latency sample. Called with the queue locked.
+	 * @param latency The latency of a successful call in nanoseconds.
+	 */
+	private void adapt(long latency) {
+		if (++samples % PROBE_INTERVAL == 0) {
+			minLatency = latency;
+		} else if (latency < minLatency) {
+			minLatency = latency;
+		}
+		if (latency == 0) {
+			return;
+		}
+		final double queued = limit * (1 - (double)minLatency / latency);
+		final double step = Math.max(1, Math.log10(limit));
+		if (queued > 6 * step) {
+			limit = Math.max(MIN_LIMIT, limit - step);
+		} else if (queued < 3 * step && 2 * (inFlight + 1) >= limit) {
+			// only raise the limit while it is actually constraining the calls in flight.
+			limit = Math.min(maxLimit, limit + step);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.wildducktheories.promise.impl;
+
+import com.wildducktheories.promise.Deferred;
+
+/**
+ * Tracks the deferred result of the call whose phase is executing on the current thread, so that the
+ * <code>isCancelled()</code> method of {@link AbstractCallImpl}, {@link AbstractStreamingCallImpl} and
+ * {@link AbstractSocketCallImpl} can answer for the call it is invoked from.
+ */
+final class CurrentCall {
+
+	private static final ThreadLocal<Deferred<?, ?>> CURRENT = new ThreadLocal<Deferred<?, ?>>();
+
+	private CurrentCall() {
+	}
+
+	/**
+	 * Enter a phase of the call with the specified result.
+	 * @param deferred The deferred result of the call.
+	 * @return The deferred result of the enclosing call, if any, to be passed to <code>exit()</code>.
+	 */
+	static Deferred<?, ?> enter(Deferred<?, ?> deferred) {
+		final Deferred<?, ?> outer = CURRENT.get();
+		CURRENT.set(deferred);
+		return outer;
+	}
+
+	/**
+	 * Exit a phase of a call.
+	 * @param outer The value returned by the matching <code>enter()</code>.
+	 */
+	static void exit(Deferred<?, ?> outer) {
+		CURRENT.set(outer);
+	}
+
+	/**
+	 * @return true if the result of the call whose phase is executing on the current thread has been cancelled.
+	 */
+	static boolean isCancelled() {
+		final Deferred<?, ?> deferred = CURRENT.get();
+		return deferred != null && deferred.isCancelled();
+	}
+}
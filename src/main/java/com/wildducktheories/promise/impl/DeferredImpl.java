@@ -1,7 +1,9 @@
 package com.wildducktheories.promise.impl;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import com.wildducktheories.promise.CompletionCallback;
 import com.wildducktheories.promise.Deferred;
@@ -17,50 +19,203 @@ import com.wildducktheories.tasklet.Tasklet;
 
 /**
  * An implementation of the {@link Promise} and {@link Deferred} interfaces for a single promise.
- * 
+ * <p>
+ * The state of the promise is held in a single atomically updated reference. While the promise
+ * is pending, the reference is either <code>null</code> or the head of a (Treiber) stack of
+ * {@link Waiter}s (usually {@link SyncCompletionTasklet}s) linked through their own <code>next</code>
+ * field, so a promise with a single listener refers to that listener directly and no list nodes are
+ * allocated for any number of listeners. Once the promise is resolved, rejected or cancelled, the reference
+ * holds an {@link Outcome} and never changes again. No locks are taken by either the resolving or the
+ * registering threads.
+ * <p>
+ * A promise created by <code>then()</code> or <code>thenPromise()</code> remembers the promise it is waiting
+ * on (its upstream) while it is pending. Cancelling it cancels the upstream promise too, unless the upstream
+ * promise is still being observed by some other waiter.
+ * <p>
+ * Consecutive <code>then()</code> stages are fused: a promise returned by <code>then()</code> is always settled
+ * on the synchronous thread of the registering {@link Scheduler}, so a further <code>then()</code> registered with
+ * it from the same scheduler, while nothing else is waiting for it, runs directly on that thread when it is
+ * settled rather than through a {@link SyncCompletionTasklet} of its own. A chain of n filters therefore costs one
+ * hop rather than n. Stages registered after some other callback fall back to a hop of their own, so callbacks
+ * are still notified in the order in which they were registered.
+ *
  * @author jonseymour
  *
  * @param <P> The promised type.
  * @param <F> The failure type.
  */
 public class DeferredImpl<P, F> implements Deferred<P, F>, Promise<P,F> {
-	
-	private enum State {
-		PENDING,
-		DONE,
-		FAILED
-	}
-	
-	private final List<DoneCallback<P>> doneCallbacks = new LinkedList<DoneCallback<P>>();
-	private final List<FailCallback<F>> failCallbacks = new LinkedList<FailCallback<F>>();
-	
-	private State state = State.PENDING;
-	private P resolution = null;
-	private F rejection = null;	
-	
-	@Override
-	public Deferred<P, F> resolve(P p) {
-		synchronized (this) {
-			if (state != State.PENDING) {
-				throw new IllegalStateException("illegal state: promise already resolved or rejected");
+
+	/**
+	 * The resolution or rejection of a settled promise.
+	 */
+	private static final class Outcome {
+		private final boolean failed;
+		private final Object value;
+
+		private Outcome(boolean failed, Object value) {
+			this.failed = failed;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Resolves or rejects a deferred with the outcome of the promise returned by a <code>thenPromise()</code> filter.
+	 */
+	private static final class Forward<Q, F> extends Waiter<Q, F> {
+		private final Deferred<Q, F> deferred;
+
+		private Forward(Deferred<Q, F> deferred) {
+			this.deferred = deferred;
+		}
+
+		/**
+		 * Wait on the specified promise.
+		 * @param promise The promise returned by a filter.
+		 */
+		private void forward(Promise<Q, F> promise) {
+			link(deferred, promise);
+			promise.done(this).fail(this);
+		}
+
+		@Override
+		public void onDone(Q q) {
+			deferred.resolve(q);
+		}
+
+		@Override
+		public void onFail(F f) {
+			deferred.reject(f);
+		}
+
+		@Override
+		void onCancel() {
+			deferred.promise().cancel();
+		}
+
+		@Override
+		boolean isObserving() {
+			return !deferred.isCancelled();
+		}
+	}
+
+	/**
+	 * A delivery queued by a {@link Trampoline}.
+	 */
+	private static final class Delivery {
+		private final DeferredImpl<?, ?> promise;
+		private final Object callback;
+		private final boolean failed;
+		private final Object value;
+
+		private Delivery(DeferredImpl<?, ?> promise, Object callback, boolean failed, Object value) {
+			this.promise = promise;
+			this.callback = callback;
+			this.failed = failed;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The deliveries queued on a thread while an outer delivery is in progress.
+	 */
+	private static final class Trampoline {
+		private final ArrayDeque<Delivery> queue = new ArrayDeque<Delivery>();
+		private boolean active = false;
+
+		/**
+		 * Make the queued deliveries, in order, including those queued while doing so. A callback that throws,
+		 * even an {@link Error}, does not prevent the remaining deliveries from being made, so none are left
+		 * queued for an unrelated delivery on the same thread; the first exception thrown is rethrown once the
+		 * queue is empty, with any later ones suppressed by it.
+		 */
+		private void drain() {
+			Throwable failure = null;
+			Delivery delivery;
+			while ((delivery = queue.poll()) != null) {
+				try {
+					delivery.promise.notifyCallback(delivery.callback, delivery.failed, delivery.value);
+				} catch (Throwable t) {
+					if (failure == null) {
+						failure = t;
+					} else if (failure != t) {
+						failure.addSuppressed(t);
+					}
+				}
+			}
+			if (failure instanceof Error) {
+				throw (Error)failure;
+			} else if (failure != null) {
+				throw (RuntimeException)failure;
 			}
-			state = State.DONE;
-			resolution = p;
 		}
-		notifyAllDone(p);
+	}
+
+	private static final ThreadLocal<Trampoline> TRAMPOLINE = new ThreadLocal<Trampoline>() {
+		@Override
+		protected Trampoline initialValue() {
+			return new Trampoline();
+		}
+	};
+
+	/**
+	 * The outcome of a cancelled promise.
+	 */
+	private static final Outcome CANCELLED = new Outcome(true, null);
+
+	/**
+	 * A shared, cancelled promise.
+	 */
+	private static final DeferredImpl<Object, Object> CANCELLED_PROMISE = new DeferredImpl<Object, Object>(CANCELLED);
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<DeferredImpl, Object> STATE =
+		AtomicReferenceFieldUpdater.newUpdater(DeferredImpl.class, Object.class, "state");
+
+	/**
+	 * <code>null</code> or the top {@link Waiter} while pending, the {@link Outcome} once settled.
+	 */
+	private volatile Object state = null;
+
+	/**
+	 * The promise the receiver is waiting on, if any, while the receiver is pending.
+	 */
+	private volatile DeferredImpl<?, ?> upstream = null;
+
+	/**
+	 * The {@link Scheduler} on whose synchronous thread the receiver will be resolved or rejected, if known. It is
+	 * only known for promises returned by <code>then()</code>, whose filters always run on that thread, and is written
+	 * before the receiver is returned, so a thread that reads it without synchronization at worst sees <code>null</code>.
+	 */
+	private Scheduler settledBy = null;
+
+	public DeferredImpl() {
+	}
+
+	/**
+	 * Construct a promise that is already resolved or rejected. Because the state of such a promise
+	 * can never change and no callbacks are ever stored in it, a single instance can be safely shared
+	 * between threads and schedulers.
+	 * @param failed true if the promise is rejected, false if it is resolved.
+	 * @param value The resolution or rejection.
+	 */
+	DeferredImpl(boolean failed, Object value) {
+		this(new Outcome(failed, value));
+	}
+
+	private DeferredImpl(Outcome outcome) {
+		this.state = outcome;
+	}
+
+	@Override
+	public Deferred<P, F> resolve(P p) {
+		notifyAllDone(settle(new Outcome(false, p)), p);
 		return this;
 	}
 
 	@Override
 	public Deferred<P, F>  reject(F f) {
-		synchronized (this) {
-			if (state != State.PENDING) {
-				throw new IllegalStateException("illegal state: promise already resolved or rejected");
-			}
-			state = State.FAILED;
-			rejection = f;
-		}
-		notifyAllFail(f);
+		notifyAllFail(settle(new Outcome(true, f)), f);
 		return this;
 	}
 
@@ -68,216 +223,685 @@ public class DeferredImpl<P, F> implements Deferred<P, F>, Promise<P,F> {
 	public Promise<P, F> promise() {
 		return this;
 	}
-	
+
+	@Override
+	public boolean cancel() {
+		Object current;
+		do {
+			current = state;
+			if (current instanceof Outcome) {
+				return false;
+			}
+		} while (!STATE.compareAndSet(this, current, CANCELLED));
+		onCancelled();
+
+		for (Waiter<?, ?> w = reverse((Waiter<?, ?>)current); w != null; w = w.next) {
+			w.onCancel();
+		}
+
+		final DeferredImpl<?, ?> upstream = this.upstream;
+		if (upstream != null) {
+			this.upstream = null;
+			upstream.cancelIfUnobserved();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return state == CANCELLED;
+	}
+
+	@Override
+	public Promise<P, F> timeout(final long timeout, final TimeUnit unit, final F failure) {
+		if (state instanceof Outcome) {
+			return this;
+		}
+
+		final DeferredImpl<P, F> bounded = APIImpl.newDeferred(PromiseAPI.get());
+		final TimerWheel.Timeout expiry = TimerWheel.shared().schedule(new Runnable() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public void run() {
+				// cancel the receiver before delivering the rejection, so callbacks observe the cancellation.
+				final Object previous = bounded.exchange(new Outcome(true, failure));
+				if (!(previous instanceof Outcome)) {
+					cancelIfUnobserved();
+					bounded.notifyAllFail((Waiter<P, F>)previous, failure);
+				}
+			}
+		}, timeout, unit);
+
+		bounded.addWaiter(new Waiter<P, F>() {
+			@Override
+			public void onDone(P p) {
+				expiry.cancel();
+			}
+
+			@Override
+			public void onFail(F f) {
+				expiry.cancel();
+			}
+
+			@Override
+			void onCancel() {
+				expiry.cancel();
+			}
+
+			@Override
+			boolean isObserving() {
+				return false;
+			}
+		});
+		forwardTo(bounded);
+		return bounded;
+	}
+
+	@SuppressWarnings("unchecked")
 	@Override
 	public <Q> Promise<Q, F> then(final Filter<P, Q> filter) {
-		final boolean done;
-		
-		synchronized (this) {
-			switch (state) {
-			case PENDING:
-				final Deferred<Q,F> filtered = PromiseAPI.get().deferred();			
-				final CompletionCallback<P, F> complete = new CompletionCallback<P, F>() {
-					@Override
-					public void onDone(P p) {
-						filtered.resolve(filter.filter(p));
+		final Object current = state;
+
+		if (current == CANCELLED) {
+			return (Promise<Q, F>)CANCELLED_PROMISE;
+		}
+
+		final Scheduler scheduler = SchedulerAPI.get().getScheduler();
+		if (!(current instanceof Outcome)) {
+			final Deferred<Q,F> filtered = PromiseAPI.get().deferred();
+			final Waiter<P, F> complete = new Waiter<P, F>() {
+				@Override
+				public void onDone(P p) {
+					if (!filtered.isCancelled()) {
+						final Q q;
+						try {
+							q = filter.filter(p);
+						} catch (RuntimeException e) {
+							rethrowAfterDelivery(e);
+							return;
+						}
+						filtered.resolve(q);
 					}
-					
-					public void onFail(F f) {
-						filtered.reject(f);
-					};
+				}
+
+				public void onFail(F f) {
+					filtered.reject(f);
 				};
-				addCallbacks(complete, complete);
-				return filtered.promise();
-			case DONE:
-				done = true;
-				break;
-			case FAILED:
-				done = false;
-				break;
-			default:
-				throw new IllegalStateException("illegal state: unhandled state: "+state);
+
+				@Override
+				void onCancel() {
+					filtered.promise().cancel();
+				}
+
+				@Override
+				boolean isObserving() {
+					return !filtered.isCancelled();
+				}
+			};
+			link(filtered, this);
+			if (current == null && settledBy == scheduler) {
+				// fuse: the receiver is settled on the synchronous thread and nothing else is waiting for it
+				addWaiter(complete);
+			} else {
+				addCallbacks(scheduler, complete, complete);
 			}
+			settledBy(filtered, scheduler);
+			return filtered.promise();
 		}
-		
-		if (done) {
+
+		final Outcome outcome = (Outcome)current;
+		if (!outcome.failed) {
+			final P resolution = (P)outcome.value;
 			final Deferred<Q,F> deferred = PromiseAPI.get().deferred();
-			SchedulerAPI.get().getScheduler().schedule(new Tasklet() {
+			settledBy(deferred, scheduler);
+			scheduler.schedule(new Tasklet() {
 				@Override
 				public Directive task() {
-					deferred.resolve(filter.filter(resolution));
+					if (!deferred.isCancelled()) {
+						deferred.resolve(filter.filter(resolution));
+					}
 					return Directive.DONE;
 				}}, Directive.SYNC);
-			
+
 			return deferred.promise();
 		} else {
-			return (Promise<Q,F>)(PromiseAPI.get().rejected(rejection, (Class<Q>)null, (Class<F>)null));			
-		}		
+			return (Promise<Q,F>)(PromiseAPI.get().rejected((F)outcome.value, (Class<Q>)null, (Class<F>)null));
+		}
 	}
-	
-	
 
+
+
+	@SuppressWarnings("unchecked")
 	@Override
 	public <Q> Promise<Q, F> thenPromise(final Filter<P, Promise<Q, F>> filter) {
+		final Object current = state;
+
+		if (current == CANCELLED) {
+			return (Promise<Q, F>)CANCELLED_PROMISE;
+		}
+
+		if (current instanceof Outcome && ((Outcome)current).failed) {
+			return (Promise<Q,F>)(PromiseAPI.get().rejected((F)((Outcome)current).value, (Class<Q>)null, (Class<F>)null));
+		}
+
 		final Deferred<Q,F> deferred = PromiseAPI.get().deferred();
-		boolean done = false;
-		synchronized (this) {
-			switch(state) {
-			case PENDING:
-				final CompletionCallback<P, F> complete = new CompletionCallback<P, F>() {
-					@Override
-					public void onDone(P p) {
-						filter
-							.filter(p)
-							.done(new DoneCallback<Q>(){
-
-								@Override
-								public void onDone(Q q) {
-									deferred.resolve(q);
-								}
-							})
-							.fail(new FailCallback<F>() {
-
-								@Override
-								public void onFail(F f) {
-									deferred.reject(f);
-								}
-							});
-					}
-					
-					public void onFail(F f) {
-						deferred.reject(f);
-					};
-				};
-				addCallbacks(complete, complete);
-				return deferred.promise();
-			case DONE:
-				done = true;
-				break;
-			case FAILED:
-				break;
-			default:
-				throw new IllegalStateException("illegal state: "+state);
+		final Forward<Q, F> forward = new Forward<Q, F>(deferred);
+		final Waiter<P, F> complete = new Waiter<P, F>() {
+			@Override
+			public void onDone(P p) {
+				if (!deferred.isCancelled()) {
+					forward.forward(filter.filter(p));
+				}
 			}
-		}
-		if (done) {
-			SchedulerAPI.get().getScheduler().schedule(new Tasklet() {
-				@Override
-				public Directive task() {
-					filter.filter(resolution).done(new DoneCallback<Q>(){
 
-						@Override
-						public void onDone(Q q) {
-							deferred.resolve(q);
-						}
-					})
-					.fail(new FailCallback<F>() {
+			public void onFail(F f) {
+				deferred.reject(f);
+			};
 
-						@Override
-						public void onFail(F f) {
-							deferred.reject(f);
-						}
-					});
-					return Directive.DONE;
-				}}, Directive.SYNC);	
-			return deferred.promise();
+			@Override
+			void onCancel() {
+				deferred.promise().cancel();
+			}
+
+			@Override
+			boolean isObserving() {
+				return !deferred.isCancelled();
+			}
+		};
+		if (!(current instanceof Outcome)) {
+			link(deferred, this);
+			addCallbacks(complete, complete);
+		} else {
+			// delivered through the trampoline, so that a filter which recursively calls thenPromise() on 
+			// settled promises (e.g. a loop over cached pages) does not grow the stack.
+			deliver(new SyncCompletionTasklet<P,F>(SchedulerAPI.get().getScheduler(), complete, complete), false, ((Outcome)current).value);
 		}
-		return (Promise<Q,F>)(PromiseAPI.get().rejected(rejection, (Class<Q>)null, (Class<F>)null));			
+		return deferred.promise();
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public Promise<P, F> done(final DoneCallback<P> callback) {
-		synchronized (this) {
-			switch (state) {
-			case PENDING:
-				final DoneCallback<P> cb = callback;
-				addCallbacks(cb, null);
-				break;
-			case DONE:
-				notifyDone(new SyncCompletionTasklet<P,F>(SchedulerAPI.get().getScheduler(), callback, null), resolution);
-			default:
-			}
+		final Object current = state;
+		if (!(current instanceof Outcome)) {
+			addCallbacks(callback, null);
+		} else if (!((Outcome)current).failed) {
+			deliver(new SyncCompletionTasklet<P,F>(SchedulerAPI.get().getScheduler(), callback, null), false, ((Outcome)current).value);
 		}
 		return this;
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public Promise<P, F> fail(final FailCallback<F> callback) {
-		synchronized(this) {
-			switch (state) {
-			case PENDING:
-				addCallbacks(null, callback);
-				break;
-			case FAILED:
-				notifyFail(new SyncCompletionTasklet<P,F>(SchedulerAPI.get().getScheduler(), null, callback), rejection);
-				break;
-			default:
-			}
+		final Object current = state;
+		if (!(current instanceof Outcome)) {
+			addCallbacks(null, callback);
+		} else if (current != CANCELLED && ((Outcome)current).failed) {
+			deliver(new SyncCompletionTasklet<P,F>(SchedulerAPI.get().getScheduler(), null, callback), true, ((Outcome)current).value);
 		}
 		return this;
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public Promise<P, F> complete(CompletionCallback<P, F> callback) {
-		
-		synchronized (this) {
-			switch (state) {
-			case PENDING:
-				addCallbacks(callback, callback);
-				break;
-			case DONE:
-				notifyDone(callback, resolution);
-				break;
-			case FAILED:
-				notifyFail(callback, rejection);
-				break;
-			}
+		final Object current = state;
+		if (!(current instanceof Outcome)) {
+			addCallbacks(callback, callback);
+		} else if (current == CANCELLED) {
+			return this;
+		} else {
+			deliver(callback, ((Outcome)current).failed, ((Outcome)current).value);
 		}
-		
 		return this;
 	}
-	
+
+	@Override
+	public Promise<P, F> doneAsync(DoneCallback<P> callback, Executor executor) {
+		addAsyncCallbacks(callback, null, executor);
+		return this;
+	}
+
+	@Override
+	public Promise<P, F> failAsync(FailCallback<F> callback, Executor executor) {
+		addAsyncCallbacks(null, callback, executor);
+		return this;
+	}
+
+	@Override
+	public <Q> Promise<Q, F> thenAsync(final Filter<P, Q> filter, Executor executor) {
+		final Deferred<Q,F> filtered = PromiseAPI.get().deferred();
+		final Waiter<P, F> complete = new Waiter<P, F>() {
+			@Override
+			public void onDone(P p) {
+				if (!filtered.isCancelled()) {
+					final Q q;
+					try {
+						q = filter.filter(p);
+					} catch (RuntimeException e) {
+						// settle the result, so that its callbacks do not keep the scheduler waiting,
+						// and let the tasklet rethrow on the synchronous thread.
+						filtered.promise().cancel();
+						throw e;
+					}
+					filtered.resolve(q);
+				}
+			}
+
+			public void onFail(F f) {
+				filtered.reject(f);
+			};
+
+			@Override
+			void onCancel() {
+				filtered.promise().cancel();
+			}
+
+			@Override
+			boolean isObserving() {
+				return !filtered.isCancelled();
+			}
+		};
+		link(filtered, this);
+		addAsyncCallbacks(complete, complete, executor);
+		return filtered.promise();
+	}
+
+	/**
+	 * Add callbacks to the receiver that are called on a thread of the specified executor. The current 
+	 * thread's scheduler is told to wait until they have been called, whether or not the receiver is 
+	 * already settled.
+	 * @param cbp
+	 * @param cbf
+	 * @param executor
+	 */
+	private void addAsyncCallbacks(final DoneCallback<P> cbp, final FailCallback<F> cbf, final Executor executor) {
+		final Scheduler scheduler = SchedulerAPI.get().getScheduler();
+		final AsyncCompletionTasklet<P, F> tasklet =
+			new AsyncCompletionTasklet<P, F>(scheduler, executor, cbp, cbf);
+		scheduler.schedule(tasklet, Directive.WAIT);
+		addWaiter(tasklet);
+	}
+
+	/**
+	 * Atomically replace the pending state of the receiver with the specified outcome.
+	 * @param outcome The resolution or rejection.
+	 * @return The top of the stack of waiters that were registered while the receiver was pending, or null
+	 * if the receiver has been cancelled.
+	 * @throws IllegalStateException If the promise has already been resolved or rejected.
+	 */
+	@SuppressWarnings("unchecked")
+	private Waiter<P, F> settle(Outcome outcome) {
+		final Object previous = exchange(outcome);
+		if (previous == CANCELLED) {
+			return null;
+		}
+		if (previous instanceof Outcome) {
+			throw new IllegalStateException("illegal state: promise already resolved or rejected");
+		}
+		return (Waiter<P, F>)previous;
+	}
+
+	/**
+	 * Replace the pending state of the receiver with the specified outcome, unless the receiver is already settled.
+	 * @param outcome The resolution or rejection.
+	 * @return The previous state of the receiver: the top of its stack of waiters if it was pending, otherwise its
+	 * {@link Outcome}, which is left unchanged.
+	 */
+	private Object exchange(Outcome outcome) {
+		for (;;) {
+			final Object current = state;
+			if (current instanceof Outcome) {
+				return current;
+			}
+			if (STATE.compareAndSet(this, current, outcome)) {
+				upstream = null;
+				onSettled(outcome.failed);
+				return current;
+			}
+		}
+	}
+
+	/**
+	 * Called when the receiver is resolved or rejected, before any waiters are notified. The default
+	 * implementation does nothing.
+	 * @param failed true if the receiver was rejected.
+	 */
+	protected void onSettled(boolean failed) {
+	}
+
+	/**
+	 * Called when the receiver is cancelled, before any waiters are notified. The default implementation
+	 * does nothing.
+	 */
+	protected void onCancelled() {
+	}
+
+	/**
+	 * Resolve the receiver unless it has already been resolved, rejected or cancelled, for use where more 
+	 * than one party races to settle a promise.
+	 * @param p The resolution.
+	 * @return true if the receiver was resolved by this call.
+	 */
+	@SuppressWarnings("unchecked")
+	final boolean tryResolve(P p) {
+		final Object previous = exchange(new Outcome(false, p));
+		if (previous instanceof Outcome) {
+			return false;
+		}
+		notifyAllDone((Waiter<P, F>)previous, p);
+		return true;
+	}
+
+	/**
+	 * Reject the receiver unless it has already been resolved, rejected or cancelled, for use where more 
+	 * than one party races to settle a promise.
+	 * @param f The rejection.
+	 * @return true if the receiver was rejected by this call.
+	 */
+	@SuppressWarnings("unchecked")
+	final boolean tryReject(F f) {
+		final Object previous = exchange(new Outcome(true, f));
+		if (previous instanceof Outcome) {
+			return false;
+		}
+		notifyAllFail((Waiter<P, F>)previous, f);
+		return true;
+	}
+
+	/**
+	 * Cancel the receiver, unless it is still being observed by at least one of its waiters. Detached waiters at
+	 * the top of the stack are discarded first.
+	 */
+	final void cancelIfUnobserved() {
+		final Object current = discardDetached();
+		if (current instanceof Outcome) {
+			return;
+		}
+		for (Waiter<?, ?> w = (Waiter<?, ?>)current; w != null; w = w.next) {
+			if (w.isObserving()) {
+				return;
+			}
+		}
+		cancel();
+	}
+
+	/**
+	 * Settle a derived promise with the outcome of the receiver, without a hop through the current {@link Scheduler}.
+	 * Cancelling the receiver cancels the derived promise and cancelling the derived promise while it is pending
+	 * cancels the receiver, unless the receiver is still observed by another waiter.
+	 * @param derived The derived promise, which may be settled by other means, in which case the outcome of the receiver 
+	 * is ignored.
+	 */
+	final void forwardTo(final DeferredImpl<P, F> derived) {
+		link(derived, this);
+		addWaiter(new Waiter<P, F>() {
+			@Override
+			public void onDone(P p) {
+				derived.tryResolve(p);
+			}
+
+			@Override
+			public void onFail(F f) {
+				derived.tryReject(f);
+			}
+
+			@Override
+			void onCancel() {
+				derived.cancel();
+			}
+
+			@Override
+			boolean isObserving() {
+				return !(derived.state instanceof Outcome);
+			}
+		});
+	}
+
 	/**
-	 * Add callbacks to the receiver. If the current thread is running with a scheduler, then make sure that 
+	 * Record that a promise will only be settled on the synchronous thread of the specified scheduler, so that
+	 * a <code>then()</code> stage registered with it from the same scheduler can run directly on that thread
+	 * without a hop of its own.
+	 * @param deferred The promise.
+	 * @param scheduler The scheduler.
+	 */
+	private static void settledBy(Deferred<?, ?> deferred, Scheduler scheduler) {
+		if (deferred instanceof DeferredImpl) {
+			((DeferredImpl<?, ?>)deferred).settledBy = scheduler;
+		}
+	}
+
+	/**
+	 * Record that a derived promise is waiting on an upstream promise, so that cancellation of the
+	 * derived promise can be propagated to the upstream promise.
+	 * @param derived The derived promise.
+	 * @param upstream The upstream promise.
+	 */
+	static void link(Deferred<?, ?> derived, Promise<?, ?> upstream) {
+		if (derived instanceof DeferredImpl && upstream instanceof DeferredImpl) {
+			((DeferredImpl<?, ?>)derived).upstream = (DeferredImpl<?, ?>)upstream;
+		}
+	}
+
+	/**
+	 * Add callbacks to the receiver. If the current thread is running with a scheduler, then make sure that
 	 * the promise delivery occurs with the same concurrency w.r.t. the scheduler as the registration and also
 	 * that the scheduler is aware that there is a promise pending delivery.
-	 * 
+	 * <p>
+	 * If the receiver is settled by another thread before the tasklet can be pushed onto the stack of
+	 * waiters, the outcome is delivered to the tasklet directly.
+	 *
 	 * @param cbp
 	 * @param cbf
 	 */
 	private void addCallbacks(final DoneCallback<P> cbp, final FailCallback<F> cbf) {
-		final Scheduler scheduler = SchedulerAPI.get().getScheduler();
-		final SyncCompletionTasklet<P, F> tasklet = 
+		addCallbacks(SchedulerAPI.get().getScheduler(), cbp, cbf);
+	}
+
+	private void addCallbacks(final Scheduler scheduler, final DoneCallback<P> cbp, final FailCallback<F> cbf) {
+		final SyncCompletionTasklet<P, F> tasklet =
 			new SyncCompletionTasklet<P, F>(scheduler, cbp, cbf);
-		
+
 		// Dequeue the tasklet to tell the scheduler that there is a pending resolution event.
-		
+
 		scheduler.schedule(tasklet, Directive.WAIT);
-		doneCallbacks.add(tasklet);
-		failCallbacks.add(tasklet);
+		addWaiter(tasklet);
 	}
-	
-	private void notifyAllDone(P p) {
-		for (DoneCallback<P> cb : doneCallbacks) {
-			notifyDone(cb, p);
+
+	/**
+	 * Keep the current {@link Scheduler} waiting until the receiver is resolved, rejected or cancelled, without 
+	 * registering any callbacks, for use when the receiver is settled by work the scheduler does not know about.
+	 */
+	final void hold() {
+		if (!(state instanceof Outcome)) {
+			addCallbacks(null, null);
 		}
-		doneCallbacks.clear();
-		failCallbacks.clear();
 	}
 
-	private void notifyAllFail(F f) {
-		for (FailCallback<F> cb : failCallbacks) {
-			notifyFail(cb, f);
+	/**
+	 * Add a waiter to the receiver. The waiter is notified directly on the thread that resolves, rejects or
+	 * cancels the receiver or, if the receiver is already settled, immediately on the current thread.
+	 * <p>
+	 * Unlike the public registration methods, this method does not arrange delivery on the synchronous thread
+	 * of the current thread's {@link Scheduler}, so it is only suitable for waiters that either do that themselves
+	 * or which are safe to run on any thread.
+	 *
+	 * @param waiter The waiter.
+	 */
+	@SuppressWarnings("unchecked")
+	final void addWaiter(final Waiter<P, F> waiter) {
+		for (;;) {
+			final Object current = state;
+			if (current == CANCELLED) {
+				waiter.onCancel();
+				return;
+			}
+			if (current instanceof Outcome) {
+				final Outcome outcome = (Outcome)current;
+				deliver(waiter, outcome.failed, outcome.value);
+				return;
+			}
+			waiter.next = skipDetached((Waiter<P, F>)current);
+			if (STATE.compareAndSet(this, current, waiter)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Discard the detached waiters at the top of the receiver's stack of waiters.
+	 * <p>
+	 * Only the top of the stack is unlinked, by a CAS of the state, so that an unlink never races the in-place
+	 * reversal of a stack that is being notified. Since <code>addWaiter()</code> does the same as it pushes each
+	 * new waiter, the detached waiters that remain are those buried beneath a waiter that is still attached, of
+	 * which there can only be as many as there were waiters when that waiter was added: a promise that is
+	 * repeatedly waited on and then abandoned, such as a promise raced against many others, does not accumulate them.
+	 * @return The state of the receiver after discarding.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object discardDetached() {
+		for (;;) {
+			final Object current = state;
+			if (current instanceof Outcome) {
+				return current;
+			}
+			final Waiter<P, F> top = skipDetached((Waiter<P, F>)current);
+			if (top == current || STATE.compareAndSet(this, current, top)) {
+				return top;
+			}
+		}
+	}
+
+	private static <P, F> Waiter<P, F> skipDetached(Waiter<P, F> top) {
+		while (top != null && top.isDetached()) {
+			top = top.next;
+		}
+		return top;
+	}
+
+	/**
+	 * @return The number of waiters on the receiver, if it is pending, otherwise 0.
+	 */
+	final int getWaiterCount() {
+		final Object current = state;
+		int count = 0;
+		if (!(current instanceof Outcome)) {
+			for (Waiter<?, ?> w = (Waiter<?, ?>)current; w != null; w = w.next) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reverse a stack of waiters so that callbacks are notified in the order they were registered.
+	 * @param top The top of the stack.
+	 * @return The bottom of the stack, now linked in registration order.
+	 */
+	private static <P, F> Waiter<P, F> reverse(Waiter<P, F> top) {
+		Waiter<P, F> reversed = null;
+		while (top != null) {
+			final Waiter<P, F> next = top.next;
+			top.next = reversed;
+			reversed = top;
+			top = next;
+		}
+		return reversed;
+	}
+
+	private void notifyAllDone(Waiter<P, F> top, P p) {
+		if (top != null) {
+			deliver(reverse(top), false, p);
+		}
+	}
+
+	private void notifyAllFail(Waiter<P, F> top, F f) {
+		if (top != null) {
+			deliver(reverse(top), true, f);
+		}
+	}
+
+	/**
+	 * Deliver an outcome to a callback or, if the callback is a {@link Waiter}, to it and the waiters linked after it.
+	 * <p>
+	 * Deliveries are trampolined: if a delivery is already in progress on the current thread (that is, the 
+	 * receiver was settled, or a callback registered with a settled promise, by a callback), the delivery is 
+	 * queued and made by the outermost delivery once the current callback returns, rather than by a nested call. 
+	 * The depth of the stack therefore does not grow with the length of a chain of promises that settle one 
+	 * another, such as a recursive <code>thenPromise()</code> loop, and no hop through a {@link Scheduler} is 
+	 * needed to unwind it.
+	 * @param callback The callback.
+	 * @param failed true if the outcome is a rejection.
+	 * @param value The resolution or rejection.
+	 */
+	private void deliver(Object callback, boolean failed, Object value) {
+		final Trampoline trampoline = TRAMPOLINE.get();
+		if (trampoline.active) {
+			trampoline.queue.add(new Delivery(this, callback, failed, value));
+			return;
+		}
+		trampoline.active = true;
+		Throwable thrown = null;
+		try {
+			notifyCallback(callback, failed, value);
+		} catch (Throwable t) {
+			thrown = t;
+			throw t;
+		} finally {
+			try {
+				trampoline.drain();
+			} catch (Throwable t) {
+				// the exception thrown by the callback itself takes precedence.
+				if (thrown == null) {
+					throw t;
+				} else if (thrown != t) {
+					thrown.addSuppressed(t);
+				}
+			} finally {
+				trampoline.active = false;
+			}
+		}
+	}
+
+	/**
+	 * Rethrow an exception thrown by a callback once the other waiters being notified on the current thread
+	 * have been notified. A fused <code>then()</code> stage runs its filter inside the delivery loop of the
+	 * upstream promise, so a filter that throws would otherwise abort delivery to the waiters after it; deferred,
+	 * the exception still reaches the scheduler, as it would from a stage with a tasklet of its own.
+	 * @param e The exception.
+	 */
+	private void rethrowAfterDelivery(final RuntimeException e) {
+		deliver(new DoneCallback<P>() {
+			@Override
+			public void onDone(P p) {
+				throw e;
+			}
+		}, false, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void notifyCallback(Object callback, boolean failed, Object value) {
+		if (callback instanceof Waiter) {
+			for (Waiter<P, F> w = (Waiter<P, F>)callback; w != null; w = w.next) {
+				if (failed) {
+					notifyFail(w, (F)value);
+				} else {
+					notifyDone(w, (P)value);
+				}
+			}
+		} else if (failed) {
+			notifyFail((FailCallback<F>)callback, (F)value);
+		} else {
+			notifyDone((DoneCallback<P>)callback, (P)value);
 		}
-		doneCallbacks.clear();
-		failCallbacks.clear();
 	}
 
 	protected void notifyDone(final DoneCallback<P> cb, final P p) {
 		cb.onDone(p);
 	}
-	
+
 	protected void notifyFail(final FailCallback<F> cb, final F f) {
 		cb.onFail(f);
-	}	
+	}
 }
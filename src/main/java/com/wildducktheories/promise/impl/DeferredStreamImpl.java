@@ -0,0 +1,165 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DeferredStream;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.promise.PromiseStream;
+import com.wildducktheories.promise.StreamSource;
+
+/**
+ * An implementation of {@link DeferredStream} that buffers the values emitted by its producer until its
+ * stream requests them.
+ * <p>
+ * The demand reported to the producer is the space left in a buffer the size of the batch most recently
+ * requested by the stream, so a producer that honours it stays at most one batch ahead of the consumer.
+ *
+ * @param <T> The type of the values.
+ * @param <F> The failure type.
+ */
+final class DeferredStreamImpl<T, F> implements DeferredStream<T, F>, StreamSource<T, F> {
+
+	private final PromiseStream<T, F> stream;
+	private final ArrayDeque<T> buffer = new ArrayDeque<T>();
+
+	/**
+	 * The size of the batch most recently requested by the stream.
+	 */
+	private int capacity = 0;
+
+	/**
+	 * The outstanding request of the stream, if it is waiting for values.
+	 */
+	private Deferred<List<T>, F> waiting;
+	private int waitingMax;
+
+	private boolean ended = false;
+	private boolean failed = false;
+	private boolean closed = false;
+	private F failure;
+
+	DeferredStreamImpl(int batchSize) {
+		this.stream = PromiseStreamImpl.of(this, batchSize);
+	}
+
+	@Override
+	public boolean emit(T t) {
+		final Deferred<List<T>, F> ready;
+		final List<T> batch;
+		synchronized (this) {
+			if (closed || ended || failed) {
+				return false;
+			}
+			buffer.add(t);
+			if (waiting == null) {
+				return true;
+			}
+			ready = waiting;
+			waiting = null;
+			batch = drain(waitingMax);
+		}
+		ready.resolve(batch);
+		return true;
+	}
+
+	@Override
+	public void end() {
+		final Deferred<List<T>, F> ready;
+		synchronized (this) {
+			if (closed || ended || failed) {
+				return;
+			}
+			ended = true;
+			ready = waiting;
+			waiting = null;
+		}
+		if (ready != null) {
+			ready.resolve(Collections.<T>emptyList());
+		}
+	}
+
+	@Override
+	public void fail(F f) {
+		final Deferred<List<T>, F> ready;
+		synchronized (this) {
+			if (closed || ended || failed) {
+				return;
+			}
+			failed = true;
+			failure = f;
+			ready = waiting;
+			waiting = null;
+		}
+		if (ready != null) {
+			ready.reject(f);
+		}
+	}
+
+	@Override
+	public synchronized long getDemand() {
+		if (closed || ended || failed) {
+			return 0;
+		}
+		return Math.max(0, capacity - buffer.size());
+	}
+
+	@Override
+	public PromiseStream<T, F> stream() {
+		return stream;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.StreamSource#next(int)
+	 */
+	@Override
+	public Promise<List<T>, F> next(int max) {
+		final Deferred<List<T>, F> deferred = PromiseAPI.get().deferred();
+		synchronized (this) {
+			if (waiting != null) {
+				throw new IllegalStateException("a batch is already outstanding");
+			}
+			capacity = max;
+			if (!buffer.isEmpty()) {
+				return deferred.resolve(drain(max)).promise();
+			} else if (failed) {
+				return deferred.reject(failure).promise();
+			} else if (ended || closed) {
+				return deferred.resolve(Collections.<T>emptyList()).promise();
+			}
+			waiting = deferred;
+			waitingMax = max;
+			return deferred.promise();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.StreamSource#close()
+	 */
+	@Override
+	public void close() {
+		final Deferred<List<T>, F> abandoned;
+		synchronized (this) {
+			closed = true;
+			capacity = 0;
+			buffer.clear();
+			abandoned = waiting;
+			waiting = null;
+		}
+		if (abandoned != null) {
+			abandoned.promise().cancel();
+		}
+	}
+
+	private List<T> drain(int max) {
+		final List<T> batch = new ArrayList<T>(Math.min(max, buffer.size()));
+		while (batch.size() < max && !buffer.isEmpty()) {
+			batch.add(buffer.poll());
+		}
+		return batch;
+	}
+}
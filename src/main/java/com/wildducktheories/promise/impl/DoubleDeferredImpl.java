@@ -0,0 +1,87 @@
+package com.wildducktheories.promise.impl;
+
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.DoubleDeferred;
+import com.wildducktheories.promise.DoubleDoneCallback;
+import com.wildducktheories.promise.DoubleFilter;
+import com.wildducktheories.promise.DoublePromise;
+
+/**
+ * An implementation of the {@link DoublePromise} and {@link DoubleDeferred} interfaces for a single promise.
+ *
+ * @param <F> The failure type.
+ */
+public class DoubleDeferredImpl<F> extends AbstractPrimitiveDeferredImpl<Double, F> implements DoubleDeferred<F>, DoublePromise<F> {
+
+	/**
+	 * Answer a {@link DoublePromise} for the unboxed outcome of a generic {@link Promise}. A <code>null</code> resolution
+	 * rejects the answered promise with a <code>null</code> failure.
+	 * @param promise A generic promise.
+	 * @return A {@link DoublePromise} that is resolved or rejected when the specified promise is.
+	 */
+	public static <F> DoublePromise<F> unbox(Promise<Double, F> promise) {
+		final DoubleDeferredImpl<F> deferred = new DoubleDeferredImpl<F>();
+		deferred.follow(promise);
+		return deferred;
+	}
+
+	@Override
+	public DoubleDeferred<F> resolve(double p) {
+		settleDone(Double.doubleToRawLongBits(p));
+		return this;
+	}
+
+	@Override
+	public DoubleDeferred<F> reject(F f) {
+		settleFailed(f);
+		return this;
+	}
+
+	@Override
+	public DoublePromise<F> promise() {
+		return this;
+	}
+
+	@Override
+	public DoublePromise<F> then(DoubleFilter filter) {
+		return then(filter, new DoubleDeferredImpl<F>());
+	}
+
+	@Override
+	public DoublePromise<F> done(DoubleDoneCallback callback) {
+		addCallbacks(callback, null);
+		return this;
+	}
+
+	@Override
+	public DoublePromise<F> fail(FailCallback<F> callback) {
+		addCallbacks(null, callback);
+		return this;
+	}
+
+	@Override
+	public Promise<Double, F> boxed() {
+		return box();
+	}
+
+	@Override
+	final long toBits(Double value) {
+		return Double.doubleToRawLongBits(value);
+	}
+
+	@Override
+	final Double toBoxed(long bits) {
+		return Double.longBitsToDouble(bits);
+	}
+
+	@Override
+	final long filter(Object filter, long bits) {
+		return Double.doubleToRawLongBits(((DoubleFilter)filter).filter(Double.longBitsToDouble(bits)));
+	}
+
+	@Override
+	final void deliver(Object callback, long bits) {
+		((DoubleDoneCallback)callback).onDone(Double.longBitsToDouble(bits));
+	}
+}
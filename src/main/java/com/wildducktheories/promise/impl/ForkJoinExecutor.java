@@ -0,0 +1,116 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * An {@link Executor} that runs the ASYNC side of an {@link APIImpl} (<code>when()</code>, <code>whenAll()</code> and
+ * the <code>*Async()</code> callbacks) on a work-stealing {@link ForkJoinPool}, while promise callbacks continue to be
+ * delivered on the single main thread of the current {@link com.wildducktheories.tasklet.Scheduler}.
+ * <p>
+ * Work submitted from a thread outside the pool enters the pool's shared submission queues. This is the case for
+ * <code>when()</code> and for the chunks of <code>whenAll()</code>, which are submitted from the scheduler's thread
+ * and so are spread across the workers by work stealing alone. Work submitted from a task running on the pool is
+ * pushed onto that worker's local queue instead, where the worker runs it next while the data it shares with its
+ * parent is still in cache, and from where idle workers steal it. Within the library, this is how continuations
+ * reach the pool: a promise that is settled by work running on the pool, such as the promise of a
+ * <code>when()</code> callable, notifies its waiters on that worker, so a <code>doneAsync()</code>,
+ * <code>failAsync()</code> or <code>thenAsync()</code> callback registered with this executor is forked onto the
+ * worker's local queue and runs next, typically on the same worker. Compared with a pool whose workers all take from
+ * one shared FIFO queue, this keeps the workers of a large machine from contending on the head of that queue.
+ * <p>
+ * Only <code>when()</code> calls issued from the scheduler's own thread, e.g. from inside
+ * {@link APIImpl#run(Runnable)} or a promise callback, are supported. A callable running on the pool must not itself
+ * call <code>when()</code>: the worker has no running {@link com.wildducktheories.tasklet.Scheduler}, so the
+ * resulting promise would be held by, and its callbacks delivered on, a scheduler that never runs.
+ * <p>
+ * Since a pool's workers are not replaced while they block, the pool suits CPU-bound work; work that mostly blocks is
+ * better submitted to a thread pool sized for it, or to the executor returned by {@link APIImpl#newVirtualThreadExecutor()}.
+ *
+ * @author jonseymour
+ */
+public final class ForkJoinExecutor implements Executor {
+
+	/**
+	 * Runs a {@link Runnable} as a {@link ForkJoinTask}, reporting any exception it throws to the uncaught exception
+	 * handler of the worker, as {@link ForkJoinPool#execute(Runnable)} does, rather than recording it in a task
+	 * that nobody joins.
+	 */
+	private static final class Task extends ForkJoinTask<Void> {
+		private static final long serialVersionUID = 1L;
+
+		private final Runnable runnable;
+
+		private Task(Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+		@Override
+		public Void getRawResult() {
+			return null;
+		}
+
+		@Override
+		protected void setRawResult(Void value) {
+		}
+
+		@Override
+		protected boolean exec() {
+			try {
+				runnable.run();
+			} catch (Throwable t) {
+				final Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+			}
+			return true;
+		}
+	}
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Construct an executor that runs work on the common pool.
+	 */
+	public ForkJoinExecutor() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Construct an executor that runs work on the specified pool. Pools created with <code>asyncMode</code> false
+	 * (the default) run locally submitted work in LIFO order, which favours cache locality; pools created with
+	 * <code>asyncMode</code> true run it in FIFO order.
+	 * @param pool The pool.
+	 */
+	public ForkJoinExecutor(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new NullPointerException("pool");
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * @return The pool on which work is run.
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(Runnable runnable) {
+		if (runnable == null) {
+			throw new NullPointerException("runnable");
+		}
+		final Task task = new Task(runnable);
+		final Thread current = Thread.currentThread();
+		if (current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)current).getPool() == pool) {
+			task.fork();
+		} else {
+			pool.execute(task);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative <code>long</code> values (typically latencies in nanoseconds) with
+ * log-linear buckets: values below 32 are counted exactly and larger values are counted in 16 linear
+ * sub-buckets per power of two, so any recorded value is reported to within 1/16 (about 6%) of its true value.
+ * <p>
+ * Recording a value costs one atomic increment of a fixed-size array, so any number of threads can record
+ * concurrently without contention beyond that of updating the same bucket. Reads are not atomic with respect to
+ * concurrent recording, but every read reflects all the values recorded before the read started.
+ *
+ * @author jonseymour
+ */
+public final class Histogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int LINEAR = 2 * SUB;
+	private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Record a value.
+	 * @param value The value; negative values are recorded as zero.
+	 */
+	public void record(long value) {
+		counts.incrementAndGet(index(Math.max(0, value)));
+	}
+
+	/**
+	 * @return The number of values recorded.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Answer the value below which the specified percentage of recorded values lie.
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The (lowest value of the bucket of the) value at the specified percentile, or 0 if no values have been recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		final long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long)Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return value(i);
+			}
+		}
+		return value(BUCKETS - 1);
+	}
+
+	/**
+	 * Discard all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	private static int index(long value) {
+		if (value < LINEAR) {
+			return (int)value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int shift = exponent - SUB_BITS;
+		return LINEAR + (exponent - SUB_BITS - 1) * SUB + ((int)(value >>> shift) & (SUB - 1));
+	}
+
+	private static long value(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		final int exponent = (index - LINEAR) / SUB + SUB_BITS + 1;
+		final int sub = (index - LINEAR) % SUB;
+		return (long)(SUB + sub) << (exponent - SUB_BITS);
+	}
+}
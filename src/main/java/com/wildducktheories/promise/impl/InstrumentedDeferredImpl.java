@@ -0,0 +1,196 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.Executor;
+
+import com.wildducktheories.promise.CompletionCallback;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Filter;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseListener;
+
+/**
+ * A {@link DeferredImpl} that reports its lifecycle to a {@link PromiseListener} and/or is tracked by a
+ * {@link LeakDetector}.
+ * <p>
+ * The timestamps needed to measure latencies and the tracking record of the detector are only held by this
+ * subclass, which is only created while a listener is installed or when the detector samples a promise, so
+ * other promises carry no extra state.
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+final class InstrumentedDeferredImpl<P, F> extends DeferredImpl<P, F> {
+
+	/**
+	 * Times the delivery and execution of a registered callback.
+	 */
+	private final class Timed implements CompletionCallback<P, F> {
+		private final DoneCallback<P> done;
+		private final FailCallback<F> fail;
+		private final long registered = System.nanoTime();
+
+		private Timed(DoneCallback<P> done, FailCallback<F> fail) {
+			this.done = done;
+			this.fail = fail;
+		}
+
+		@Override
+		public void onDone(P p) {
+			final long start = System.nanoTime();
+			try {
+				done.onDone(p);
+			} finally {
+				delivered(registered, start);
+			}
+		}
+
+		@Override
+		public void onFail(F f) {
+			final long start = System.nanoTime();
+			try {
+				fail.onFail(f);
+			} finally {
+				delivered(registered, start);
+			}
+		}
+	}
+
+	/**
+	 * Times the delivery and execution of the filter of a <code>then()</code>, <code>thenPromise()</code> or
+	 * <code>thenAsync()</code>.
+	 */
+	private final class TimedFilter<Q> implements Filter<P, Q> {
+		private final Filter<P, Q> filter;
+		private final long registered = System.nanoTime();
+
+		private TimedFilter(Filter<P, Q> filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		public Q filter(P p) {
+			final long start = System.nanoTime();
+			try {
+				return filter.filter(p);
+			} finally {
+				delivered(registered, start);
+			}
+		}
+	}
+
+	private final PromiseListener listener;
+	private final LeakDetector detector;
+	private final LeakDetector.Tracked tracked;
+	private final long created = System.nanoTime();
+	private volatile long settled;
+
+	/**
+	 * @param listener The listener, or <code>null</code>.
+	 * @param detector The detector that sampled the receiver, or <code>null</code>.
+	 */
+	InstrumentedDeferredImpl(PromiseListener listener, LeakDetector detector) {
+		this.listener = listener;
+		this.detector = detector;
+		this.tracked = detector != null ? detector.track(this) : null;
+		if (listener != null) {
+			listener.onCreated(this);
+		}
+	}
+
+	@Override
+	protected void onSettled(boolean failed) {
+		if (tracked != null) {
+			detector.untrack(tracked);
+		}
+		if (listener != null) {
+			final long now = System.nanoTime();
+			settled = now;
+			listener.onSettled(this, failed, now - created);
+		}
+	}
+
+	@Override
+	protected void onCancelled() {
+		if (tracked != null) {
+			detector.untrack(tracked);
+		}
+	}
+
+	@Override
+	public Promise<P, F> done(DoneCallback<P> callback) {
+		if (listener == null) {
+			return super.done(callback);
+		}
+		listener.onRegistered(this);
+		return super.done(new Timed(callback, null));
+	}
+
+	@Override
+	public Promise<P, F> fail(FailCallback<F> callback) {
+		if (listener == null) {
+			return super.fail(callback);
+		}
+		listener.onRegistered(this);
+		return super.fail(new Timed(null, callback));
+	}
+
+	@Override
+	public Promise<P, F> complete(CompletionCallback<P, F> callback) {
+		if (listener == null) {
+			return super.complete(callback);
+		}
+		listener.onRegistered(this);
+		return super.complete(new Timed(callback, callback));
+	}
+
+	@Override
+	public Promise<P, F> doneAsync(DoneCallback<P> callback, Executor executor) {
+		if (listener == null) {
+			return super.doneAsync(callback, executor);
+		}
+		listener.onRegistered(this);
+		return super.doneAsync(new Timed(callback, null), executor);
+	}
+
+	@Override
+	public Promise<P, F> failAsync(FailCallback<F> callback, Executor executor) {
+		if (listener == null) {
+			return super.failAsync(callback, executor);
+		}
+		listener.onRegistered(this);
+		return super.failAsync(new Timed(null, callback), executor);
+	}
+
+	@Override
+	public <Q> Promise<Q, F> then(Filter<P, Q> filter) {
+		if (listener == null) {
+			return super.then(filter);
+		}
+		listener.onRegistered(this);
+		return super.then(new TimedFilter<Q>(filter));
+	}
+
+	@Override
+	public <Q> Promise<Q, F> thenPromise(Filter<P, Promise<Q, F>> filter) {
+		if (listener == null) {
+			return super.thenPromise(filter);
+		}
+		listener.onRegistered(this);
+		return super.thenPromise(new TimedFilter<Promise<Q, F>>(filter));
+	}
+
+	@Override
+	public <Q> Promise<Q, F> thenAsync(Filter<P, Q> filter, Executor executor) {
+		if (listener == null) {
+			return super.thenAsync(filter, executor);
+		}
+		listener.onRegistered(this);
+		return super.thenAsync(new TimedFilter<Q>(filter), executor);
+	}
+
+	private void delivered(long registered, long start) {
+		final long ready = Math.max(registered, settled);
+		listener.onDelivered(this, Math.max(0, start - ready), System.nanoTime() - start);
+	}
+}
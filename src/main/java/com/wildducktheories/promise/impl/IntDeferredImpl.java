@@ -0,0 +1,87 @@
+package com.wildducktheories.promise.impl;
+
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.IntDeferred;
+import com.wildducktheories.promise.IntDoneCallback;
+import com.wildducktheories.promise.IntFilter;
+import com.wildducktheories.promise.IntPromise;
+
+/**
+ * An implementation of the {@link IntPromise} and {@link IntDeferred} interfaces for a single promise.
+ *
+ * @param <F> The failure type.
+ */
+public class IntDeferredImpl<F> extends AbstractPrimitiveDeferredImpl<Integer, F> implements IntDeferred<F>, IntPromise<F> {
+
+	/**
+	 * Answer an {@link IntPromise} for the unboxed outcome of a generic {@link Promise}. A <code>null</code> resolution
+	 * rejects the answered promise with a <code>null</code> failure.
+	 * @param promise A generic promise.
+	 * @return An {@link IntPromise} that is resolved or rejected when the specified promise is.
+	 */
+	public static <F> IntPromise<F> unbox(Promise<Integer, F> promise) {
+		final IntDeferredImpl<F> deferred = new IntDeferredImpl<F>();
+		deferred.follow(promise);
+		return deferred;
+	}
+
+	@Override
+	public IntDeferred<F> resolve(int p) {
+		settleDone(p);
+		return this;
+	}
+
+	@Override
+	public IntDeferred<F> reject(F f) {
+		settleFailed(f);
+		return this;
+	}
+
+	@Override
+	public IntPromise<F> promise() {
+		return this;
+	}
+
+	@Override
+	public IntPromise<F> then(IntFilter filter) {
+		return then(filter, new IntDeferredImpl<F>());
+	}
+
+	@Override
+	public IntPromise<F> done(IntDoneCallback callback) {
+		addCallbacks(callback, null);
+		return this;
+	}
+
+	@Override
+	public IntPromise<F> fail(FailCallback<F> callback) {
+		addCallbacks(null, callback);
+		return this;
+	}
+
+	@Override
+	public Promise<Integer, F> boxed() {
+		return box();
+	}
+
+	@Override
+	final long toBits(Integer value) {
+		return value;
+	}
+
+	@Override
+	final Integer toBoxed(long bits) {
+		return (int)bits;
+	}
+
+	@Override
+	final long filter(Object filter, long bits) {
+		return ((IntFilter)filter).filter((int)bits);
+	}
+
+	@Override
+	final void deliver(Object callback, long bits) {
+		((IntDoneCallback)callback).onDone((int)bits);
+	}
+}
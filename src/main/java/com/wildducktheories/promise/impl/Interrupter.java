@@ -0,0 +1,89 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Waits on a {@link DeferredImpl} on behalf of the work that will resolve or reject it, so that the work
+ * can be skipped if the {@link DeferredImpl} is cancelled before the work starts and the thread executing the 
+ * work can be interrupted if the {@link DeferredImpl} is cancelled while the work is in progress.
+ * <p>
+ * The thread executing the work must bracket the work with calls to <code>enter()</code> and <code>exit()</code>.
+ * Any interrupt delivered on behalf of the cancellation is cleared by <code>exit()</code> so that it cannot leak 
+ * into unrelated work subsequently executed by the same thread. Work that is done in several steps, possibly on
+ * different threads, may bracket each step with its own <code>enter()</code> and <code>exit()</code>.
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+class Interrupter<P, F> extends Waiter<P, F> {
+
+	private static final int IDLE = 0;
+	private static final int INTERRUPTING = 1;
+	private static final int INTERRUPTED = 2;
+	private static final int FINISHED = 3;
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<Interrupter> STATE =
+		AtomicIntegerFieldUpdater.newUpdater(Interrupter.class, "state");
+
+	private volatile Thread runner = null;
+	private volatile int state = IDLE;
+
+	/**
+	 * Called by the thread that is about to execute the work, or the next step of the work.
+	 * @param deferred The {@link DeferredImpl} on which the receiver is waiting.
+	 * @return false if the {@link DeferredImpl} has already been cancelled, in which case the work should be
+	 * skipped. <code>exit()</code> must be called in either case.
+	 */
+	final boolean enter(DeferredImpl<?, ?> deferred) {
+		// re-arm after a previous step, so that a cancellation during this step interrupts it.
+		STATE.compareAndSet(this, FINISHED, IDLE);
+		runner = Thread.currentThread();
+		return !deferred.isCancelled();
+	}
+
+	/**
+	 * Called by the thread that executed the work once the work has finished.
+	 */
+	final void exit() {
+		runner = null;
+		if (!STATE.compareAndSet(this, IDLE, FINISHED)) {
+			while (state == INTERRUPTING) {
+				Thread.yield();
+			}
+			if (state == INTERRUPTED) {
+				Thread.interrupted();
+			}
+		}
+	}
+
+	@Override
+	public void onDone(P p) {
+	}
+
+	@Override
+	public void onFail(F f) {
+	}
+
+	@Override
+	void onCancel() {
+		if (STATE.compareAndSet(this, IDLE, INTERRUPTING)) {
+			final Thread runner = this.runner;
+			if (runner != null) {
+				runner.interrupt();
+				state = INTERRUPTED;
+			} else {
+				state = FINISHED;
+			}
+		}
+	}
+
+	/**
+	 * An interrupter does not observe the outcome of the {@link DeferredImpl} on which it waits, so it does not
+	 * prevent the cancellation of that {@link DeferredImpl}.
+	 */
+	@Override
+	final boolean isObserving() {
+		return false;
+	}
+}
@@ -0,0 +1,64 @@
+package com.wildducktheories.promise.impl;
+
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseListener;
+
+/**
+ * A {@link PromiseListener} that records promise latencies in {@link Histogram}s:
+ * <ul>
+ * <li>the time promises are pending, from creation to resolution or rejection, which is the time spent waiting
+ * on the work (for example, a downstream call) that settles them;
+ * <li>the time callbacks wait to be delivered once their promises are settled, which is the time spent waiting
+ * for the synchronous thread of the {@link com.wildducktheories.tasklet.Scheduler};
+ * <li>the time taken to execute callbacks.
+ * </ul>
+ *
+ * @author jonseymour
+ */
+public class LatencyRecorder implements PromiseListener {
+
+	private final Histogram pending = new Histogram();
+	private final Histogram delivery = new Histogram();
+	private final Histogram execution = new Histogram();
+
+	@Override
+	public void onCreated(Promise<?, ?> promise) {
+	}
+
+	@Override
+	public void onSettled(Promise<?, ?> promise, boolean rejected, long pendingNanos) {
+		pending.record(pendingNanos);
+	}
+
+	@Override
+	public void onRegistered(Promise<?, ?> promise) {
+	}
+
+	@Override
+	public void onDelivered(Promise<?, ?> promise, long deliveryNanos, long executionNanos) {
+		delivery.record(deliveryNanos);
+		execution.record(executionNanos);
+	}
+
+	/**
+	 * @return The time, in nanoseconds, from the creation of each promise to its resolution or rejection.
+	 */
+	public Histogram getPendingLatency() {
+		return pending;
+	}
+
+	/**
+	 * @return The time, in nanoseconds, from the resolution or rejection of a promise (or the registration of a callback, if later)
+	 * to the start of the execution of the callback.
+	 */
+	public Histogram getDeliveryLatency() {
+		return delivery;
+	}
+
+	/**
+	 * @return The execution time of callbacks, in nanoseconds.
+	 */
+	public Histogram getExecutionTime() {
+		return execution;
+	}
+}
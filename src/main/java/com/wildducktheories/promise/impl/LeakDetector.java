@@ -0,0 +1,186 @@
+package com.wildducktheories.promise.impl;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects promises that are never resolved, rejected or cancelled, which keep their callbacks and the WAIT
+ * tasklets of their {@link com.wildducktheories.tasklet.Scheduler}s alive indefinitely.
+ * <p>
+ * A configurable fraction of the promises created by an {@link APIImpl} are sampled. For each sampled promise, the
+ * detector records the creation site (as a {@link Throwable}) and holds a {@link PhantomReference} to the promise
+ * until it is settled. It then reports, once a second:
+ * <ul>
+ * <li>sampled promises that were garbage collected while still pending, which can never be settled, and
+ * <li>sampled promises that have been pending for longer than a threshold.
+ * </ul>
+ * Unsampled promises are not tracked and carry no extra state, so the cost of the detector is roughly the cost of
+ * the sampling decision plus, for sampled promises, a stack trace and a set entry; at a sample rate of 1% it is
+ * suitable for use in production.
+ * <p>
+ * By default, reports are logged as warnings with {@link java.util.logging}; override <code>onCollected()</code> and
+ * <code>onOverdue()</code> to report them elsewhere.
+ * <p>
+ * A detector scans until <code>stop()</code> is called, so a detector that is no longer needed must be stopped to
+ * be released.
+ *
+ * @author jonseymour
+ */
+public class LeakDetector {
+
+	private static final Logger LOGGER = Logger.getLogger(LeakDetector.class.getName());
+
+	/**
+	 * The interval between scans, in milliseconds.
+	 */
+	private static final long SCAN_INTERVAL = 1000;
+
+	/**
+	 * Tracks a sampled promise until it is settled.
+	 */
+	static final class Tracked extends PhantomReference<DeferredImpl<?, ?>> {
+		private final Throwable site;
+		private final long created = System.nanoTime();
+		private boolean reported = false;
+
+		private Tracked(DeferredImpl<?, ?> promise, ReferenceQueue<DeferredImpl<?, ?>> queue) {
+			super(promise, queue);
+			this.site = new Throwable("pending promise created");
+		}
+	}
+
+	private final double sampleRate;
+	private final long threshold;
+	private final ReferenceQueue<DeferredImpl<?, ?>> queue = new ReferenceQueue<DeferredImpl<?, ?>>();
+	private final Set<Tracked> tracked = Collections.newSetFromMap(new ConcurrentHashMap<Tracked, Boolean>());
+
+	private volatile boolean stopped = false;
+	private volatile TimerWheel.Timeout next;
+
+	/**
+	 * @param sampleRate The fraction of promises to sample, between 0 and 1.
+	 * @param threshold The time after which a sampled promise that is still pending is reported.
+	 * @param unit The unit of the threshold.
+	 */
+	public LeakDetector(double sampleRate, long threshold, TimeUnit unit) {
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("sampleRate must be between 0 and 1: " + sampleRate);
+		}
+		this.sampleRate = sampleRate;
+		this.threshold = unit.toNanos(threshold);
+		schedule();
+	}
+
+	/**
+	 * @return The number of sampled promises that are still pending.
+	 */
+	public int getTrackedCount() {
+		return tracked.size();
+	}
+
+	/**
+	 * Report a sampled promise that was garbage collected while still pending.
+	 * @param site The creation site of the promise.
+	 */
+	protected void onCollected(Throwable site) {
+		LOGGER.log(Level.WARNING, "promise was garbage collected without being resolved, rejected or cancelled", site);
+	}
+
+	/**
+	 * Report a sampled promise that has been pending for longer than the threshold. Each promise is reported at most once.
+	 * @param site The creation site of the promise.
+	 * @param pendingNanos The time for which the promise has been pending.
+	 */
+	protected void onOverdue(Throwable site, long pendingNanos) {
+		LOGGER.log(Level.WARNING, "promise has been pending for " + TimeUnit.NANOSECONDS.toMillis(pendingNanos) + "ms", site);
+	}
+
+	/**
+	 * @return true if the next promise should be sampled.
+	 */
+	final boolean sample() {
+		return !stopped && sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+	}
+
+	/**
+	 * Start tracking a sampled promise.
+	 * @param promise The promise.
+	 * @return The tracking record, which must be passed to <code>untrack()</code> when the promise is settled.
+	 */
+	final Tracked track(DeferredImpl<?, ?> promise) {
+		final Tracked t = new Tracked(promise, queue);
+		tracked.add(t);
+		return t;
+	}
+
+	/**
+	 * Stop tracking a promise which has been settled.
+	 * @param t The tracking record.
+	 */
+	final void untrack(Tracked t) {
+		if (tracked.remove(t)) {
+			t.clear();
+		}
+	}
+
+	/**
+	 * Report the sampled promises that have been collected while pending or are overdue.
+	 */
+	final void scan() {
+		Reference<? extends DeferredImpl<?, ?>> reference;
+		while ((reference = queue.poll()) != null) {
+			final Tracked t = (Tracked)reference;
+			if (tracked.remove(t)) {
+				onCollected(t.site);
+			}
+		}
+		final long now = System.nanoTime();
+		for (Tracked t : tracked) {
+			if (!t.reported && now - t.created > threshold) {
+				t.reported = true;
+				onOverdue(t.site, now - t.created);
+			}
+		}
+	}
+
+	/**
+	 * Stop the detector: cancel its next scan and stop sampling and tracking promises, so that the detector can
+	 * be garbage collected. A detector cannot be restarted.
+	 */
+	public void stop() {
+		stopped = true;
+		final TimerWheel.Timeout next = this.next;
+		if (next != null) {
+			next.cancel();
+		}
+		tracked.clear();
+	}
+
+	private void schedule() {
+		if (stopped) {
+			return;
+		}
+		next = TimerWheel.shared().schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					scan();
+				} finally {
+					schedule();
+				}
+			}
+		}, SCAN_INTERVAL, TimeUnit.MILLISECONDS);
+		if (stopped) {
+			// stop() may have missed the scan scheduled above.
+			next.cancel();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.wildducktheories.promise.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link AbstractSocketCallImpl.Framing} that sends a request, and expects a response, as a single frame made of
+ * a 4 byte big-endian length followed by that many bytes of payload.
+ * <p>
+ * Frames may be larger than the buffers of the call: a request is encoded across as many buffers as it needs, and a
+ * response is accumulated into a byte array of the announced length.
+ *
+ * @author jonseymour
+ */
+public final class LengthPrefixedFraming implements AbstractSocketCallImpl.Framing<byte[], byte[]> {
+
+	/**
+	 * The default maximum length of a response payload, in bytes.
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 16 * 1024 * 1024;
+
+	private static final int HEADER_LENGTH = 4;
+
+	private final int maxLength;
+
+	/**
+	 * The number of bytes of the request, including its header, that have been encoded.
+	 */
+	private int encoded = 0;
+
+	/**
+	 * The header and payload of the response, as they are read.
+	 */
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+	private byte[] payload;
+	private int decoded = 0;
+
+	public LengthPrefixedFraming() {
+		this(DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * @param maxLength The maximum length of a response payload. Longer responses fail the call rather than
+	 * being buffered.
+	 */
+	public LengthPrefixedFraming(int maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.impl.AbstractSocketCallImpl.Framing#encode(java.lang.Object, java.nio.ByteBuffer)
+	 */
+	@Override
+	public boolean encode(byte[] r, ByteBuffer out) {
+		while (encoded < HEADER_LENGTH && out.hasRemaining()) {
+			out.put((byte)(r.length >>> (8 * (HEADER_LENGTH - 1 - encoded))));
+			encoded++;
+		}
+		final int offset = encoded - HEADER_LENGTH;
+		if (offset >= 0) {
+			final int n = Math.min(r.length - offset, out.remaining());
+			out.put(r, offset, n);
+			encoded += n;
+		}
+		return encoded == HEADER_LENGTH + r.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.impl.AbstractSocketCallImpl.Framing#decode(java.nio.ByteBuffer, boolean)
+	 */
+	@Override
+	public byte[] decode(ByteBuffer in, boolean endOfStream) throws IOException {
+		if (payload == null) {
+			while (header.hasRemaining() && in.hasRemaining()) {
+				header.put(in.get());
+			}
+			if (header.hasRemaining()) {
+				return null;
+			}
+			final int length = header.getInt(0);
+			if (length < 0 || length > maxLength) {
+				throw new IOException("illegal response frame length: " + length);
+			}
+			payload = new byte[length];
+		}
+		final int n = Math.min(payload.length - decoded, in.remaining());
+		in.get(payload, decoded, n);
+		decoded += n;
+		return decoded == payload.length ? payload : null;
+	}
+}
@@ -0,0 +1,87 @@
+package com.wildducktheories.promise.impl;
+
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.LongDeferred;
+import com.wildducktheories.promise.LongDoneCallback;
+import com.wildducktheories.promise.LongFilter;
+import com.wildducktheories.promise.LongPromise;
+
+/**
+ * An implementation of the {@link LongPromise} and {@link LongDeferred} interfaces for a single promise.
+ *
+ * @param <F> The failure type.
+ */
+public class LongDeferredImpl<F> extends AbstractPrimitiveDeferredImpl<Long, F> implements LongDeferred<F>, LongPromise<F> {
+
+	/**
+	 * Answer a {@link LongPromise} for the unboxed outcome of a generic {@link Promise}. A <code>null</code> resolution
+	 * rejects the answered promise with a <code>null</code> failure.
+	 * @param promise A generic promise.
+	 * @return A {@link LongPromise} that is resolved or rejected when the specified promise is.
+	 */
+	public static <F> LongPromise<F> unbox(Promise<Long, F> promise) {
+		final LongDeferredImpl<F> deferred = new LongDeferredImpl<F>();
+		deferred.follow(promise);
+		return deferred;
+	}
+
+	@Override
+	public LongDeferred<F> resolve(long p) {
+		settleDone(p);
+		return this;
+	}
+
+	@Override
+	public LongDeferred<F> reject(F f) {
+		settleFailed(f);
+		return this;
+	}
+
+	@Override
+	public LongPromise<F> promise() {
+		return this;
+	}
+
+	@Override
+	public LongPromise<F> then(LongFilter filter) {
+		return then(filter, new LongDeferredImpl<F>());
+	}
+
+	@Override
+	public LongPromise<F> done(LongDoneCallback callback) {
+		addCallbacks(callback, null);
+		return this;
+	}
+
+	@Override
+	public LongPromise<F> fail(FailCallback<F> callback) {
+		addCallbacks(null, callback);
+		return this;
+	}
+
+	@Override
+	public Promise<Long, F> boxed() {
+		return box();
+	}
+
+	@Override
+	final long toBits(Long value) {
+		return value;
+	}
+
+	@Override
+	final Long toBoxed(long bits) {
+		return bits;
+	}
+
+	@Override
+	final long filter(Object filter, long bits) {
+		return ((LongFilter)filter).filter(bits);
+	}
+
+	@Override
+	final void deliver(Object callback, long bits) {
+		((LongDoneCallback)callback).onDone(bits);
+	}
+}
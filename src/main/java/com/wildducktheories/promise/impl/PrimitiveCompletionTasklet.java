@@ -0,0 +1,63 @@
+package com.wildducktheories.promise.impl;
+
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.tasklet.Directive;
+import com.wildducktheories.tasklet.Rescheduler;
+import com.wildducktheories.tasklet.Scheduler;
+import com.wildducktheories.tasklet.Tasklet;
+
+/**
+ * The primitive counterpart of {@link SyncCompletionTasklet}: ensures that an unboxed promise result is 
+ * always delivered on the scheduler's main thread rather than the resolver's thread.
+ *
+ * @param <F> The failure type.
+ */
+final class PrimitiveCompletionTasklet<F> implements Tasklet {
+	private final Rescheduler rescheduler;
+	private final AbstractPrimitiveDeferredImpl<?, F> deferred;
+	private final Object doneCallback;
+	private final FailCallback<F> failCallback;
+
+	/**
+	 * The next tasklet in the stack of tasklets waiting on the same deferred.
+	 */
+	PrimitiveCompletionTasklet<F> next;
+
+	private long bits;
+	private F failure;
+	private boolean isFailure = false;
+
+	PrimitiveCompletionTasklet(Scheduler scheduler, AbstractPrimitiveDeferredImpl<?, F> deferred,
+			Object doneCallback, FailCallback<F> failCallback) {
+		super();
+		this.rescheduler = scheduler.suspend(this);
+		this.deferred = deferred;
+		this.doneCallback = doneCallback;
+		this.failCallback = failCallback;
+	}
+
+	void onDone(long bits) {
+		isFailure = false;
+		this.bits = bits;
+		rescheduler.resume(Directive.SYNC);
+	}
+
+	void onFail(F f) {
+		isFailure = true;
+		failure = f;
+		rescheduler.resume(Directive.SYNC);
+	}
+
+	public Directive task() {
+		if (isFailure) {
+			if (failCallback != null) {
+				failCallback.onFail(failure);
+			}
+		} else {
+			if (doneCallback != null) {
+				deferred.notifyDone(doneCallback, bits);
+			}
+		}
+		return Directive.DONE;
+	}
+}
@@ -0,0 +1,97 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.CompletionCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.RejectedException;
+
+/**
+ * The {@link CompletableFuture} returned by {@link API#asCompletableFuture(Promise)}.
+ * <p>
+ * The receiver waits on a {@link DeferredImpl} with a {@link Waiter} that is notified directly on the thread that
+ * settles the promise (or immediately, if the promise is already settled), so no tasklet is scheduled and the
+ * future is completed without a hop through the current {@link com.wildducktheories.tasklet.Scheduler}. Actions
+ * registered with the future then run according to the usual rules of {@link CompletableFuture}.
+ * <p>
+ * Cancelling the receiver cancels the promise unless the promise is still observed by some other waiter.
+ *
+ * @param <P> The promised type.
+ */
+final class PromiseFutureImpl<P> extends CompletableFuture<P> {
+
+	/**
+	 * Completes the future with the outcome of the promise.
+	 */
+	private static final class Completion<P, F> extends Waiter<P, F> {
+		private final PromiseFutureImpl<P> future;
+
+		private Completion(PromiseFutureImpl<P> future) {
+			this.future = future;
+		}
+
+		@Override
+		public void onDone(P p) {
+			future.complete(p);
+		}
+
+		@Override
+		public void onFail(F f) {
+			future.completeExceptionally(f instanceof Throwable ? (Throwable)f : new RejectedException(f));
+		}
+
+		@Override
+		void onCancel() {
+			future.cancel(false);
+		}
+
+		@Override
+		boolean isObserving() {
+			return !future.isCancelled();
+		}
+	}
+
+	private final DeferredImpl<?, ?> source;
+
+	private PromiseFutureImpl(DeferredImpl<?, ?> source) {
+		this.source = source;
+	}
+
+	/**
+	 * Answer a future for the outcome of the specified promise.
+	 * @param promise The promise.
+	 * @return A {@link CompletableFuture} that is completed when the promise is resolved or rejected.
+	 */
+	static <P, F> CompletableFuture<P> bridge(Promise<P, F> promise) {
+		if (promise instanceof DeferredImpl) {
+			final DeferredImpl<P, F> deferred = (DeferredImpl<P, F>)promise;
+			final PromiseFutureImpl<P> future = new PromiseFutureImpl<P>(deferred);
+			deferred.addWaiter(new Completion<P, F>(future));
+			return future;
+		}
+
+		final PromiseFutureImpl<P> future = new PromiseFutureImpl<P>(null);
+		promise.complete(new CompletionCallback<P, F>() {
+			@Override
+			public void onDone(P p) {
+				future.complete(p);
+			}
+
+			@Override
+			public void onFail(F f) {
+				future.completeExceptionally(f instanceof Throwable ? (Throwable)f : new RejectedException(f));
+			}
+		});
+		return future;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		final boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled && source != null) {
+			source.cancelIfUnobserved();
+		}
+		return cancelled;
+	}
+}
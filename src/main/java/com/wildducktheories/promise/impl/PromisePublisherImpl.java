@@ -0,0 +1,167 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.RejectedException;
+
+/**
+ * The {@link Publisher} returned by {@link API#asPublisher(Promise)}, which publishes the resolution of a
+ * promise as a single element or, if the promise is resolved with null, completes without publishing an element.
+ * <p>
+ * Like {@link PromiseFutureImpl}, each subscription waits on a {@link DeferredImpl} with a {@link Waiter}, so
+ * subscribers are signalled directly on the thread that settles the promise, or on the thread that requests the
+ * element if that happens later, without a hop through the current {@link com.wildducktheories.tasklet.Scheduler}.
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+final class PromisePublisherImpl<P, F> implements Publisher<P> {
+
+	/**
+	 * Signals the outcome of the promise to one subscriber once the element has been both resolved and requested.
+	 */
+	private static final class PromiseSubscription<P, F> extends Waiter<P, F> implements Subscription {
+		private static final int REQUESTED = 1;
+		private static final int RESOLVED = 2;
+		private static final int TERMINATED = 4;
+
+		private final Subscriber<? super P> subscriber;
+		private final DeferredImpl<?, ?> source;
+		private final AtomicInteger state = new AtomicInteger();
+		private P value;
+
+		private PromiseSubscription(Subscriber<? super P> subscriber, DeferredImpl<?, ?> source) {
+			this.subscriber = subscriber;
+			this.source = source;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				if (terminate()) {
+					subscriber.onError(new IllegalArgumentException("request must be positive: " + n));
+					release();
+				}
+			} else if (set(REQUESTED)) {
+				deliver();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			if (terminate()) {
+				release();
+			}
+		}
+
+		@Override
+		public void onDone(P p) {
+			value = p;
+			if (set(RESOLVED)) {
+				deliver();
+			}
+		}
+
+		@Override
+		public void onFail(F f) {
+			if (terminate()) {
+				subscriber.onError(f instanceof Throwable ? (Throwable)f : new RejectedException(f));
+			}
+		}
+
+		@Override
+		void onCancel() {
+			if (terminate()) {
+				subscriber.onError(new CancellationException("promise cancelled"));
+			}
+		}
+
+		@Override
+		boolean isObserving() {
+			return (state.get() & TERMINATED) == 0;
+		}
+
+		/**
+		 * Set the specified flag.
+		 * @param flag REQUESTED or RESOLVED.
+		 * @return true if the caller completed the pair and must deliver the element.
+		 */
+		private boolean set(int flag) {
+			for (;;) {
+				final int current = state.get();
+				if ((current & (TERMINATED | flag)) != 0) {
+					return false;
+				}
+				int next = current | flag;
+				if (next == (REQUESTED | RESOLVED)) {
+					next |= TERMINATED;
+				}
+				if (state.compareAndSet(current, next)) {
+					return (next & TERMINATED) != 0;
+				}
+			}
+		}
+
+		/**
+		 * @return true if the receiver was terminated by this call.
+		 */
+		private boolean terminate() {
+			for (;;) {
+				final int current = state.get();
+				if ((current & TERMINATED) != 0) {
+					return false;
+				}
+				if (state.compareAndSet(current, current | TERMINATED)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Publish the resolution, unless it is null, which Reactive Streams does not allow as an element (for
+		 * example, the resolution of a <code>Promise&lt;Void, F&gt;</code>), and then complete.
+		 */
+		private void deliver() {
+			if (value != null) {
+				subscriber.onNext(value);
+			}
+			subscriber.onComplete();
+		}
+
+		private void release() {
+			if (source != null) {
+				source.cancelIfUnobserved();
+			}
+		}
+	}
+
+	private final Promise<P, F> promise;
+
+	PromisePublisherImpl(Promise<P, F> promise) {
+		this.promise = promise;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super P> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		if (promise instanceof DeferredImpl) {
+			final DeferredImpl<P, F> deferred = (DeferredImpl<P, F>)promise;
+			final PromiseSubscription<P, F> subscription = new PromiseSubscription<P, F>(subscriber, deferred);
+			subscriber.onSubscribe(subscription);
+			deferred.addWaiter(subscription);
+		} else {
+			final PromiseSubscription<P, F> subscription = new PromiseSubscription<P, F>(subscriber, null);
+			subscriber.onSubscribe(subscription);
+			promise.complete(subscription);
+		}
+	}
+}
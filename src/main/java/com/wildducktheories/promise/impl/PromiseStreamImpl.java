@@ -0,0 +1,405 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.wildducktheories.promise.CompletionCallback;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.Filter;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.promise.PromiseStream;
+import com.wildducktheories.promise.Reducer;
+import com.wildducktheories.promise.StreamSource;
+
+/**
+ * An implementation of {@link PromiseStream} that pulls batches of values from a {@link StreamSource}.
+ * <p>
+ * The operators of a stream are not applied to whole batches. Instead, when a terminal operation is called, they are
+ * bound into a chain of {@link Sink}s through which each value of a batch is pushed in turn, so a batch costs one
+ * hop to the main thread regardless of the number of operators and no intermediate lists or promises are allocated.
+ *
+ * @param <S> The type of the values of the source.
+ * @param <T> The type of the values of the stream.
+ * @param <F> The failure type.
+ */
+final class PromiseStreamImpl<S, T, F> implements PromiseStream<T, F> {
+
+	/**
+	 * The default maximum number of values requested from a source at once.
+	 */
+	static final int DEFAULT_BATCH_SIZE = 64;
+
+	/**
+	 * Receives the values of a stream, one at a time, on the main thread.
+	 *
+	 * @param <T> The type of the values.
+	 */
+	abstract static class Sink<T> {
+		/**
+		 * @param t The next value.
+		 * @return false if no more values are wanted.
+		 */
+		abstract boolean accept(T t);
+
+		/**
+		 * @return The maximum number of further values wanted.
+		 */
+		long demand() {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * A sink which computes the result of a terminal operation.
+	 *
+	 * @param <T> The type of the values.
+	 * @param <A> The type of the result.
+	 */
+	abstract static class Terminal<T, A> extends Sink<T> {
+		abstract A result();
+	}
+
+	/**
+	 * The operators of a stream, which transform the values of a source of type S into values of type T.
+	 *
+	 * @param <S> The type of the values of the source.
+	 * @param <T> The type of the values of the stream.
+	 */
+	abstract static class Stage<S, T> {
+		/**
+		 * @param downstream The sink for the transformed values.
+		 * @return A sink for the values of the source.
+		 */
+		abstract Sink<S> bind(Sink<T> downstream);
+	}
+
+	private final StreamSource<S, F> source;
+	private final Stage<S, T> stage;
+	private final int batchSize;
+
+	/**
+	 * Shared by all the streams derived from the same source, so that the source is consumed at most once.
+	 */
+	private final AtomicBoolean consumed;
+
+	private PromiseStreamImpl(StreamSource<S, F> source, Stage<S, T> stage, int batchSize, AtomicBoolean consumed) {
+		this.source = source;
+		this.stage = stage;
+		this.batchSize = batchSize;
+		this.consumed = consumed;
+	}
+
+	/**
+	 * @param source The source.
+	 * @param batchSize The maximum number of values requested from the source at once.
+	 * @return A stream of the values of the source.
+	 */
+	static <T, F> PromiseStream<T, F> of(StreamSource<T, F> source, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		return new PromiseStreamImpl<T, T, F>(source, new Stage<T, T>() {
+			@Override
+			Sink<T> bind(Sink<T> downstream) {
+				return downstream;
+			}
+		}, batchSize, new AtomicBoolean());
+	}
+
+	private <Q> PromiseStream<Q, F> derive(Stage<S, Q> stage) {
+		return new PromiseStreamImpl<S, Q, F>(source, stage, batchSize, consumed);
+	}
+
+	@Override
+	public <Q> PromiseStream<Q, F> map(final Filter<T, Q> filter) {
+		return derive(new Stage<S, Q>() {
+			@Override
+			Sink<S> bind(final Sink<Q> downstream) {
+				return stage.bind(new Sink<T>() {
+					@Override
+					boolean accept(T t) {
+						return downstream.accept(filter.filter(t));
+					}
+
+					@Override
+					long demand() {
+						return downstream.demand();
+					}
+				});
+			}
+		});
+	}
+
+	@Override
+	public PromiseStream<T, F> filter(final Filter<T, Boolean> predicate) {
+		return derive(new Stage<S, T>() {
+			@Override
+			Sink<S> bind(final Sink<T> downstream) {
+				return stage.bind(new Sink<T>() {
+					@Override
+					boolean accept(T t) {
+						return !Boolean.TRUE.equals(predicate.filter(t)) || downstream.accept(t);
+					}
+
+					@Override
+					long demand() {
+						return downstream.demand();
+					}
+				});
+			}
+		});
+	}
+
+	@Override
+	public PromiseStream<T, F> take(final long n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("n must not be negative: " + n);
+		}
+		return derive(new Stage<S, T>() {
+			@Override
+			Sink<S> bind(final Sink<T> downstream) {
+				return stage.bind(new Sink<T>() {
+					private long remaining = n;
+
+					@Override
+					boolean accept(T t) {
+						if (remaining <= 0) {
+							return false;
+						}
+						remaining--;
+						return downstream.accept(t) && remaining > 0;
+					}
+
+					@Override
+					long demand() {
+						return Math.min(remaining, downstream.demand());
+					}
+				});
+			}
+		});
+	}
+
+	@Override
+	public <A> Promise<A, F> reduce(final A initial, final Reducer<A, T> reducer) {
+		return consume(new Terminal<T, A>() {
+			private A accumulator = initial;
+
+			@Override
+			boolean accept(T t) {
+				accumulator = reducer.reduce(accumulator, t);
+				return true;
+			}
+
+			@Override
+			A result() {
+				return accumulator;
+			}
+		});
+	}
+
+	@Override
+	public Promise<List<T>, F> collect() {
+		return consume(new Terminal<T, List<T>>() {
+			private final List<T> list = new ArrayList<T>();
+
+			@Override
+			boolean accept(T t) {
+				list.add(t);
+				return true;
+			}
+
+			@Override
+			List<T> result() {
+				return list;
+			}
+		});
+	}
+
+	@Override
+	public Promise<Void, F> forEach(final DoneCallback<T> callback) {
+		return consume(new Terminal<T, Void>() {
+			@Override
+			boolean accept(T t) {
+				callback.onDone(t);
+				return true;
+			}
+
+			@Override
+			Void result() {
+				return null;
+			}
+		});
+	}
+
+	private <A> Promise<A, F> consume(Terminal<T, A> terminal) {
+		if (!consumed.compareAndSet(false, true)) {
+			throw new IllegalStateException("the stream has already been consumed");
+		}
+		final Deferred<A, F> deferred = PromiseAPI.get().deferred();
+		final Driver<A> driver = new Driver<A>(stage.bind(terminal), terminal, deferred);
+		if (deferred instanceof DeferredImpl) {
+			((DeferredImpl<A, F>)deferred).addWaiter(new Waiter<A, F>() {
+				@Override
+				public void onDone(A a) {
+				}
+
+				@Override
+				public void onFail(F f) {
+				}
+
+				@Override
+				void onCancel() {
+					driver.cancel();
+				}
+			});
+		}
+		driver.pull();
+		return deferred.promise();
+	}
+
+	/**
+	 * Pulls batches from the source and pushes their values through the sinks, on the main thread, until the
+	 * stream ends, fails, is truncated or is cancelled.
+	 * <p>
+	 * If a batch is delivered while the driver is still requesting it (for example, because the source answered
+	 * a promise that had already been resolved), it is processed by the loop in <code>pull()</code> rather than
+	 * by a nested call, so the depth of the stack does not grow with the number of batches.
+	 *
+	 * @param <A> The type of the result of the terminal operation.
+	 */
+	private final class Driver<A> implements CompletionCallback<List<S>, F> {
+		private final Sink<S> sink;
+		private final Terminal<T, A> terminal;
+		private final Deferred<A, F> deferred;
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private volatile Promise<List<S>, F> outstanding;
+
+		private boolean pulling = false;
+		private boolean received = false;
+		private List<S> batch;
+		private boolean failed = false;
+		private F failure;
+
+		private Driver(Sink<S> sink, Terminal<T, A> terminal, Deferred<A, F> deferred) {
+			this.sink = sink;
+			this.terminal = terminal;
+			this.deferred = deferred;
+		}
+
+		private void pull() {
+			pulling = true;
+			try {
+				for (;;) {
+					if (deferred.isCancelled()) {
+						return;
+					}
+					final long demand = sink.demand();
+					if (demand <= 0) {
+						finish();
+						return;
+					}
+					received = false;
+					final Promise<List<S>, F> next = source.next((int)Math.min(batchSize, demand));
+					outstanding = next;
+					next.complete(this);
+					if (!received || !receive()) {
+						return;
+					}
+				}
+			} catch (RuntimeException e) {
+				abort();
+				throw e;
+			} finally {
+				pulling = false;
+			}
+		}
+
+		@Override
+		public void onDone(List<S> batch) {
+			this.batch = batch;
+			received = true;
+			if (!pulling && receive()) {
+				pull();
+			}
+		}
+
+		@Override
+		public void onFail(F f) {
+			this.failure = f;
+			this.failed = true;
+			received = true;
+			if (!pulling) {
+				receive();
+			}
+		}
+
+		/**
+		 * Process the batch just received.
+		 * @return true if the next batch should be pulled.
+		 */
+		private boolean receive() {
+			outstanding = null;
+			if (deferred.isCancelled()) {
+				return false;
+			}
+			if (failed) {
+				close();
+				deferred.reject(failure);
+				return false;
+			}
+			final List<S> batch = this.batch;
+			this.batch = null;
+			if (batch == null || batch.isEmpty()) {
+				finish();
+				return false;
+			}
+			try {
+				for (S s : batch) {
+					if (!sink.accept(s)) {
+						finish();
+						return false;
+					}
+					if (deferred.isCancelled()) {
+						return false;
+					}
+				}
+			} catch (RuntimeException e) {
+				abort();
+				throw e;
+			}
+			return true;
+		}
+
+		private void finish() {
+			close();
+			deferred.resolve(terminal.result());
+		}
+
+		/**
+		 * Stop the stream because an operator or the source threw an exception. There is no failure of type F
+		 * to reject the promise of the terminal operation with, so it is cancelled instead, which releases the
+		 * callbacks waiting for it; the exception is then rethrown by the caller.
+		 */
+		private void abort() {
+			close();
+			deferred.promise().cancel();
+		}
+
+		private void cancel() {
+			close();
+			final Promise<List<S>, F> outstanding = this.outstanding;
+			if (outstanding != null) {
+				outstanding.cancel();
+			}
+		}
+
+		private void close() {
+			if (closed.compareAndSet(false, true)) {
+				source.close();
+			}
+		}
+	}
+}
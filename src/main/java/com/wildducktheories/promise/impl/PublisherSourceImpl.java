@@ -0,0 +1,212 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.promise.StreamSource;
+
+/**
+ * A {@link StreamSource} that subscribes to a {@link Publisher}, which backs the {@link com.wildducktheories.promise.PromiseStream}
+ * returned by {@link API#asStream(Publisher)}.
+ * <p>
+ * The publisher is subscribed to when the stream requests its first batch. Each request for a batch of up to
+ * <code>max</code> elements tops up the demand signalled to the publisher so that the elements buffered plus the
+ * elements requested but not yet received never exceed <code>max</code>. A batch is delivered as soon as at least
+ * one element is available, so a slow publisher does not delay the elements it has already published.
+ *
+ * @param <T> The element type.
+ */
+final class PublisherSourceImpl<T> implements StreamSource<T, Throwable>, Subscriber<T> {
+
+	private final Publisher<? extends T> publisher;
+	private final ArrayDeque<T> buffer = new ArrayDeque<T>();
+
+	private boolean subscribed = false;
+	private Subscription subscription;
+
+	/**
+	 * The number of elements requested from the publisher (or to be requested, once it calls <code>onSubscribe()</code>)
+	 * that have not yet been received.
+	 */
+	private long outstanding = 0;
+	private long unsent = 0;
+
+	/**
+	 * The outstanding request of the stream, if it is waiting for elements.
+	 */
+	private Deferred<List<T>, Throwable> waiting;
+	private int waitingMax;
+
+	private boolean ended = false;
+	private boolean closed = false;
+	private Throwable failure;
+
+	PublisherSourceImpl(Publisher<? extends T> publisher) {
+		this.publisher = publisher;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.StreamSource#next(int)
+	 */
+	@Override
+	public Promise<List<T>, Throwable> next(int max) {
+		final Deferred<List<T>, Throwable> deferred = PromiseAPI.get().deferred();
+		final boolean subscribe;
+		final Subscription subscription;
+		long want = 0;
+		synchronized (this) {
+			if (waiting != null) {
+				throw new IllegalStateException("a batch is already outstanding");
+			}
+			subscribe = !subscribed;
+			subscribed = true;
+			subscription = this.subscription;
+			if (!buffer.isEmpty()) {
+				deferred.resolve(drain(max));
+			} else if (failure != null) {
+				deferred.reject(failure);
+			} else if (ended || closed) {
+				deferred.resolve(Collections.<T>emptyList());
+			} else {
+				waiting = deferred;
+				waitingMax = max;
+			}
+			if (failure == null && !ended && !closed) {
+				want = Math.max(0, max - buffer.size() - outstanding);
+				outstanding += want;
+				if (subscription == null) {
+					unsent += want;
+				}
+			}
+		}
+		if (subscribe) {
+			publisher.subscribe(this);
+		} else if (subscription != null && want > 0) {
+			subscription.request(want);
+		}
+		return deferred.promise();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.StreamSource#close()
+	 */
+	@Override
+	public void close() {
+		final Subscription subscription;
+		final Deferred<List<T>, Throwable> abandoned;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			buffer.clear();
+			subscription = ended || failure != null ? null : this.subscription;
+			abandoned = waiting;
+			waiting = null;
+		}
+		if (subscription != null) {
+			subscription.cancel();
+		}
+		if (abandoned != null) {
+			abandoned.promise().cancel();
+		}
+	}
+
+	@Override
+	public void onSubscribe(Subscription s) {
+		if (s == null) {
+			throw new NullPointerException("subscription");
+		}
+		final long n;
+		synchronized (this) {
+			if (this.subscription != null || closed) {
+				n = -1;
+			} else {
+				this.subscription = s;
+				n = unsent;
+				unsent = 0;
+			}
+		}
+		if (n < 0) {
+			s.cancel();
+		} else if (n > 0) {
+			s.request(n);
+		}
+	}
+
+	@Override
+	public void onNext(T t) {
+		if (t == null) {
+			throw new NullPointerException("element");
+		}
+		final Deferred<List<T>, Throwable> ready;
+		final List<T> batch;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			outstanding--;
+			buffer.add(t);
+			if (waiting == null) {
+				return;
+			}
+			ready = waiting;
+			waiting = null;
+			batch = drain(waitingMax);
+		}
+		ready.resolve(batch);
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		if (t == null) {
+			throw new NullPointerException("throwable");
+		}
+		final Deferred<List<T>, Throwable> ready;
+		synchronized (this) {
+			if (closed || ended || failure != null) {
+				return;
+			}
+			failure = t;
+			ready = waiting;
+			waiting = null;
+		}
+		if (ready != null) {
+			ready.reject(t);
+		}
+	}
+
+	@Override
+	public void onComplete() {
+		final Deferred<List<T>, Throwable> ready;
+		synchronized (this) {
+			if (closed || ended || failure != null) {
+				return;
+			}
+			ended = true;
+			ready = waiting;
+			waiting = null;
+		}
+		if (ready != null) {
+			ready.resolve(Collections.<T>emptyList());
+		}
+	}
+
+	private List<T> drain(int max) {
+		final List<T> batch = new ArrayList<T>(Math.min(max, buffer.size()));
+		while (batch.size() < max && !buffer.isEmpty()) {
+			batch.add(buffer.poll());
+		}
+		return batch;
+	}
+}
@@ -0,0 +1,198 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.Promise;
+
+/**
+ * The promise returned by {@link API#race(Collection)} and {@link API#any(Collection)}.
+ * <p>
+ * As with {@link AllImpl}, the receiver waits on each element promise with a {@link Waiter} that is notified 
+ * directly on the resolving thread, so waiting on a promise does not schedule a WAIT tasklet with the 
+ * current {@link com.wildducktheories.tasklet.Scheduler}. Once the receiver is settled or cancelled, the waiters 
+ * on the losing promises are detached: they drop their reference to the receiver and are unlinked from the losing 
+ * promises, so a losing promise that never settles does not accumulate a waiter per race. Losing promises which are 
+ * no longer observed by any other waiter are then cancelled, so that work that is still in progress on their 
+ * behalf is abandoned.
+ * <p>
+ * A cancelled element is treated as one that will never be resolved; if all the elements are cancelled, the receiver
+ * is cancelled too.
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+final class RaceImpl<P, F> extends DeferredImpl<P, F> {
+
+	/**
+	 * Waits on one of the element promises.
+	 */
+	private static final class Element<P, F> extends Waiter<P, F> {
+		private volatile RaceImpl<P, F> race;
+		private final DeferredImpl<P, F> source;
+
+		private Element(RaceImpl<P, F> race, DeferredImpl<P, F> source) {
+			this.race = race;
+			this.source = source;
+		}
+
+		@Override
+		public void onDone(P p) {
+			final RaceImpl<P, F> race = this.race;
+			if (race != null) {
+				race.onDone(p);
+			}
+		}
+
+		@Override
+		public void onFail(F f) {
+			final RaceImpl<P, F> race = this.race;
+			if (race != null) {
+				race.onFail(f);
+			}
+		}
+
+		@Override
+		void onCancel() {
+			final RaceImpl<P, F> race = this.race;
+			if (race != null) {
+				race.onCancel();
+			}
+		}
+
+		@Override
+		boolean isObserving() {
+			return race != null;
+		}
+
+		@Override
+		boolean isDetached() {
+			return race == null;
+		}
+
+		/**
+		 * Stop waiting on behalf of the race and cancel the source promise if nothing else is waiting on it,
+		 * or otherwise unlink the waiter from it.
+		 */
+		private void detach() {
+			race = null;
+			if (source != null) {
+				source.cancelIfUnobserved();
+			}
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<RaceImpl> SETTLED =
+		AtomicIntegerFieldUpdater.newUpdater(RaceImpl.class, "settled");
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<RaceImpl> REMAINING =
+		AtomicIntegerFieldUpdater.newUpdater(RaceImpl.class, "remaining");
+
+	/**
+	 * true if the receiver is settled by the first rejection, false if only by the last.
+	 */
+	private final boolean failFast;
+
+	private Element<P, F>[] elements;
+	private volatile int settled = 0;
+
+	/**
+	 * The number of element promises which have not been rejected.
+	 */
+	private volatile int remaining;
+
+	/**
+	 * @param size The number of element promises.
+	 * @param failFast true for a race, which is rejected by the first rejection; false for an any, which is only
+	 * rejected (with the last rejection) once all the element promises have been rejected.
+	 */
+	@SuppressWarnings("unchecked")
+	RaceImpl(int size, boolean failFast) {
+		if (size == 0) {
+			throw new IllegalArgumentException("illegal argument: at least one promise is required");
+		}
+		this.failFast = failFast;
+		this.elements = new Element[size];
+		this.remaining = size;
+	}
+
+	/**
+	 * Wait on each of the specified promises. Waiting stops early if the receiver is settled while waiters are
+	 * still being registered.
+	 * @param promises The element promises, of which there must be as many as the size of the receiver.
+	 * @return The receiver.
+	 */
+	@SuppressWarnings("unchecked")
+	RaceImpl<P, F> join(Collection<? extends Promise<P, F>> promises) {
+		final Element<P, F>[] elements = this.elements;
+		int index = 0;
+		for (Promise<P, F> promise : promises) {
+			if (settled != 0) {
+				break;
+			}
+			if (promise instanceof DeferredImpl) {
+				final DeferredImpl<P, F> source = (DeferredImpl<P, F>)promise;
+				final Element<P, F> element = new Element<P, F>(this, source);
+				elements[index++] = element;
+				source.addWaiter(element);
+			} else {
+				final Element<P, F> element = new Element<P, F>(this, null);
+				elements[index++] = element;
+				promise.complete(element);
+			}
+		}
+		return this;
+	}
+
+	private void onDone(P p) {
+		if (SETTLED.compareAndSet(this, 0, 1)) {
+			detach();
+			resolve(p);
+		}
+	}
+
+	private void onFail(F f) {
+		if ((failFast || REMAINING.decrementAndGet(this) == 0) && SETTLED.compareAndSet(this, 0, 1)) {
+			detach();
+			reject(f);
+		}
+	}
+
+	private void onCancel() {
+		if (REMAINING.decrementAndGet(this) == 0) {
+			cancel();
+		}
+	}
+
+	@Override
+	public boolean cancel() {
+		if (SETTLED.compareAndSet(this, 0, 1) && super.cancel()) {
+			detach();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Detach the receiver from the waiters registered on the element promises.
+	 * <p>
+	 * Detachment is best effort: a waiter that is still being registered when the receiver is settled keeps its
+	 * reference to the receiver until its own promise is settled, but it will then have no effect.
+	 * <p>
+	 * The winning element is detached too, but since its promise is already settled this has no further effect.
+	 */
+	private void detach() {
+		final Element<P, F>[] elements = this.elements;
+		this.elements = null;
+		if (elements != null) {
+			for (Element<P, F> element : elements) {
+				if (element != null) {
+					element.detach();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.wildducktheories.promise.Call;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+
+/**
+ * A {@link Call} that decorates another {@link Call} (typically an {@link AbstractCallImpl}) with retries and,
+ * optionally, hedged requests. Each attempt is a fresh invocation of the decorated call's <code>call()</code>
+ * method, so an {@link AbstractCallImpl} re-runs its <b>build</b>, <b>send</b> and <b>receive</b> phases.
+ * <p>
+ * If an attempt is rejected with a failure that <code>isRetryable()</code>, another attempt is made after a delay
+ * given by <code>getBackoff()</code> (by default, exponential backoff with full jitter) until
+ * <code>getMaxAttempts()</code> attempts have been made, after which the promise is rejected with the last failure.
+ * <p>
+ * If <code>getHedgePercentile()</code> is overridden to answer a percentile, the receiver records the latency of
+ * successful attempts and, once enough latencies have been recorded, makes a speculative duplicate (or hedged)
+ * attempt if an attempt has not completed within that percentile of the recorded latencies. The first attempt
+ * to succeed wins and the attempts still in progress are cancelled. Hedged attempts count towards the maximum
+ * number of attempts.
+ * <p>
+ * Attempts are started and their outcomes are handled on the main thread of the {@link com.wildducktheories.tasklet.Scheduler}
+ * that is current when <code>call()</code> is invoked. Delays use the shared timer of
+ * {@link com.wildducktheories.promise.API#delay(long, TimeUnit)}. Cancelling the returned promise cancels the
+ * attempts in progress and any pending retry. If the decorated call throws rather than returning a promise, the
+ * returned promise is cancelled and the exception is rethrown: by <code>call()</code> for the first attempt and
+ * on the main thread for a retry or hedged attempt.
+ *
+ * @author jonseymour
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+public class RetryingCallImpl<P, F> implements Call<P, F>
+{
+	/**
+	 * The number of recent latencies from which the hedging threshold is computed.
+	 */
+	private static final int SAMPLES = 128;
+
+	/**
+	 * The number of latencies that must be recorded before attempts are hedged.
+	 */
+	private static final int MIN_SAMPLES = 16;
+
+	/**
+	 * The attempts made on behalf of a single invocation of <code>call()</code>.
+	 */
+	private final class Attempts extends Waiter<P, F> {
+		private final DeferredImpl<P, F> result = APIImpl.newDeferred(PromiseAPI.get());
+		private final List<Promise<P, F>> pending = new ArrayList<Promise<P, F>>();
+		private final List<Promise<Void, RuntimeException>> delays = new ArrayList<Promise<Void, RuntimeException>>();
+		private int attempts = 0;
+
+		/**
+		 * Start an attempt, unless the result is already settled. Called on the main thread. If the call throws,
+		 * the result is cancelled, so that it does not remain pending, and the exception is rethrown.
+		 */
+		private void attempt() {
+			if (result.isCancelled()) {
+				return;
+			}
+			attempts++;
+			final long start = System.nanoTime();
+			final Promise<P, F> promise;
+			try {
+				promise = call.call();
+			} catch (RuntimeException e) {
+				result.cancel();
+				throw e;
+			}
+			synchronized (this) {
+				pending.add(promise);
+			}
+			promise
+				.done(new DoneCallback<P>() {
+					@Override
+					public void onDone(P p) {
+						record(System.nanoTime() - start);
+						remove(promise);
+						if (result.tryResolve(p)) {
+							cancelPending();
+						}
+					}
+				})
+				.fail(new FailCallback<F>() {
+					@Override
+					public void onFail(F f) {
+						failed(promise, f);
+					}
+				});
+			hedge(promise);
+		}
+
+		/**
+		 * Arrange to make a hedged attempt if the specified attempt is still pending once the hedging
+		 * threshold has elapsed.
+		 */
+		private void hedge(final Promise<P, F> promise) {
+			final long threshold = getHedgeThreshold();
+			if (threshold < 0 || attempts >= getMaxAttempts()) {
+				return;
+			}
+			after(threshold, TimeUnit.NANOSECONDS, new Runnable() {
+				@Override
+				public void run() {
+					if (isPending(promise) && attempts < getMaxAttempts()) {
+						attempt();
+					}
+				}
+			});
+		}
+
+		private void failed(Promise<P, F> promise, F f) {
+			final boolean others = remove(promise);
+			if (result.isCancelled() || promise.isCancelled()) {
+				return;
+			}
+			if (!isRetryable(f)) {
+				if (result.tryReject(f)) {
+					cancelPending();
+				}
+			} else if (others) {
+				// a hedged attempt is still in progress.
+				return;
+			} else if (attempts >= getMaxAttempts()) {
+				if (result.tryReject(f)) {
+					cancelPending();
+				}
+			} else {
+				after(getBackoff(attempts), TimeUnit.MILLISECONDS, new Runnable() {
+					@Override
+					public void run() {
+						attempt();
+					}
+				});
+			}
+		}
+
+		/**
+		 * Run an action on the main thread after the specified delay, unless the attempts are cancelled first.
+		 */
+		private void after(long time, TimeUnit unit, final Runnable action) {
+			final Promise<Void, RuntimeException> delay = PromiseAPI.get().delay(time, unit);
+			synchronized (this) {
+				delays.add(delay);
+			}
+			delay.done(new DoneCallback<Void>() {
+				@Override
+				public void onDone(Void p) {
+					synchronized (Attempts.this) {
+						delays.remove(delay);
+					}
+					action.run();
+				}
+			});
+			if (result.isCancelled()) {
+				delay.cancel();
+			}
+		}
+
+		private synchronized boolean isPending(Promise<P, F> promise) {
+			return pending.contains(promise);
+		}
+
+		/**
+		 * Remove an attempt that has completed.
+		 * @return true if other attempts are still in progress.
+		 */
+		private synchronized boolean remove(Promise<P, F> promise) {
+			pending.remove(promise);
+			return !pending.isEmpty();
+		}
+
+		private void cancelPending() {
+			final List<Promise<P, F>> cancelled;
+			final List<Promise<Void, RuntimeException>> delays;
+			synchronized (this) {
+				cancelled = new ArrayList<Promise<P, F>>(pending);
+				pending.clear();
+				delays = new ArrayList<Promise<Void, RuntimeException>>(this.delays);
+				this.delays.clear();
+			}
+			for (Promise<P, F> promise : cancelled) {
+				promise.cancel();
+			}
+			for (Promise<Void, RuntimeException> delay : delays) {
+				delay.cancel();
+			}
+		}
+
+		@Override
+		public void onDone(P p) {
+		}
+
+		@Override
+		public void onFail(F f) {
+		}
+
+		@Override
+		void onCancel() {
+			cancelPending();
+		}
+
+		@Override
+		boolean isObserving() {
+			return false;
+		}
+	}
+
+	private final Call<P, F> call;
+
+	/**
+	 * Recent latencies of successful attempts, in nanoseconds, used as a ring.
+	 */
+	private final long[] latencies = new long[SAMPLES];
+
+	/**
+	 * The index of the next latency in the ring and the number of latencies in the ring.
+	 */
+	private int next = 0;
+	private int recorded = 0;
+
+	/**
+	 * @param call The call to be attempted.
+	 */
+	public RetryingCallImpl(Call<P, F> call) {
+		this.call = call;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wildducktheories.promise.Call#call()
+	 */
+	@Override
+	public final Promise<P, F> call() {
+		final Attempts attempts = new Attempts();
+		attempts.result.addWaiter(attempts);
+		attempts.attempt();
+		return attempts.result;
+	}
+
+	/**
+	 * Answer the maximum number of attempts, including the first attempt and any hedged attempts.
+	 * @return The maximum number of attempts, 3 by default.
+	 */
+	protected int getMaxAttempts() {
+		return 3;
+	}
+
+	/**
+	 * Answer true if a failed attempt should be retried. Failures that are not retryable reject the
+	 * promise immediately.
+	 * @param failure The failure produced by the attempt.
+	 * @return true by default.
+	 */
+	protected boolean isRetryable(F failure) {
+		return true;
+	}
+
+	/**
+	 * Answer the delay before the next attempt. The default implementation uses exponential backoff with
+	 * full jitter: a random delay between zero and <code>getBaseBackoff()</code> * 2^(attempts - 1), capped
+	 * at <code>getMaxBackoff()</code>, so that clients retrying after a common failure do not retry in lockstep.
+	 * @param attempts The number of attempts made so far.
+	 * @return The delay in milliseconds.
+	 */
+	protected long getBackoff(int attempts) {
+		final long ceiling = Math.min(getMaxBackoff(), getBaseBackoff() << Math.min(attempts - 1, 30));
+		return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * @return The backoff ceiling after the first attempt, in milliseconds, 100 by default.
+	 */
+	protected long getBaseBackoff() {
+		return 100;
+	}
+
+	/**
+	 * @return The maximum backoff, in milliseconds, 10000 by default.
+	 */
+	protected long getMaxBackoff() {
+		return 10000;
+	}
+
+	/**
+	 * Answer the percentile of recent successful attempt latencies after which an attempt that is still in
+	 * progress is hedged, for example 0.95.
+	 * @return A percentile between 0 and 1, or a negative number (the default) to disable hedging.
+	 */
+	protected double getHedgePercentile() {
+		return -1;
+	}
+
+	/**
+	 * Record the latency of a successful attempt.
+	 * @param nanos The latency.
+	 */
+	private synchronized void record(long nanos) {
+		latencies[next] = nanos;
+		next = (next + 1) % SAMPLES;
+		if (recorded < SAMPLES) {
+			recorded++;
+		}
+	}
+
+	/**
+	 * @return The hedging threshold in nanoseconds, or -1 if attempts are not to be hedged.
+	 */
+	long getHedgeThreshold() {
+		final double percentile = getHedgePercentile();
+		if (percentile < 0) {
+			return -1;
+		}
+		final long[] sorted;
+		synchronized (this) {
+			if (recorded < MIN_SAMPLES) {
+				return -1;
+			}
+			sorted = Arrays.copyOf(latencies, recorded);
+		}
+		Arrays.sort(sorted);
+		final int index = (int)Math.min(sorted.length - 1, Math.floor(percentile * sorted.length));
+		// not truncated to milliseconds: a backend faster than 1ms must not be hedged immediately.
+		return Math.max(1, sorted[index]);
+	}
+}
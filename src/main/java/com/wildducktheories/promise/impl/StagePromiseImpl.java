@@ -0,0 +1,102 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.Promise;
+
+/**
+ * The promise returned by {@link API#asPromise(CompletionStage)}.
+ * <p>
+ * The receiver is itself the action registered with the {@link CompletionStage}, so bridging a pending
+ * stage allocates nothing but the receiver (and whatever the stage allocates to register an action). The
+ * action only settles the receiver, on whichever thread completes the stage; as for any other promise, callbacks
+ * are then delivered on the synchronous thread of the scheduler that was current when they were registered.
+ * <p>
+ * A stage which completes exceptionally rejects the receiver with the cause of the failure, unwrapped from
+ * any {@link CompletionException}. A cancelled stage cancels the receiver and cancelling the receiver
+ * cancels the stage, if it is a {@link Future}.
+ *
+ * @param <P> The promised type.
+ */
+final class StagePromiseImpl<P> extends DeferredImpl<P, Throwable> implements BiConsumer<P, Throwable> {
+
+	private final Future<?> future;
+
+	private StagePromiseImpl(CompletionStage<P> stage) {
+		this.future = stage instanceof Future ? (Future<?>)stage : null;
+	}
+
+	/**
+	 * Answer a promise for the outcome of the specified stage.
+	 * @param api The API used to obtain promises for stages that have already completed.
+	 * @param stage The stage.
+	 * @return A {@link Promise} that is resolved or rejected when the stage completes.
+	 */
+	@SuppressWarnings("unchecked")
+	static <P> Promise<P, Throwable> bridge(API api, CompletionStage<P> stage) {
+		if (stage instanceof Future && ((Future<?>)stage).isDone()) {
+			return settled(api, (Future<P>)stage);
+		}
+		final StagePromiseImpl<P> promise = new StagePromiseImpl<P>(stage);
+		stage.whenComplete(promise);
+		return promise;
+	}
+
+	/**
+	 * Answer a settled promise for the outcome of a completed future, without registering an action with it.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <P> Promise<P, Throwable> settled(API api, Future<P> future) {
+		try {
+			return api.resolved(future.get(), (Class<P>)null, Throwable.class);
+		} catch (ExecutionException e) {
+			return api.rejected(unwrap(e.getCause()), (Class<P>)null, Throwable.class);
+		} catch (CancellationException e) {
+			final DeferredImpl<P, Throwable> cancelled = APIImpl.newDeferred(api);
+			cancelled.cancel();
+			return cancelled;
+		} catch (InterruptedException e) {
+			// unreachable: get() does not block once the future is done.
+			Thread.currentThread().interrupt();
+			return api.rejected((Throwable)e, (Class<P>)null, Throwable.class);
+		}
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		while (t instanceof CompletionException && t.getCause() != null) {
+			t = t.getCause();
+		}
+		return t;
+	}
+
+	@Override
+	public void accept(P p, Throwable t) {
+		if (t == null) {
+			tryResolve(p);
+		} else {
+			t = unwrap(t);
+			if (t instanceof CancellationException) {
+				cancel();
+			} else {
+				tryReject(t);
+			}
+		}
+	}
+
+	@Override
+	public boolean cancel() {
+		if (!super.cancel()) {
+			return false;
+		}
+		if (future != null) {
+			future.cancel(true);
+		}
+		return true;
+	}
+}
@@ -15,7 +15,8 @@ import com.wildducktheories.tasklet.Tasklet;
  * @param <F> The failure type.
  */
 final class SyncCompletionTasklet<P, F>
-	implements Tasklet, DoneCallback<P>, FailCallback<F>
+	extends Waiter<P, F>
+	implements Tasklet
 {
 	private final Rescheduler rescheduler;
 	private final DoneCallback<P> doneCallback;
@@ -29,30 +30,61 @@ final class SyncCompletionTasklet<P, F>
 		this.failCallback = failCallback;
 	}
 
-	private P result;
-	private F failure;
+	/**
+	 * The result or failure, as indicated by isFailure.
+	 */
+	private Object outcome;
 	private boolean isFailure = false;
+	private boolean isCancelled = false;
 	
 	public void onDone(P p) {
 		isFailure = false;
-		result = p;
+		outcome = p;
 		rescheduler.resume(Directive.SYNC);
 	}
 	
 	public void onFail(F f) {
 		isFailure = true;
-		failure = f;
+		outcome = f;
 		rescheduler.resume(Directive.SYNC);
 	}
 	
+	/**
+	 * Release the scheduler from waiting for this tasklet without calling either callback, other than to
+	 * pass the cancellation on to a callback that is itself a {@link Waiter}.
+	 */
+	@Override
+	void onCancel() {
+		isCancelled = true;
+		rescheduler.resume(Directive.SYNC);
+	}
+	
+	@Override
+	boolean isObserving() {
+		if (doneCallback instanceof Waiter) {
+			return ((Waiter<?, ?>)doneCallback).isObserving();
+		} else if (failCallback instanceof Waiter) {
+			return ((Waiter<?, ?>)failCallback).isObserving();
+		} else {
+			return true;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
 	public Directive task() {
-		if (isFailure) {
+		if (isCancelled) {
+			if (doneCallback instanceof Waiter) {
+				((Waiter<?, ?>)doneCallback).onCancel();
+			} else if (failCallback instanceof Waiter) {
+				((Waiter<?, ?>)failCallback).onCancel();
+			}
+		} else if (isFailure) {
 			if (failCallback != null) {
-				failCallback.onFail(failure);
+				failCallback.onFail((F)outcome);
 			}
 		} else {
 			if (doneCallback != null) {
-				doneCallback.onDone(result);
+				doneCallback.onDone((P)outcome);
 			}
 		}
 		return Directive.DONE;
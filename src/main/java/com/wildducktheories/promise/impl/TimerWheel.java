@@ -0,0 +1,244 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A hashed timer wheel that runs short {@link Runnable} tasks after a delay.
+ * <p>
+ * Deadlines are hashed into a fixed ring of buckets, each covering one tick. A single daemon thread advances
+ * the wheel one bucket per tick and runs the tasks in that bucket whose deadline has been reached. Scheduling and
+ * cancelling a task only enqueue it on a lock-free queue which the timer thread drains on its next tick, so both
+ * are O(1) and neither takes a lock, and no thread or executor task is consumed per scheduled task. In exchange,
+ * tasks run up to one tick late.
+ * <p>
+ * Tasks are run on the timer thread and so must not block. The tasks used by this package only resolve,
+ * reject or cancel promises, which hop onto the scheduler of each registered callback for delivery.
+ *
+ * @author jonseymour
+ */
+final class TimerWheel {
+
+	/**
+	 * The shared wheel used by all the {@link com.wildducktheories.promise.API} instances of this class loader.
+	 */
+	private static final class Shared {
+		private static final TimerWheel WHEEL = new TimerWheel(10, TimeUnit.MILLISECONDS, 512);
+	}
+
+	private static final int PENDING = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	/**
+	 * A task scheduled with the wheel.
+	 */
+	static final class Timeout {
+
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final TimerWheel wheel;
+		private final Runnable task;
+		private final long deadline;
+
+		private volatile int state = PENDING;
+
+		/*
+		 * The remaining fields are only accessed by the timer thread.
+		 */
+		private long rounds;
+		private Bucket bucket;
+		private Timeout prev;
+		private Timeout next;
+
+		private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+			this.wheel = wheel;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancel the task, if it has not already been run.
+		 * @return true if the task was cancelled by this call.
+		 */
+		boolean cancel() {
+			if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+				return false;
+			}
+			wheel.cancelled.add(this);
+			return true;
+		}
+
+		private void expire() {
+			if (STATE.compareAndSet(this, PENDING, EXPIRED)) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// a failing task must not stop the wheel.
+				}
+			}
+		}
+	}
+
+	/**
+	 * A doubly linked list of the tasks that hash to the same tick.
+	 */
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		private Timeout remove(Timeout timeout) {
+			final Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			} else {
+				head = next;
+			}
+			if (next != null) {
+				next.prev = timeout.prev;
+			} else {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		private void expire(long now) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				if (timeout.rounds <= 0 && timeout.deadline <= now) {
+					final Timeout next = remove(timeout);
+					timeout.expire();
+					timeout = next;
+				} else if (timeout.state == CANCELLED) {
+					timeout = remove(timeout);
+				} else {
+					timeout.rounds--;
+					timeout = timeout.next;
+				}
+			}
+		}
+	}
+
+	private final long tickNanos;
+	private final Bucket[] buckets;
+	private final int mask;
+	private final Queue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+	private final long start = System.nanoTime();
+	private final Thread thread;
+
+	/**
+	 * Answer the wheel shared by all the promises of this class loader. The timer thread is started
+	 * when the wheel is first used.
+	 * @return The shared wheel.
+	 */
+	static TimerWheel shared() {
+		return Shared.WHEEL;
+	}
+
+	/**
+	 * @param tick The duration of a tick.
+	 * @param unit The unit of the tick.
+	 * @param size The number of buckets in the wheel, rounded up to a power of two.
+	 */
+	TimerWheel(long tick, TimeUnit unit, int size) {
+		int length = 1;
+		while (length < size) {
+			length <<= 1;
+		}
+		this.tickNanos = unit.toNanos(tick);
+		this.buckets = new Bucket[length];
+		this.mask = length - 1;
+		for (int i = 0; i < length; i++) {
+			buckets[i] = new Bucket();
+		}
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				TimerWheel.this.run();
+			}
+		}, "promise-timer-" + THREADS.incrementAndGet());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Schedule a task to be run on the timer thread once the specified delay has elapsed.
+	 * @param task The task.
+	 * @param delay The delay.
+	 * @param unit The unit of the delay.
+	 * @return A {@link Timeout} which can be used to cancel the task.
+	 */
+	Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		final long nanos = Math.max(0, unit.toNanos(delay));
+		final long now = System.nanoTime() - start;
+		final long deadline = now + nanos < now ? Long.MAX_VALUE : now + nanos;
+		final Timeout timeout = new Timeout(this, task, deadline);
+		added.add(timeout);
+		return timeout;
+	}
+
+	private void run() {
+		long tick = 0;
+		for (;;) {
+			final long now = awaitTick(tick + 1);
+			Timeout timeout;
+			while ((timeout = cancelled.poll()) != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+			while ((timeout = added.poll()) != null) {
+				if (timeout.state != PENDING) {
+					continue;
+				}
+				final long due = timeout.deadline / tickNanos;
+				timeout.rounds = (due - tick) / buckets.length;
+				buckets[(int)(Math.max(due, tick) & mask)].add(timeout);
+			}
+			buckets[(int)(tick & mask)].expire(now);
+			tick++;
+		}
+	}
+
+	/**
+	 * Sleep until the start of the specified tick.
+	 * @param tick The tick.
+	 * @return The time, relative to the start of the wheel.
+	 */
+	private long awaitTick(long tick) {
+		final long deadline = tick * tickNanos;
+		for (;;) {
+			final long now = System.nanoTime() - start;
+			final long sleep = deadline - now;
+			if (sleep <= 0) {
+				return now;
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(sleep);
+			} catch (InterruptedException e) {
+				// the timer thread is never interrupted deliberately.
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.wildducktheories.promise.impl;
+
+import com.wildducktheories.promise.CompletionCallback;
+
+/**
+ * A callback waiting on a pending {@link DeferredImpl}. Waiters are linked into a stack through their 
+ * own <code>next</code> field so that no list nodes are allocated to hold them.
+ * <p>
+ * Waiters are notified on whichever thread resolves or rejects the {@link DeferredImpl}. Subclasses 
+ * such as {@link SyncCompletionTasklet} are responsible for moving the notification to the appropriate thread.
+ *
+ * @param <P> The promised type.
+ * @param <F> The failure type.
+ */
+abstract class Waiter<P, F> implements CompletionCallback<P, F> {
+
+	/**
+	 * The next waiter in the stack of waiters on the same {@link DeferredImpl}.
+	 */
+	Waiter<P, F> next;
+
+	/**
+	 * Called instead of <code>onDone()</code> or <code>onFail()</code> if the {@link DeferredImpl} is cancelled.
+	 */
+	void onCancel() {
+	}
+
+	/**
+	 * @return true if the waiter still needs the outcome of the {@link DeferredImpl}. The {@link DeferredImpl}
+	 * is only cancelled on behalf of a cancelled downstream promise if none of its waiters needs its outcome.
+	 */
+	boolean isObserving() {
+		return true;
+	}
+
+	/**
+	 * @return true if the waiter will ignore any notification from now on, so that it can be unlinked from
+	 * the stack of a {@link DeferredImpl} that is still pending.
+	 */
+	boolean isDetached() {
+		return false;
+	}
+}
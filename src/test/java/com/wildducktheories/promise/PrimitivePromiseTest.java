@@ -0,0 +1,248 @@
+package com.wildducktheories.promise;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrimitivePromiseTest {
+
+	@After
+	public void tearDown() {
+		PromiseAPI.get().reset();
+	}
+
+	/**
+	 * Test that then() transforms an int before and after resolution.
+	 */
+	@Test
+	public void testIntThen() {
+		final int[] results = new int[] { 0, 0 };
+		final IntFilter increment = new IntFilter() {
+			@Override
+			public int filter(int p) {
+				return p + 1;
+			}
+		};
+		final IntDeferred<Exception> before = PromiseAPI.get().intDeferred();
+		before
+			.promise()
+			.then(increment)
+			.then(increment)
+			.done(new IntDoneCallback() {
+				@Override
+				public void onDone(int p) {
+					results[0] = p;
+				}
+			});
+		before.resolve(40);
+
+		final IntDeferred<Exception> after = PromiseAPI.get().intDeferred();
+		after.resolve(1);
+		after
+			.promise()
+			.then(increment)
+			.done(new IntDoneCallback() {
+				@Override
+				public void onDone(int p) {
+					results[1] = p;
+				}
+			});
+
+		Assert.assertEquals("before resolution", 42, results[0]);
+		Assert.assertEquals("after resolution", 2, results[1]);
+	}
+
+	/**
+	 * Test that a rejection skips filters and done callbacks.
+	 */
+	@Test
+	public void testLongRejection() {
+		final Exception rejection = new Exception();
+		final Exception[] failures = new Exception[] { null };
+		final boolean[] flags = new boolean[] { false, false };
+		final LongDeferred<Exception> deferred = PromiseAPI.get().longDeferred();
+		deferred
+			.promise()
+			.then(new LongFilter() {
+				@Override
+				public long filter(long p) {
+					flags[0] = true;
+					return p;
+				}
+			})
+			.done(new LongDoneCallback() {
+				@Override
+				public void onDone(long p) {
+					flags[1] = true;
+				}
+			})
+			.fail(new FailCallback<Exception>() {
+				@Override
+				public void onFail(Exception f) {
+					failures[0] = f;
+				}
+			});
+		deferred.reject(rejection);
+		Assert.assertFalse("filter not called", flags[0]);
+		Assert.assertFalse("done not called", flags[1]);
+		Assert.assertSame("fail called", rejection, failures[0]);
+		try {
+			deferred.resolve(1L);
+			Assert.fail("Expected an exception");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	/**
+	 * Test that values survive the round trip through a generic promise unchanged.
+	 */
+	@Test
+	public void testBoxedRoundTrip() {
+		final double[] doubles = new double[] { 0.0 };
+		final long[] longs = new long[] { 0 };
+		final API api = PromiseAPI.get();
+
+		api
+			.asDoublePromise(api.resolved(-0.0d, Double.class, Exception.class))
+			.boxed()
+			.done(new DoneCallback<Double>() {
+				@Override
+				public void onDone(Double p) {
+					doubles[0] = 1.0 / p;
+				}
+			});
+
+		final LongDeferred<Exception> deferred = api.longDeferred();
+		api
+			.asLongPromise(deferred.promise().boxed())
+			.done(new LongDoneCallback() {
+				@Override
+				public void onDone(long p) {
+					longs[0] = p;
+				}
+			});
+		deferred.resolve(Long.MIN_VALUE);
+
+		Assert.assertEquals("negative zero preserved", Double.NEGATIVE_INFINITY, doubles[0], 0.0);
+		Assert.assertEquals("long preserved", Long.MIN_VALUE, longs[0]);
+	}
+
+	/**
+	 * Test that int promises are delivered on the synchronous thread when resolved asynchronously.
+	 */
+	@Test
+	public void testIntResolvedAsynchronously() {
+		final Thread[] threads = new Thread[] { null };
+		final int[] results = new int[] { 0 };
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				final IntDeferred<Exception> deferred = api.intDeferred();
+				deferred
+					.promise()
+					.done(new IntDoneCallback() {
+						@Override
+						public void onDone(int p) {
+							results[0] = p;
+							threads[0] = Thread.currentThread();
+						}
+					});
+				api.when(new Runnable() {
+					public void run() {
+						deferred.resolve(7);
+					}
+				});
+			}
+		});
+		Assert.assertEquals("resolved", 7, results[0]);
+		Assert.assertSame("delivered on current thread", Thread.currentThread(), threads[0]);
+	}
+
+	/**
+	 * Test that a null resolution of a generic promise rejects the unboxed promise rather than leaving it pending.
+	 */
+	@Test
+	public void testUnboxNull() {
+		final List<String> rejected = new ArrayList<String>();
+		final API api = PromiseAPI.get();
+		final Deferred<Integer, Exception> ints = api.deferred();
+		final Deferred<Long, Exception> longs = api.deferred();
+		final Deferred<Double, Exception> doubles = api.deferred();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api.asIntPromise(ints.promise()).fail(new FailCallback<Exception>() {
+					@Override
+					public void onFail(Exception f) {
+						rejected.add("int " + f);
+					}
+				});
+				api.asLongPromise(longs.promise()).fail(new FailCallback<Exception>() {
+					@Override
+					public void onFail(Exception f) {
+						rejected.add("long " + f);
+					}
+				});
+				api.asDoublePromise(doubles.promise()).fail(new FailCallback<Exception>() {
+					@Override
+					public void onFail(Exception f) {
+						rejected.add("double " + f);
+					}
+				});
+				ints.resolve(null);
+				longs.resolve(null);
+				doubles.resolve(null);
+			}
+		});
+		Assert.assertEquals("rejected", Arrays.asList("int null", "long null", "double null"), rejected);
+	}
+
+	/**
+	 * Test that callbacks registered while other threads resolve promises are each delivered exactly once.
+	 */
+	@Test
+	public void testConcurrentRegistration() throws InterruptedException {
+		final int count = 2000;
+		final AtomicInteger delivered = new AtomicInteger();
+		final API api = PromiseAPI.get();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			api.run(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < count; i++) {
+						final IntDeferred<Exception> deferred = api.intDeferred();
+						final int value = i;
+						executor.execute(new Runnable() {
+							@Override
+							public void run() {
+								deferred.resolve(value);
+							}
+						});
+						for (int j = 0; j < 3; j++) {
+							deferred.promise().done(new IntDoneCallback() {
+								@Override
+								public void onDone(int p) {
+									if (p == value) {
+										delivered.incrementAndGet();
+									}
+								}
+							});
+						}
+					}
+				}
+			});
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals("delivered", 3 * count, delivered.get());
+	}
+}
@@ -1,11 +1,26 @@
 package com.wildducktheories.promise;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.wildducktheories.promise.impl.APIImpl;
+import com.wildducktheories.promise.impl.LatencyRecorder;
 import com.wildducktheories.tasklet.Scheduler;
 import com.wildducktheories.tasklet.SchedulerAPI;
 import com.wildducktheories.tasklet.SchedulerNotRunningException;
@@ -762,4 +777,1223 @@ public class PromiseAPITest {
 			Assert.assertSame("fail receives then failure", failure, exceptions[0]); 
 	}
 	
-}
\ No newline at end of file
+	/**
+	 * Test that when many threads race to register callbacks and resolve the same deferred, exactly one
+	 * resolution succeeds and every callback is delivered exactly once on the synchronous thread.
+	 */
+	@Test
+	public void testConcurrentResolutionAndRegistration() {
+		final int n = 16;
+		final AtomicInteger resolutions = new AtomicInteger();
+		final AtomicInteger illegalStates = new AtomicInteger();
+		final AtomicInteger callbacks = new AtomicInteger();
+		final Thread[] threads = new Thread[] { null };
+		final API api = PromiseAPI.get();
+
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				threads[0] = Thread.currentThread();
+				final Deferred<Integer, Exception> deferred = api.deferred();
+				for (int i = 0; i < n; i++) {
+					final int value = i;
+					api.when(new Runnable() {
+						public void run() {
+							deferred
+								.promise()
+								.done(new DoneCallback<Integer>() {
+									@Override
+									public void onDone(Integer p) {
+										Assert.assertSame("delivered on sync thread", threads[0], Thread.currentThread());
+										callbacks.incrementAndGet();
+									}
+								});
+							try {
+								deferred.resolve(value);
+								resolutions.incrementAndGet();
+							} catch (IllegalStateException e) {
+								illegalStates.incrementAndGet();
+							}
+						}
+					});
+				}
+			}});
+		Assert.assertEquals("one resolution", 1, resolutions.get());
+		Assert.assertEquals("other resolutions fail", n-1, illegalStates.get());
+		Assert.assertEquals("every callback delivered", n, callbacks.get());
+	}
+
+	/**
+	 * Test that promises resolved or rejected with common constants are shared and still deliver the
+	 * resolution or rejection.
+	 */
+	@Test
+	public void testConstantPromisesAreShared() {
+		final API api = PromiseAPI.get();
+		final Object[] results = new Object[] { Boolean.FALSE, null };
+
+		Assert.assertSame("null resolution", api.resolved(null, Void.class, Exception.class), api.resolved(null, Void.class, Exception.class));
+		Assert.assertSame("true resolution", api.resolved(true, Boolean.class, Exception.class), api.resolved(true, Boolean.class, Exception.class));
+		Assert.assertSame("small integer resolution", api.resolved(7, Integer.class, Exception.class), api.resolved(7, Integer.class, Exception.class));
+		Assert.assertSame("true rejection", api.rejected(true, Void.class, Boolean.class), api.rejected(true, Void.class, Boolean.class));
+		Assert.assertNotSame("other resolutions", api.resolved(new Object(), Object.class, Exception.class), api.resolved(new Object(), Object.class, Exception.class));
+
+		api.resolved(null, Void.class, Exception.class)
+			.done(new DoneCallback<Void>() {
+				@Override
+				public void onDone(Void p) {
+					results[0] = p;
+				}
+			});
+		api.rejected(false, Void.class, Boolean.class)
+			.fail(new FailCallback<Boolean>() {
+				@Override
+				public void onFail(Boolean f) {
+					results[1] = f;
+				}
+			});
+		Assert.assertNull("done called", results[0]);
+		Assert.assertSame("fail called", Boolean.FALSE, results[1]);
+
+		try {
+			((Deferred<Void, Exception>)api.resolved(null, Void.class, Exception.class)).resolve(null);
+			Assert.fail("Expected an exception");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	/**
+	 * Test that all() delivers the resolutions of asynchronously resolved promises in order, on the 
+	 * synchronous thread.
+	 */
+	@Test
+	public void testAllResolved() {
+		final int n = 50;
+		final List<Integer> results = new ArrayList<Integer>();
+		final Thread[] threads = new Thread[] { null };
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				final List<Promise<Integer, Exception>> promises = new ArrayList<Promise<Integer, Exception>>();
+				for (int i = 0; i < n; i++) {
+					final int value = i;
+					promises.add(api.when(new Callable<Integer>() {
+						public Integer call() {
+							return value;
+						}
+					}));
+				}
+				promises.add(api.resolved(n, Integer.class, Exception.class));
+				api
+					.all(promises)
+					.done(new DoneCallback<List<Integer>>() {
+						@Override
+						public void onDone(List<Integer> p) {
+							results.addAll(p);
+							threads[0] = Thread.currentThread();
+						}
+					});
+			}});
+		Assert.assertEquals("all resolved", n+1, results.size());
+		for (int i = 0; i <= n; i++) {
+			Assert.assertEquals("in order", i, (int)results.get(i));
+		}
+		Assert.assertSame("delivered on current thread", Thread.currentThread(), threads[0]);
+	}
+
+	/**
+	 * Test that all() is rejected by the first rejection, without waiting for pending promises.
+	 */
+	@Test
+	public void testAllRejected() {
+		final Exception rejection = new Exception();
+		final Exception[] failures = new Exception[] { null };
+		final boolean[] flags = new boolean[] { false };
+		final Deferred<Integer, Exception> pending = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> rejected = PromiseAPI.get().deferred();
+
+		PromiseAPI
+			.get()
+			.all(pending.promise(), rejected.promise())
+			.done(new DoneCallback<List<Integer>>() {
+				@Override
+				public void onDone(List<Integer> p) {
+					flags[0] = true;
+				}
+			})
+			.fail(new FailCallback<Exception>() {
+				@Override
+				public void onFail(Exception f) {
+					failures[0] = f;
+				}
+			});
+		rejected.reject(rejection);
+		Assert.assertSame("fail called", rejection, failures[0]);
+		pending.resolve(1);
+		Assert.assertFalse("done not called", flags[0]);
+	}
+
+	/**
+	 * Test that all() of no promises is resolved with an empty list.
+	 */
+	@Test
+	public void testAllEmpty() {
+		final Object[] results = new Object[] { null };
+		PromiseAPI
+			.get()
+			.all(Collections.<Promise<Integer, Exception>>emptyList())
+			.done(new DoneCallback<List<Integer>>() {
+				@Override
+				public void onDone(List<Integer> p) {
+					results[0] = p;
+				}
+			});
+		Assert.assertEquals("empty list", Collections.emptyList(), results[0]);
+	}
+
+	/**
+	 * Test that race() settles with the first outcome and ignores later ones.
+	 */
+	@Test
+	public void testRace() {
+		final Exception rejection = new Exception();
+		final Object[] results = new Object[] { null, null };
+		final Deferred<Integer, Exception> first = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> second = PromiseAPI.get().deferred();
+
+		PromiseAPI
+			.get()
+			.race(first.promise(), second.promise())
+			.done(new DoneCallback<Integer>() {
+				@Override
+				public void onDone(Integer p) {
+					results[0] = p;
+				}
+			})
+			.fail(new FailCallback<Exception>() {
+				@Override
+				public void onFail(Exception f) {
+					results[1] = f;
+				}
+			});
+		second.reject(rejection);
+		first.resolve(1);
+		Assert.assertNull("done not called", results[0]);
+		Assert.assertSame("fail called", rejection, results[1]);
+	}
+
+	/**
+	 * Test that race() cancels a losing promise that nothing else observes, but not one that is observed.
+	 */
+	@Test
+	public void testRaceCancelsUnobservedLosers() {
+		final Deferred<Integer, Exception> winner = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> unobserved = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> observed = PromiseAPI.get().deferred();
+		observed.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+			}
+		});
+		PromiseAPI.get().race(winner.promise(), unobserved.promise(), observed.promise());
+		winner.resolve(1);
+		Assert.assertTrue("unobserved cancelled", unobserved.isCancelled());
+		Assert.assertFalse("observed not cancelled", observed.isCancelled());
+	}
+
+	/**
+	 * Test that any() skips rejections until one promise is resolved.
+	 */
+	@Test
+	public void testAnyResolved() {
+		final Integer[] results = new Integer[] { null };
+		final Deferred<Integer, Exception> first = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> second = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> third = PromiseAPI.get().deferred();
+
+		PromiseAPI
+			.get()
+			.any(first.promise(), second.promise(), third.promise())
+			.done(new DoneCallback<Integer>() {
+				@Override
+				public void onDone(Integer p) {
+					results[0] = p;
+				}
+			});
+		first.reject(new Exception());
+		Assert.assertNull("done not called", results[0]);
+		third.resolve(3);
+		second.resolve(2);
+		Assert.assertEquals("done called", 3, (int)results[0]);
+	}
+
+	/**
+	 * Test that any() is rejected with the last rejection when all promises are rejected.
+	 */
+	@Test
+	public void testAnyRejected() {
+		final Exception rejection = new Exception();
+		final Exception[] failures = new Exception[] { null };
+		final Deferred<Integer, Exception> first = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> second = PromiseAPI.get().deferred();
+
+		PromiseAPI
+			.get()
+			.any(first.promise(), second.promise())
+			.fail(new FailCallback<Exception>() {
+				@Override
+				public void onFail(Exception f) {
+					failures[0] = f;
+				}
+			});
+		second.reject(new Exception());
+		Assert.assertNull("fail not called", failures[0]);
+		first.reject(rejection);
+		Assert.assertSame("fail called", rejection, failures[0]);
+	}
+
+	/**
+	 * Test that a race between asynchronous promises completes without waiting for the losers.
+	 */
+	@Test
+	public void testRaceDoesNotWaitForLosers() {
+		final Integer[] results = new Integer[] { null };
+		final Deferred<Integer, Exception> never = PromiseAPI.get().deferred();
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api
+					.race(never.promise(), api.when(new Callable<Integer>() {
+						public Integer call() {
+							return 1;
+						}
+					}))
+					.done(new DoneCallback<Integer>() {
+						@Override
+						public void onDone(Integer p) {
+							results[0] = p;
+						}
+					});
+			}});
+		Assert.assertEquals("done called", 1, (int)results[0]);
+	}
+
+	/**
+	 * Test that race() requires at least one promise.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testRaceEmpty() {
+		PromiseAPI.get().race(Collections.<Promise<Integer, Exception>>emptyList());
+	}
+
+	/**
+	 * Test that cancelling a pending promise discards its callbacks and a subsequent resolution.
+	 */
+	@Test
+	public void testCancel() {
+		final Integer[] results = new Integer[] { null };
+		final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				deferred.promise().done(new DoneCallback<Integer>() {
+					@Override
+					public void onDone(Integer p) {
+						results[0] = p;
+					}
+				});
+				Assert.assertTrue("cancelled", deferred.promise().cancel());
+				Assert.assertFalse("cancelled once", deferred.promise().cancel());
+			}
+		});
+		Assert.assertTrue("isCancelled", deferred.isCancelled());
+		deferred.resolve(1);
+		Assert.assertNull("done not called", results[0]);
+	}
+
+	/**
+	 * Test that a settled promise cannot be cancelled.
+	 */
+	@Test
+	public void testCancelSettled() {
+		final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+		deferred.resolve(1);
+		Assert.assertFalse("not cancelled", deferred.promise().cancel());
+		Assert.assertFalse("isCancelled", deferred.promise().isCancelled());
+	}
+
+	/**
+	 * Test that cancelling a derived promise cancels its upstream only when nothing else observes the upstream.
+	 */
+	@Test
+	public void testCancelPropagatesUpstream() {
+		final Deferred<Integer, Exception> observed = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> unobserved = PromiseAPI.get().deferred();
+		final Filter<Integer, Integer> identity = new Filter<Integer, Integer>() {
+			@Override
+			public Integer filter(Integer p) {
+				return p;
+			}
+		};
+
+		observed.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+			}
+		});
+		observed.promise().then(identity).cancel();
+		unobserved.promise().then(identity).cancel();
+
+		Assert.assertFalse("observed", observed.isCancelled());
+		Assert.assertTrue("unobserved", unobserved.isCancelled());
+	}
+
+	/**
+	 * Test that a chain of then() stages is applied in order and that a callback registered with an intermediate
+	 * promise before the next stage is still notified first.
+	 */
+	@Test
+	public void testThenChain() {
+		final List<String> events = new ArrayList<String>();
+		final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+		final Filter<Integer, Integer> increment = new Filter<Integer, Integer>() {
+			@Override
+			public Integer filter(Integer p) {
+				events.add("filter " + p);
+				return p + 1;
+			}
+		};
+		final Promise<Integer, Exception> intermediate = deferred.promise().then(increment).then(increment);
+		intermediate.done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				events.add("intermediate " + p);
+			}
+		});
+		intermediate.then(increment).then(increment).done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				events.add("done " + p);
+			}
+		});
+		deferred.resolve(0);
+		Assert.assertEquals(Arrays.asList("filter 0", "filter 1", "intermediate 2", "filter 2", "filter 3", "done 4"), events);
+	}
+
+	/**
+	 * Test that a fused then() stage whose filter throws does not prevent the delivery of the outcome to the
+	 * other callbacks registered with the same promise, and that the exception still reaches the caller.
+	 */
+	@Test
+	public void testFusedThenFilterThrows() {
+		final IllegalStateException failure = new IllegalStateException();
+		final Integer[] results = new Integer[] { null };
+		final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+		final Promise<Integer, Exception> intermediate = deferred.promise().then(new Filter<Integer, Integer>() {
+			@Override
+			public Integer filter(Integer p) {
+				return p;
+			}
+		});
+		intermediate.then(new Filter<Integer, Integer>() {
+			@Override
+			public Integer filter(Integer p) {
+				throw failure;
+			}
+		});
+		intermediate.done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				results[0] = p;
+			}
+		});
+		try {
+			deferred.resolve(1);
+			Assert.fail("exception not rethrown");
+		} catch (IllegalStateException e) {
+			Assert.assertSame("rethrown", failure, e);
+		}
+		Assert.assertEquals("other callback notified", 1, (int)results[0]);
+	}
+
+	/**
+	 * A recursive loop over pages, each of which is obtained with thenPromise().
+	 */
+	private static Promise<Integer, Exception> walk(final List<Deferred<Integer, Exception>> pages, final int n) {
+		final Deferred<Integer, Exception> page = PromiseAPI.get().deferred();
+		pages.add(page);
+		return page.promise().thenPromise(new Filter<Integer, Promise<Integer, Exception>>() {
+			@Override
+			public Promise<Integer, Exception> filter(Integer p) {
+				return p == n ? PromiseAPI.get().resolved(p, Integer.class, Exception.class) : walk(pages, n);
+			}
+		});
+	}
+
+	/**
+	 * Test that an Error thrown by a queued delivery does not leave the deliveries queued after it undelivered.
+	 */
+	@Test
+	public void testDeliveryContinuesAfterError() {
+		final Error failure = new Error();
+		final List<String> delivered = new ArrayList<String>();
+		final Deferred<Integer, Exception> first = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> second = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> third = PromiseAPI.get().deferred();
+		second.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				throw failure;
+			}
+		});
+		third.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				delivered.add("third");
+			}
+		});
+		first.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				second.resolve(p);
+				third.resolve(p);
+				delivered.add("first");
+			}
+		});
+		Error thrown = null;
+		try {
+			first.resolve(1);
+		} catch (Error e) {
+			thrown = e;
+		}
+		Assert.assertSame("rethrown", failure, thrown);
+		Assert.assertEquals("delivered", Arrays.asList("first", "third"), delivered);
+	}
+
+	/**
+	 * Test that an exception thrown by a queued delivery does not hide the exception thrown by the callback
+	 * that queued it.
+	 */
+	@Test
+	public void testDeliveryFailureSuppressed() {
+		final RuntimeException outer = new IllegalStateException();
+		final RuntimeException inner = new IllegalArgumentException();
+		final Deferred<Integer, Exception> first = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> second = PromiseAPI.get().deferred();
+		second.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				throw inner;
+			}
+		});
+		first.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				second.resolve(p);
+				throw outer;
+			}
+		});
+		RuntimeException thrown = null;
+		try {
+			first.resolve(1);
+		} catch (RuntimeException e) {
+			thrown = e;
+		}
+		Assert.assertSame("original", outer, thrown);
+		Assert.assertEquals("suppressed", Arrays.asList(inner), Arrays.asList(thrown.getSuppressed()));
+	}
+
+	/**
+	 * Test that a long recursive thenPromise() loop over settled pages does not overflow the stack.
+	 */
+	@Test
+	public void testDeepThenPromiseLoopOverSettledPages() {
+		final int n = 100000;
+		final Integer[] result = new Integer[] { null };
+		final List<Deferred<Integer, Exception>> pages = new ArrayList<Deferred<Integer, Exception>>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean add(Deferred<Integer, Exception> page) {
+				page.resolve(size());
+				return super.add(page);
+			}
+		};
+		walk(pages, n).done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				result[0] = p;
+			}
+		});
+		Assert.assertEquals("pages", n + 1, pages.size());
+		Assert.assertEquals("result", n, (int)result[0]);
+	}
+
+	/**
+	 * Test that the resolution of a long recursive thenPromise() loop over pending pages does not overflow the
+	 * stack as it unwinds.
+	 */
+	@Test
+	public void testDeepThenPromiseLoopOverPendingPages() {
+		final int n = 100000;
+		final Integer[] result = new Integer[] { null };
+		final List<Deferred<Integer, Exception>> pages = new ArrayList<Deferred<Integer, Exception>>();
+		walk(pages, n).done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+				result[0] = p;
+			}
+		});
+		for (int i = 0; i <= n; i++) {
+			pages.get(i).resolve(i);
+		}
+		Assert.assertEquals("result", n, (int)result[0]);
+	}
+
+	/**
+	 * Test that cancelling the end of a chain of then() stages cancels the whole chain, and vice versa.
+	 */
+	@Test
+	public void testCancelThenChain() {
+		final Filter<Integer, Integer> identity = new Filter<Integer, Integer>() {
+			@Override
+			public Integer filter(Integer p) {
+				return p;
+			}
+		};
+		final Deferred<Integer, Exception> upstream = PromiseAPI.get().deferred();
+		upstream.promise().then(identity).then(identity).then(identity).cancel();
+		Assert.assertTrue("upstream cancelled", upstream.isCancelled());
+
+		final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+		final Promise<Integer, Exception> downstream = deferred.promise().then(identity).then(identity).then(identity);
+		deferred.promise().cancel();
+		Assert.assertTrue("downstream cancelled", downstream.isCancelled());
+	}
+
+	/**
+	 * Test that cancelling a promise cancels the promises derived from it.
+	 */
+	@Test
+	public void testCancelPropagatesDownstream() {
+		final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+		final Promise<Integer, Exception> derived = deferred.promise().then(new Filter<Integer, Integer>() {
+			@Override
+			public Integer filter(Integer p) {
+				return p;
+			}
+		});
+		deferred.promise().cancel();
+		Assert.assertTrue("derived cancelled", derived.isCancelled());
+	}
+
+	/**
+	 * Test that cancelling the promise of a when() that runs as an ASYNC tasklet interrupts its running callable
+	 * and that the callable's outcome is not delivered.
+	 */
+	@Test
+	public void testCancelWhen() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final List<Object> outcomes = Collections.synchronizedList(new ArrayList<Object>());
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				final Promise<Integer, Exception> promise = api.when(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						started.countDown();
+						try {
+							new CountDownLatch(1).await();
+						} catch (InterruptedException e) {
+							interrupted.countDown();
+							throw e;
+						}
+						return 1;
+					}
+				})
+				.done(new DoneCallback<Integer>() {
+					@Override
+					public void onDone(Integer p) {
+						outcomes.add(p);
+					}
+				})
+				.fail(new FailCallback<Exception>() {
+					@Override
+					public void onFail(Exception f) {
+						outcomes.add(f);
+					}
+				});
+				new Thread() {
+					@Override
+					public void run() {
+						try {
+							started.await();
+							promise.cancel();
+						} catch (InterruptedException e) {
+						}
+					}
+				}.start();
+			}
+		});
+		Assert.assertTrue("interrupted", interrupted.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("no outcome", Arrays.asList(), outcomes);
+	}
+
+	/**
+	 * Test that the callable of a when() queued on an Executor is not called once the promise has been cancelled.
+	 */
+	@Test
+	public void testCancelWhenOnExecutor() {
+		final AtomicInteger calls = new AtomicInteger();
+		final List<Runnable> queued = new ArrayList<Runnable>();
+		final Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				queued.add(command);
+			}
+		};
+		PromiseAPI.get().when(new Callable<Integer>() {
+			public Integer call() {
+				return calls.incrementAndGet();
+			}
+		}, executor).cancel();
+		for (Runnable command : queued) {
+			command.run();
+		}
+		Assert.assertEquals("queued", 1, queued.size());
+		Assert.assertEquals("not called", 0, calls.get());
+	}
+
+	/**
+	 * Test that cancelling the result of race() cancels the unobserved losers.
+	 */
+	@Test
+	public void testCancelRace() {
+		final Deferred<Integer, Exception> first = PromiseAPI.get().deferred();
+		final Deferred<Integer, Exception> second = PromiseAPI.get().deferred();
+		PromiseAPI.get().race(first.promise(), second.promise()).cancel();
+		Assert.assertTrue("first cancelled", first.isCancelled());
+		Assert.assertTrue("second cancelled", second.isCancelled());
+	}
+
+	/**
+	 * Test that a promise that is still pending when its timeout expires is rejected with the specified failure
+	 * and that the timed out promise is cancelled.
+	 */
+	@Test
+	public void testTimeoutExpired() {
+		final Exception timeout = new Exception();
+		final Exception[] failures = new Exception[] { null };
+		final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				deferred
+					.promise()
+					.timeout(10, TimeUnit.MILLISECONDS, timeout)
+					.fail(new FailCallback<Exception>() {
+						@Override
+						public void onFail(Exception f) {
+							failures[0] = f;
+						}
+					});
+			}
+		});
+		Assert.assertSame("fail called", timeout, failures[0]);
+		Assert.assertTrue("cancelled", deferred.isCancelled());
+	}
+
+	/**
+	 * Test that a promise that is resolved before its timeout expires is delivered.
+	 */
+	@Test
+	public void testTimeoutNotExpired() {
+		final Integer[] results = new Integer[] { null };
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api.when(new Callable<Integer>() {
+					public Integer call() {
+						return 1;
+					}
+				})
+				.timeout(1, TimeUnit.MINUTES, new Exception())
+				.done(new DoneCallback<Integer>() {
+					@Override
+					public void onDone(Integer p) {
+						results[0] = p;
+					}
+				});
+			}
+		});
+		Assert.assertEquals("done called", 1, (int)results[0]);
+	}
+
+	/**
+	 * Test that after() calls the callable once the delay has elapsed.
+	 */
+	@Test
+	public void testAfter() {
+		final long[] elapsed = new long[] { 0 };
+		final API api = PromiseAPI.get();
+		final long start = System.nanoTime();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api.after(50, TimeUnit.MILLISECONDS, new Callable<Long>() {
+					public Long call() {
+						return System.nanoTime() - start;
+					}
+				})
+				.done(new DoneCallback<Long>() {
+					@Override
+					public void onDone(Long p) {
+						elapsed[0] = p;
+					}
+				});
+			}
+		});
+		Assert.assertTrue("delayed", elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	/**
+	 * Test that cancelling the result of after() cancels the delay, so the callable is never called.
+	 */
+	@Test
+	public void testCancelAfter() throws InterruptedException {
+		final AtomicInteger calls = new AtomicInteger();
+		PromiseAPI.get().after(10, TimeUnit.MILLISECONDS, new Callable<Integer>() {
+			public Integer call() {
+				return calls.incrementAndGet();
+			}
+		}).cancel();
+		Thread.sleep(50);
+		Assert.assertEquals("not called", 0, calls.get());
+	}
+
+	/**
+	 * Test that a promise for a CompletableFuture is delivered when the future is completed by another thread.
+	 */
+	@Test
+	public void testAsPromise() {
+		final Integer[] results = new Integer[] { null };
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+				api.asPromise(future).done(new DoneCallback<Integer>() {
+					@Override
+					public void onDone(Integer p) {
+						results[0] = p;
+					}
+				});
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						future.complete(1);
+					}
+				}).start();
+			}
+		});
+		Assert.assertEquals("done called", 1, (int)results[0]);
+	}
+
+	/**
+	 * Test that a promise for a CompletableFuture that failed is rejected with the unwrapped cause.
+	 */
+	@Test
+	public void testAsPromiseFailed() {
+		final Exception rejection = new Exception();
+		final Throwable[] failures = new Throwable[] { null };
+		final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		future.completeExceptionally(rejection);
+		PromiseAPI
+			.get()
+			.asPromise(future.thenApply(new Function<Integer, Integer>() {
+				@Override
+				public Integer apply(Integer t) {
+					return t;
+				}
+			}))
+			.fail(new FailCallback<Throwable>() {
+				@Override
+				public void onFail(Throwable f) {
+					failures[0] = f;
+				}
+			});
+		Assert.assertSame("fail called", rejection, failures[0]);
+	}
+
+	/**
+	 * Test that a CompletableFuture for a promise is completed when the promise is settled.
+	 */
+	@Test
+	public void testAsCompletableFuture() throws Exception {
+		final Deferred<Integer, String> resolved = PromiseAPI.get().deferred();
+		final Deferred<Integer, String> rejected = PromiseAPI.get().deferred();
+		final CompletableFuture<Integer> done = PromiseAPI.get().asCompletableFuture(resolved.promise());
+		final CompletableFuture<Integer> failed = PromiseAPI.get().asCompletableFuture(rejected.promise());
+		Assert.assertFalse("pending", done.isDone());
+		resolved.resolve(1);
+		rejected.reject("rejected");
+		Assert.assertEquals("resolved", 1, (int)done.get());
+		try {
+			failed.get();
+			Assert.fail("rejected");
+		} catch (ExecutionException e) {
+			Assert.assertEquals("rejection", "rejected", ((RejectedException)e.getCause()).getRejection());
+		}
+	}
+
+	/**
+	 * Test that cancelling a CompletableFuture for a promise cancels the promise.
+	 */
+	@Test
+	public void testAsCompletableFutureCancelled() {
+		final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+		PromiseAPI.get().asCompletableFuture(deferred.promise()).cancel(false);
+		Assert.assertTrue("cancelled", deferred.isCancelled());
+	}
+
+	/**
+	 * Test that when() with an Executor calls the callable on the executor's thread and delivers the result
+	 * on the scheduler's synchronous thread.
+	 */
+	@Test
+	public void testWhenExecutor() {
+		final Thread[] threads = new Thread[] { null, null };
+		final ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			final API api = PromiseAPI.get();
+			api.run(new Runnable() {
+				@Override
+				public void run() {
+					api.when(new Callable<Thread>() {
+						public Thread call() {
+							return Thread.currentThread();
+						}
+					}, executor)
+					.done(new DoneCallback<Thread>() {
+						@Override
+						public void onDone(Thread p) {
+							threads[0] = p;
+							threads[1] = Thread.currentThread();
+						}
+					});
+				}
+			});
+			Assert.assertNotNull("done called", threads[0]);
+			Assert.assertNotSame("called on executor thread", Thread.currentThread(), threads[0]);
+			Assert.assertSame("delivered on sync thread", Thread.currentThread(), threads[1]);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test that doneAsync() and failAsync() call their callbacks on the executor and that run() waits for them.
+	 */
+	@Test
+	public void testDoneAsync() {
+		final Thread[] threads = new Thread[] { null, null };
+		final ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			final API api = PromiseAPI.get();
+			api.run(new Runnable() {
+				@Override
+				public void run() {
+					final Deferred<Integer, Exception> resolved = api.deferred();
+					final Deferred<Integer, Exception> rejected = api.deferred();
+					resolved.promise().doneAsync(new DoneCallback<Integer>() {
+						@Override
+						public void onDone(Integer p) {
+							sleep(10);
+							threads[0] = Thread.currentThread();
+						}
+					}, executor);
+					rejected.promise().failAsync(new FailCallback<Exception>() {
+						@Override
+						public void onFail(Exception f) {
+							sleep(10);
+							threads[1] = Thread.currentThread();
+						}
+					}, executor);
+					resolved.resolve(1);
+					rejected.reject(new Exception());
+				}
+			});
+			Assert.assertNotNull("done called before run() returned", threads[0]);
+			Assert.assertNotNull("fail called before run() returned", threads[1]);
+			Assert.assertNotSame("done called on executor thread", Thread.currentThread(), threads[0]);
+			Assert.assertNotSame("fail called on executor thread", Thread.currentThread(), threads[1]);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test that thenAsync() runs its filter on the executor and returns to the sync thread for the next callback.
+	 */
+	@Test
+	public void testThenAsync() {
+		final Thread[] threads = new Thread[] { null, null };
+		final ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			final API api = PromiseAPI.get();
+			api.run(new Runnable() {
+				@Override
+				public void run() {
+					final Deferred<Integer, Exception> deferred = api.deferred();
+					deferred.promise().thenAsync(new Filter<Integer, Integer>() {
+						@Override
+						public Integer filter(Integer p) {
+							threads[0] = Thread.currentThread();
+							return p + 1;
+						}
+					}, executor).done(new DoneCallback<Integer>() {
+						@Override
+						public void onDone(Integer p) {
+							threads[1] = Thread.currentThread();
+						}
+					});
+					deferred.resolve(1);
+				}
+			});
+			Assert.assertNotSame("filtered on executor thread", Thread.currentThread(), threads[0]);
+			Assert.assertSame("delivered on sync thread", Thread.currentThread(), threads[1]);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test that a thenAsync() filter that throws cancels the returned promise, so that run() returns, and that the
+	 * exception is rethrown on the sync thread.
+	 */
+	@Test
+	public void testThenAsyncFilterThrows() {
+		final RuntimeException failure = new IllegalStateException();
+		final List<Object> outcomes = new ArrayList<Object>();
+		final Object[] result = new Object[] { null, null };
+		final ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			final API api = PromiseAPI.get();
+			try {
+				api.run(new Runnable() {
+					@Override
+					public void run() {
+						final Deferred<Integer, Exception> deferred = api.deferred();
+						result[1] = deferred.promise().thenAsync(new Filter<Integer, Integer>() {
+							@Override
+							public Integer filter(Integer p) {
+								throw failure;
+							}
+						}, executor).done(new DoneCallback<Integer>() {
+							@Override
+							public void onDone(Integer p) {
+								outcomes.add(p);
+							}
+						}).fail(new FailCallback<Exception>() {
+							@Override
+							public void onFail(Exception f) {
+								outcomes.add(f);
+							}
+						});
+						deferred.resolve(1);
+					}
+				});
+			} catch (IllegalStateException e) {
+				result[0] = e;
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertSame("rethrown", failure, result[0]);
+		Assert.assertTrue("cancelled", ((Promise<?, ?>)result[1]).isCancelled());
+		Assert.assertEquals("no outcome", Arrays.asList(), outcomes);
+	}
+
+	/**
+	 * Test that a callback rejected by its executor is called on the sync thread instead.
+	 */
+	@Test
+	public void testDoneAsyncRejectedExecution() {
+		final Thread[] threads = new Thread[] { null };
+		final ExecutorService executor = Executors.newFixedThreadPool(1);
+		executor.shutdown();
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api.resolved(1, Integer.class, Exception.class).doneAsync(new DoneCallback<Integer>() {
+					@Override
+					public void onDone(Integer p) {
+						threads[0] = Thread.currentThread();
+					}
+				}, executor);
+			}
+		});
+		Assert.assertSame("delivered on sync thread", Thread.currentThread(), threads[0]);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Test that an API configured with an Executor uses it for when() and that run() waits for the work to finish.
+	 */
+	@Test
+	public void testDefaultExecutor() throws Exception {
+		final AtomicInteger executions = new AtomicInteger();
+		final AtomicInteger calls = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(1);
+		final Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				executions.incrementAndGet();
+				pool.execute(command);
+			}
+		};
+		try {
+			final API api = new APIImpl(executor);
+			PromiseAPI.with(api, new Runnable() {
+				@Override
+				public void run() {
+					api.run(new Runnable() {
+						@Override
+						public void run() {
+							api.when(new Runnable() {
+								@Override
+								public void run() {
+									try {
+										Thread.sleep(20);
+									} catch (InterruptedException e) {
+										throw new RuntimeException(e);
+									}
+									calls.incrementAndGet();
+								}
+							});
+						}
+					});
+				}
+			}).run();
+			Assert.assertEquals("executed", 1, executions.get());
+			Assert.assertEquals("run() waited", 1, calls.get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Test that whenAll() resolves with the results of all the callables, in order.
+	 */
+	@Test
+	public void testWhenAll() {
+		final List<Callable<Integer>> callables = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 1000; i++) {
+			final int value = i;
+			callables.add(new Callable<Integer>() {
+				public Integer call() {
+					return value;
+				}
+			});
+		}
+		final List<List<Integer>> results = new ArrayList<List<Integer>>();
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api.whenAll(callables, 64).done(new DoneCallback<List<Integer>>() {
+					@Override
+					public void onDone(List<Integer> p) {
+						results.add(p);
+					}
+				});
+			}
+		});
+		Assert.assertEquals("done called", 1, results.size());
+		Assert.assertEquals("size", 1000, results.get(0).size());
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals("result", i, (int)results.get(0).get(i));
+		}
+	}
+
+	/**
+	 * Test that whenAll() is rejected with the exception thrown by a callable.
+	 */
+	@Test
+	public void testWhenAllRejected() {
+		final Exception rejection = new Exception();
+		final Exception[] failures = new Exception[] { null };
+		final List<Callable<Integer>> callables = new ArrayList<Callable<Integer>>();
+		callables.add(new Callable<Integer>() {
+			public Integer call() {
+				return 1;
+			}
+		});
+		callables.add(new Callable<Integer>() {
+			public Integer call() throws Exception {
+				throw rejection;
+			}
+		});
+		final API api = PromiseAPI.get();
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				api.whenAll(callables).fail(new FailCallback<Exception>() {
+					@Override
+					public void onFail(Exception f) {
+						failures[0] = f;
+					}
+				});
+			}
+		});
+		Assert.assertSame("fail called", rejection, failures[0]);
+	}
+
+	/**
+	 * Test that an API with a LatencyRecorder records the lifecycle of the promises it creates.
+	 */
+	@Test
+	public void testLatencyRecorder() throws Exception {
+		final LatencyRecorder recorder = new LatencyRecorder();
+		final API api = new APIImpl(null, recorder);
+		PromiseAPI.with(api, new Runnable() {
+			@Override
+			public void run() {
+				api.run(new Runnable() {
+					@Override
+					public void run() {
+						api.when(new Callable<Integer>() {
+							public Integer call() throws Exception {
+								Thread.sleep(10);
+								return 1;
+							}
+						}).done(new DoneCallback<Integer>() {
+							@Override
+							public void onDone(Integer p) {
+							}
+						});
+					}
+				});
+			}
+		}).run();
+		Assert.assertEquals("settled", 1, recorder.getPendingLatency().getCount());
+		Assert.assertEquals("delivered", 1, recorder.getDeliveryLatency().getCount());
+		Assert.assertEquals("executed", 1, recorder.getExecutionTime().getCount());
+		Assert.assertTrue("pending", recorder.getPendingLatency().getValueAtPercentile(100) >= TimeUnit.MILLISECONDS.toNanos(9));
+	}
+
+}
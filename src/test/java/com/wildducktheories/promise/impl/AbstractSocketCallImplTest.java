@@ -0,0 +1,376 @@
+package com.wildducktheories.promise.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.promise.PromiseListener;
+
+public class AbstractSocketCallImplTest {
+
+	/**
+	 * A loopback server that runs a thread per connection. By default, it echoes every byte it reads.
+	 */
+	public static class LoopbackServer extends Thread {
+		private final ServerSocket socket;
+		private final boolean echo;
+		private final CountDownLatch received = new CountDownLatch(1);
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		public LoopbackServer(boolean echo) throws IOException {
+			this.socket = new ServerSocket(0, 1000, InetAddress.getLoopbackAddress());
+			this.echo = echo;
+			setDaemon(true);
+			start();
+		}
+
+		public SocketAddress getAddress() {
+			return socket.getLocalSocketAddress();
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (;;) {
+					final Socket connection = socket.accept();
+					final Thread handler = new Thread() {
+						@Override
+						public void run() {
+							try {
+								final InputStream in = connection.getInputStream();
+								final OutputStream out = connection.getOutputStream();
+								final byte[] buffer = new byte[4096];
+								int n;
+								while ((n = in.read(buffer)) >= 0) {
+									received.countDown();
+									if (echo) {
+										out.write(buffer, 0, n);
+									}
+								}
+								closed.countDown();
+							} catch (IOException e) {
+								closed.countDown();
+							} finally {
+								try {
+									connection.close();
+								} catch (IOException e) {
+								}
+							}
+						}
+					};
+					handler.setDaemon(true);
+					handler.start();
+				}
+			} catch (IOException e) {
+				// closed
+			}
+		}
+
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	public static class EchoCall extends AbstractSocketCallImpl<String, Exception, byte[], byte[]>
+	{
+		private final SocketAddress address;
+		private final byte[] r;
+		private final BufferPool pool;
+		private Thread receiver;
+
+		public EchoCall(SocketAddress address, byte[] r, BufferPool pool) {
+			super();
+			this.address = address;
+			this.r = r;
+			this.pool = pool;
+		}
+
+		@Override
+		protected byte[] build() throws Exception {
+			return r;
+		}
+
+		@Override
+		protected SocketAddress getAddress() {
+			return address;
+		}
+
+		@Override
+		protected BufferPool getBufferPool() {
+			return pool;
+		}
+
+		@Override
+		protected Framing<byte[], byte[]> newFraming() {
+			return new LengthPrefixedFraming();
+		}
+
+		@Override
+		protected String receive(byte[] s) throws Exception {
+			receiver = Thread.currentThread();
+			return new String(s, "UTF-8");
+		}
+
+		@Override
+		protected Exception handle(Exception e) {
+			return e;
+		}
+	}
+
+	private LoopbackServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new LoopbackServer(true);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void testEcho() throws Exception
+	{
+		final Object[] result = new Object[] { null, null };
+		final BufferPool pool = new BufferPool(1024, 4);
+		final EchoCall call = new EchoCall(server.getAddress(), "hello".getBytes("UTF-8"), pool);
+		PromiseAPI.get().run(new Runnable() {
+			public void run() {
+				result[1] = Thread.currentThread();
+				call.call().done(new DoneCallback<String>() {
+					@Override
+					public void onDone(String p) {
+						result[0] = p;
+					}
+				});
+			}
+		});
+		Assert.assertEquals("echoed", "hello", result[0]);
+		Assert.assertSame("received on main thread", result[1], call.receiver);
+		Assert.assertEquals("buffer returned", 1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testFrameLargerThanBuffer() throws Exception
+	{
+		final String[] result = new String[] { null };
+		final char[] chars = new char[100000];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char)('a' + i % 26);
+		}
+		final String request = new String(chars);
+		final EchoCall call = new EchoCall(server.getAddress(), request.getBytes("UTF-8"), new BufferPool(64, 4));
+		PromiseAPI.get().run(new Runnable() {
+			public void run() {
+				call.call().done(new DoneCallback<String>() {
+					@Override
+					public void onDone(String p) {
+						result[0] = p;
+					}
+				});
+			}
+		});
+		Assert.assertEquals("echoed", request, result[0]);
+	}
+
+	@Test
+	public void testConcurrentCalls() throws Exception
+	{
+		final int count = 200;
+		final String[] result = new String[count];
+		final BufferPool pool = new BufferPool(256, 16);
+		PromiseAPI.get().run(new Runnable() {
+			public void run() {
+				for (int i = 0; i < count; i++) {
+					final int index = i;
+					final EchoCall call;
+					try {
+						call = new EchoCall(server.getAddress(), ("call-" + i).getBytes("UTF-8"), pool);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+					call.call().done(new DoneCallback<String>() {
+						@Override
+						public void onDone(String p) {
+							result[index] = p;
+						}
+					});
+				}
+			}
+		});
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals("echoed", "call-" + i, result[i]);
+		}
+		Assert.assertTrue("buffers pooled", pool.getIdleCount() > 0 && pool.getIdleCount() <= 16);
+	}
+
+	@Test
+	public void testConnectionRefused() throws Exception
+	{
+		final Exception[] exceptions = new Exception[] { null };
+		final ServerSocket unused = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		final SocketAddress address = unused.getLocalSocketAddress();
+		unused.close();
+		final EchoCall call = new EchoCall(address, new byte[] { 1 }, new BufferPool(64, 4));
+		PromiseAPI.get().run(new Runnable() {
+			public void run() {
+				call.call().fail(new FailCallback<Exception>() {
+					@Override
+					public void onFail(Exception f) {
+						exceptions[0] = f;
+					}
+				});
+			}
+		});
+		Assert.assertTrue("refused", exceptions[0] instanceof IOException);
+	}
+
+	@Test
+	public void testTimeout() throws Exception
+	{
+		final Exception[] exceptions = new Exception[] { null };
+		final LoopbackServer silent = new LoopbackServer(false);
+		try {
+			final EchoCall call = new EchoCall(silent.getAddress(), new byte[] { 1 }, new BufferPool(64, 4)) {
+				@Override
+				protected long getTimeout() {
+					return 100;
+				}
+			};
+			PromiseAPI.get().run(new Runnable() {
+				public void run() {
+					call.call().fail(new FailCallback<Exception>() {
+						@Override
+						public void onFail(Exception f) {
+							exceptions[0] = f;
+						}
+					});
+				}
+			});
+			Assert.assertTrue("timed out", exceptions[0] instanceof InterruptedByTimeoutException);
+			Assert.assertTrue("connection closed", silent.closed.await(5, TimeUnit.SECONDS));
+		} finally {
+			silent.close();
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception
+	{
+		final List<Object> outcomes = new ArrayList<Object>();
+		final LoopbackServer silent = new LoopbackServer(false);
+		final BufferPool pool = new BufferPool(64, 4);
+		try {
+			final EchoCall call = new EchoCall(silent.getAddress(), new byte[] { 1 }, pool);
+			PromiseAPI.get().run(new Runnable() {
+				public void run() {
+					final Promise<String, Exception> promise = call.call()
+						.done(new DoneCallback<String>() {
+							@Override
+							public void onDone(String p) {
+								outcomes.add(p);
+							}
+						})
+						.fail(new FailCallback<Exception>() {
+							@Override
+							public void onFail(Exception f) {
+								outcomes.add(f);
+							}
+						});
+					new Thread() {
+						@Override
+						public void run() {
+							try {
+								silent.received.await();
+								promise.cancel();
+							} catch (InterruptedException e) {
+							}
+						}
+					}.start();
+				}
+			});
+			Assert.assertEquals("no outcome", Arrays.asList(), outcomes);
+			Assert.assertNull("not received", call.receiver);
+			Assert.assertTrue("connection closed", silent.closed.await(5, TimeUnit.SECONDS));
+			Assert.assertEquals("buffer returned", 1, pool.getIdleCount());
+		} finally {
+			silent.close();
+		}
+	}
+
+	@Test
+	public void testCancelBeforeConnect() throws Exception
+	{
+		final Promise<?, ?>[] created = new Promise<?, ?>[] { null };
+		final boolean[] connected = new boolean[] { false };
+		final APIImpl api = new APIImpl(null, new PromiseListener() {
+			@Override
+			public void onCreated(Promise<?, ?> promise) {
+				if (created[0] == null) {
+					created[0] = promise;
+				}
+			}
+
+			@Override
+			public void onSettled(Promise<?, ?> promise, boolean rejected, long pendingNanos) {
+			}
+
+			@Override
+			public void onRegistered(Promise<?, ?> promise) {
+			}
+
+			@Override
+			public void onDelivered(Promise<?, ?> promise, long deliveryNanos, long executionNanos) {
+			}
+		});
+		final BufferPool pool = new BufferPool(64, 4);
+		final EchoCall call = new EchoCall(server.getAddress(), new byte[] { 1 }, pool) {
+			@Override
+			protected AsynchronousChannelGroup getChannelGroup() throws IOException {
+				// the call is cancelled while its channel is being opened.
+				created[0].cancel();
+				return super.getChannelGroup();
+			}
+
+			@Override
+			protected SocketAddress getAddress() {
+				connected[0] = true;
+				return super.getAddress();
+			}
+		};
+		PromiseAPI.with(api, new Runnable() {
+			public void run() {
+				api.run(new Runnable() {
+					public void run() {
+						call.call();
+					}
+				});
+			}
+		}).run();
+		Assert.assertTrue("cancelled", created[0].isCancelled());
+		Assert.assertFalse("not connected", connected[0]);
+		Assert.assertNull("not received", call.receiver);
+	}
+}
@@ -0,0 +1,176 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+
+public class AbstractStreamingCallImplTest {
+
+	/**
+	 * Streams the integers from 0 up to, but excluding, a limit and promises the number of elements received.
+	 */
+	public static class TestCall extends AbstractStreamingCallImpl<Integer,Exception,Integer,AtomicInteger,Integer>
+	{
+		private final int limit;
+		private final List<Integer> received = new ArrayList<Integer>();
+		private final List<Thread> threads = new ArrayList<Thread>();
+		private final AtomicInteger read = new AtomicInteger();
+		private volatile int maxAhead = 0;
+		private volatile boolean closed = false;
+
+		public TestCall(int limit) {
+			super();
+			this.limit = limit;
+		}
+
+		@Override
+		protected int getBatchSize() {
+			return 10;
+		}
+
+		@Override
+		protected Integer build() throws Exception {
+			return limit;
+		}
+
+		@Override
+		protected AtomicInteger send(Integer r) throws Exception {
+			return new AtomicInteger();
+		}
+
+		@Override
+		protected Integer read(AtomicInteger s) throws Exception {
+			final int next = s.getAndIncrement();
+			if (next >= limit) {
+				return null;
+			}
+			maxAhead = Math.max(maxAhead, read.incrementAndGet() - received.size());
+			return next;
+		}
+
+		@Override
+		protected void receive(Integer e) throws Exception {
+			received.add(e);
+			threads.add(Thread.currentThread());
+		}
+
+		@Override
+		protected Integer finish(AtomicInteger s) throws Exception {
+			return received.size();
+		}
+
+		@Override
+		protected void close(AtomicInteger s) throws Exception {
+			closed = true;
+		}
+
+		@Override
+		protected Exception handle(Exception e) {
+			return e;
+		}
+	}
+
+	@Test
+	public void testStream()
+	{
+		final Integer[] result = new Integer[] { null };
+		final TestCall call = new TestCall(1000);
+		PromiseAPI.get().run(new Runnable() {
+			public void run() {
+				call.call().done(new DoneCallback<Integer>() {
+					@Override
+					public void onDone(Integer p) {
+						result[0] = p;
+					}
+				});
+			}
+		});
+		Assert.assertEquals("result", 1000, (int)result[0]);
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals("element", i, (int)call.received.get(i));
+			Assert.assertSame("received on main thread", Thread.currentThread(), call.threads.get(i));
+		}
+		Assert.assertTrue("reads paused", call.maxAhead <= 10);
+		Assert.assertTrue("closed", call.closed);
+	}
+
+	@Test
+	public void testReceiveThrows()
+	{
+		final Exception failure = new Exception();
+		final Exception[] exceptions = new Exception [] { null };
+		final TestCall call = new TestCall(1000) {
+			@Override
+			protected void receive(Integer e) throws Exception {
+				if (e == 15) {
+					throw failure;
+				}
+				super.receive(e);
+			}
+		};
+		PromiseAPI.get().run(new Runnable() {
+			public void run() {
+				call.call().fail(new FailCallback<Exception>() {
+					@Override
+					public void onFail(Exception f) {
+						exceptions[0] = f;
+					}
+				});
+			}
+		});
+		Assert.assertSame("failure", failure, exceptions[0]);
+		Assert.assertEquals("received", 15, call.received.size());
+		Assert.assertTrue("closed", call.closed);
+	}
+
+	@Test
+	public void testCancelDuringLaterRead() throws InterruptedException
+	{
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final boolean[] interrupted = new boolean[] { false };
+		final TestCall call = new TestCall(1000) {
+			@Override
+			protected Integer read(AtomicInteger s) throws Exception {
+				if (s.get() == 25) {
+					blocked.countDown();
+					try {
+						Thread.sleep(10000);
+					} catch (InterruptedException e) {
+						interrupted[0] = true;
+						throw e;
+					}
+				}
+				return super.read(s);
+			}
+		};
+		final long start = System.currentTimeMillis();
+		PromiseAPI.get().run(new Runnable() {
+			public void run() {
+				final Promise<Integer, Exception> promise = call.call();
+				new Thread() {
+					@Override
+					public void run() {
+						try {
+							blocked.await();
+							promise.cancel();
+						} catch (InterruptedException e) {
+						}
+					}
+				}.start();
+			}
+		});
+		Assert.assertTrue("interrupted", interrupted[0]);
+		Assert.assertTrue("not waited out", System.currentTimeMillis() - start < 5000);
+		Assert.assertEquals("received", 20, call.received.size());
+		Assert.assertTrue("closed", call.closed);
+	}
+}
@@ -0,0 +1,159 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.Call;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+
+public class CachingCallImplTest {
+
+	/**
+	 * A call whose promises are settled by the test.
+	 */
+	public static class TestCall implements Call<Integer, String> {
+		private final List<Deferred<Integer, String>> calls = new ArrayList<Deferred<Integer, String>>();
+
+		@Override
+		public Promise<Integer, String> call() {
+			final Deferred<Integer, String> deferred = PromiseAPI.get().deferred();
+			calls.add(deferred);
+			return deferred.promise();
+		}
+	}
+
+	/**
+	 * A cache whose calls fail with the message of the exception they throw.
+	 */
+	public static class TestCache extends CachingCallImpl<String, Integer, String> {
+		public TestCache(int maximumSize, long ttl, TimeUnit unit) {
+			super(maximumSize, ttl, unit);
+		}
+
+		@Override
+		protected String handle(Exception e) {
+			return e.getMessage();
+		}
+	}
+
+	@Test
+	public void testSingleFlight()
+	{
+		final Integer[] results = new Integer[] { null, null };
+		final TestCall call = new TestCall();
+		final CachingCallImpl<String, Integer, String> cache = new TestCache(10, 1, TimeUnit.MINUTES);
+		for (int i = 0; i < 2; i++) {
+			final int index = i;
+			cache.call("key", call).done(new DoneCallback<Integer>() {
+				@Override
+				public void onDone(Integer p) {
+					results[index] = p;
+				}
+			});
+		}
+		Assert.assertEquals("calls", 1, call.calls.size());
+		call.calls.get(0).resolve(1);
+		Assert.assertEquals("first", 1, (int)results[0]);
+		Assert.assertEquals("second", 1, (int)results[1]);
+
+		final Promise<Integer, String> hit = cache.call("key", call);
+		Assert.assertEquals("calls", 1, call.calls.size());
+		Assert.assertSame("settled promise shared", hit, cache.call("key", call));
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException
+	{
+		final TestCall call = new TestCall();
+		final CachingCallImpl<String, Integer, String> cache = new TestCache(10, 10, TimeUnit.MILLISECONDS);
+		cache.call("key", call);
+		call.calls.get(0).resolve(1);
+		cache.call("key", call);
+		Assert.assertEquals("cached", 1, call.calls.size());
+		Thread.sleep(20);
+		cache.call("key", call);
+		Assert.assertEquals("expired", 2, call.calls.size());
+	}
+
+	@Test
+	public void testRejectionNotCached()
+	{
+		final TestCall call = new TestCall();
+		final CachingCallImpl<String, Integer, String> cache = new TestCache(10, 1, TimeUnit.MINUTES);
+		cache.call("key", call);
+		call.calls.get(0).reject("failed");
+		cache.call("key", call);
+		Assert.assertEquals("called again", 2, call.calls.size());
+	}
+
+	@Test
+	public void testEviction()
+	{
+		final TestCall call = new TestCall();
+		final CachingCallImpl<String, Integer, String> cache = new TestCache(2, 1, TimeUnit.MINUTES);
+		cache.call("a", call);
+		cache.call("b", call);
+		cache.call("a", call);
+		cache.call("c", call);
+		Assert.assertEquals("size", 2, cache.size());
+		Assert.assertEquals("calls", 3, call.calls.size());
+		cache.call("a", call);
+		Assert.assertEquals("a retained", 3, call.calls.size());
+		cache.call("b", call);
+		Assert.assertEquals("b evicted", 4, call.calls.size());
+	}
+
+	@Test
+	public void testCancel()
+	{
+		final TestCall call = new TestCall();
+		final CachingCallImpl<String, Integer, String> cache = new TestCache(10, 1, TimeUnit.MINUTES);
+		final Promise<Integer, String> first = cache.call("key", call);
+		final Promise<Integer, String> second = cache.call("key", call);
+		first.cancel();
+		Assert.assertFalse("still required", call.calls.get(0).isCancelled());
+		second.cancel();
+		Assert.assertTrue("no longer required", call.calls.get(0).isCancelled());
+		cache.call("key", call);
+		Assert.assertEquals("called again", 2, call.calls.size());
+	}
+
+	@Test
+	public void testCallThrows()
+	{
+		final List<Object> outcomes = new ArrayList<Object>();
+		final CachingCallImpl<String, Integer, String> cache = new TestCache(10, 1, TimeUnit.MINUTES);
+		final List<Promise<Integer, String>> joiners = new ArrayList<Promise<Integer, String>>();
+		final Call<Integer, String> call = new Call<Integer, String>() {
+			@Override
+			public Promise<Integer, String> call() {
+				// join the call in flight before it throws.
+				joiners.add(cache.call("key", this));
+				joiners.add(cache.call("key", this));
+				throw new IllegalStateException("thrown");
+			}
+		};
+		joiners.add(cache.call("key", call));
+		Assert.assertEquals("callers", 3, joiners.size());
+		for (Promise<Integer, String> joiner : joiners) {
+			Assert.assertFalse("not cancelled", joiner.isCancelled());
+			joiner.fail(new FailCallback<String>() {
+				@Override
+				public void onFail(String f) {
+					outcomes.add(f);
+				}
+			});
+		}
+		Assert.assertEquals("rejected", Arrays.asList("thrown", "thrown", "thrown"), outcomes);
+		Assert.assertEquals("not retained", 0, cache.size());
+	}
+}
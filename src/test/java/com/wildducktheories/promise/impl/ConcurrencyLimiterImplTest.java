@@ -0,0 +1,184 @@
+package com.wildducktheories.promise.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.Call;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+
+public class ConcurrencyLimiterImplTest {
+
+	/**
+	 * A call whose promises are settled by the test.
+	 */
+	public static class TestCall implements Call<Integer, Exception> {
+		private final List<Deferred<Integer, Exception>> calls = new ArrayList<Deferred<Integer, Exception>>();
+
+		@Override
+		public Promise<Integer, Exception> call() {
+			final Deferred<Integer, Exception> deferred = PromiseAPI.get().deferred();
+			calls.add(deferred);
+			return deferred.promise();
+		}
+	}
+
+	public static class TestLimiter extends ConcurrencyLimiterImpl<Integer, Exception> {
+		public TestLimiter(int initialLimit, int maxLimit, int maxQueue) {
+			super(initialLimit, maxLimit, maxQueue);
+		}
+
+		@Override
+		protected Exception handle(Exception e) {
+			return e;
+		}
+	}
+
+	@Test
+	public void testQueue()
+	{
+		final Integer[] results = new Integer[] { null, null, null };
+		final Exception[] exceptions = new Exception[] { null };
+		final TestCall call = new TestCall();
+		final TestLimiter limiter = new TestLimiter(2, 2, 1);
+		for (int i = 0; i < 3; i++) {
+			final int index = i;
+			limiter.call(call).done(new DoneCallback<Integer>() {
+				@Override
+				public void onDone(Integer p) {
+					results[index] = p;
+				}
+			});
+		}
+		limiter.call(call).fail(new FailCallback<Exception>() {
+			@Override
+			public void onFail(Exception f) {
+				exceptions[0] = f;
+			}
+		});
+		Assert.assertEquals("in flight", 2, call.calls.size());
+		Assert.assertNotNull("rejected", exceptions[0]);
+
+		call.calls.get(0).resolve(0);
+		Assert.assertEquals("first", 0, (int)results[0]);
+		Assert.assertEquals("queued call started", 3, call.calls.size());
+		call.calls.get(1).resolve(1);
+		call.calls.get(2).resolve(2);
+		Assert.assertEquals("third", 2, (int)results[2]);
+		Assert.assertEquals("none in flight", 0, limiter.getInFlight());
+	}
+
+	@Test
+	public void testCancelQueued()
+	{
+		final TestCall call = new TestCall();
+		final TestLimiter limiter = new TestLimiter(1, 1, 1);
+		limiter.call(call);
+		limiter.call(call).cancel();
+		call.calls.get(0).resolve(0);
+		Assert.assertEquals("cancelled call not started", 1, call.calls.size());
+	}
+
+	@Test
+	public void testAdapt() throws InterruptedException
+	{
+		final TestCall call = new TestCall();
+		final TestLimiter limiter = new TestLimiter(4, 100, 100);
+
+		// fast calls that saturate the limit raise it.
+		for (int round = 0; round < 20; round++) {
+			final int from = call.calls.size();
+			for (int i = 0; i < limiter.getLimit(); i++) {
+				limiter.call(call);
+			}
+			for (int i = from; i < call.calls.size(); i++) {
+				call.calls.get(i).resolve(i);
+			}
+		}
+		final int raised = limiter.getLimit();
+		Assert.assertTrue("limit raised", raised > 4);
+
+		// calls that are much slower than the fastest lower it.
+		for (int round = 0; round < 5; round++) {
+			final int from = call.calls.size();
+			final int limit = limiter.getLimit();
+			for (int i = 0; i < limit; i++) {
+				limiter.call(call);
+			}
+			Thread.sleep(20);
+			for (int i = from; i < from + limit; i++) {
+				call.calls.get(i).resolve(i);
+			}
+		}
+		Assert.assertTrue("limit lowered", limiter.getLimit() < raised);
+	}
+
+	@Test
+	public void testQueuedCallThrows()
+	{
+		final Exception[] exceptions = new Exception[] { null };
+		final TestCall call = new TestCall();
+		final TestLimiter limiter = new TestLimiter(1, 1, 1);
+		final IllegalStateException failure = new IllegalStateException();
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				limiter.call(call);
+				limiter.call(new Call<Integer, Exception>() {
+					@Override
+					public Promise<Integer, Exception> call() {
+						throw failure;
+					}
+				}).fail(new FailCallback<Exception>() {
+					@Override
+					public void onFail(Exception f) {
+						exceptions[0] = f;
+					}
+				});
+				call.calls.get(0).resolve(0);
+			}
+		});
+		Assert.assertSame("rejected", failure, exceptions[0]);
+		Assert.assertEquals("none in flight", 0, limiter.getInFlight());
+	}
+
+	@Test
+	public void testCancelForeignPromise()
+	{
+		final TestCall call = new TestCall();
+		final TestLimiter limiter = new TestLimiter(1, 1, 1);
+		final Promise<Integer, Exception> promise = limiter.call(new Call<Integer, Exception>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public Promise<Integer, Exception> call() {
+				// a promise that is not a DeferredImpl.
+				final Promise<Integer, Exception> delegate = call.call();
+				return (Promise<Integer, Exception>)Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { Promise.class }, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							try {
+								return method.invoke(delegate, args);
+							} catch (InvocationTargetException e) {
+								throw e.getCause();
+							}
+						}
+					});
+			}
+		});
+		Assert.assertEquals("in flight", 1, limiter.getInFlight());
+		promise.cancel();
+		Assert.assertEquals("permit released", 0, limiter.getInFlight());
+		Assert.assertTrue("call cancelled", call.calls.get(0).isCancelled());
+	}
+}
@@ -0,0 +1,143 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DoneCallback;
+
+public class ForkJoinExecutorTest {
+
+	@Test
+	public void testWhenRunsOnPool() throws InterruptedException
+	{
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		final APIImpl api = new APIImpl(new ForkJoinExecutor(pool));
+		final Thread[] result = new Thread[] { null, null, null };
+		try {
+			api.run(new Runnable() {
+				@Override
+				public void run() {
+					result[0] = Thread.currentThread();
+					api.when(new Callable<Thread>() {
+						@Override
+						public Thread call() throws Exception {
+							return Thread.currentThread();
+						}
+					}).done(new DoneCallback<Thread>() {
+						@Override
+						public void onDone(Thread p) {
+							result[1] = p;
+							result[2] = Thread.currentThread();
+						}
+					});
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+		Assert.assertTrue("worker", result[1] instanceof ForkJoinWorkerThread);
+		Assert.assertSame("pool", pool, ((ForkJoinWorkerThread)result[1]).getPool());
+		Assert.assertSame("callback on main thread", result[0], result[2]);
+	}
+
+	@Test
+	public void testWorkerSubmitsToLocalQueue() throws InterruptedException
+	{
+		final ForkJoinPool pool = new ForkJoinPool(1);
+		final ForkJoinExecutor executor = new ForkJoinExecutor(pool);
+		final CountDownLatch done = new CountDownLatch(1);
+		final Object[] result = new Object[] { null, null, null };
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					result[0] = Thread.currentThread();
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							result[2] = Thread.currentThread();
+							done.countDown();
+						}
+					});
+					result[1] = ForkJoinTask.getQueuedTaskCount();
+				}
+			});
+			Assert.assertTrue("done", done.await(5, TimeUnit.SECONDS));
+		} finally {
+			pool.shutdown();
+		}
+		Assert.assertEquals("queued locally", 1, result[1]);
+		Assert.assertSame("same worker", result[0], result[2]);
+	}
+
+	@Test
+	public void testAsyncCallbackForkedOnSettlingWorker() throws InterruptedException
+	{
+		final ForkJoinPool pool = new ForkJoinPool(1);
+		final ForkJoinExecutor executor = new ForkJoinExecutor(pool);
+		final APIImpl api = new APIImpl(executor);
+		final Object[] result = new Object[] { null, null, null };
+		try {
+			api.run(new Runnable() {
+				@Override
+				public void run() {
+					final Deferred<Integer, RuntimeException> deferred = api.deferred();
+					deferred.promise().doneAsync(new DoneCallback<Integer>() {
+						@Override
+						public void onDone(Integer p) {
+							result[2] = Thread.currentThread();
+						}
+					}, executor);
+					api.when(new Runnable() {
+						@Override
+						public void run() {
+							result[0] = Thread.currentThread();
+							deferred.resolve(1);
+							result[1] = ForkJoinTask.getQueuedTaskCount();
+						}
+					});
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+		Assert.assertEquals("queued locally", 1, result[1]);
+		Assert.assertSame("same worker", result[0], result[2]);
+	}
+
+	@Test
+	public void testExceptionReported() throws InterruptedException
+	{
+		final Throwable[] result = new Throwable[] { null };
+		final CountDownLatch reported = new CountDownLatch(1);
+		final ForkJoinPool pool = new ForkJoinPool(1, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+			new Thread.UncaughtExceptionHandler() {
+				@Override
+				public void uncaughtException(Thread t, Throwable e) {
+					result[0] = e;
+					reported.countDown();
+				}
+			}, false);
+		final IllegalStateException failure = new IllegalStateException();
+		try {
+			new ForkJoinExecutor(pool).execute(new Runnable() {
+				@Override
+				public void run() {
+					throw failure;
+				}
+			});
+			Assert.assertTrue("reported", reported.await(5, TimeUnit.SECONDS));
+		} finally {
+			pool.shutdown();
+		}
+		Assert.assertSame("failure", failure, result[0]);
+	}
+}
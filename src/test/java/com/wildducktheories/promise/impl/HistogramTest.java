@@ -0,0 +1,46 @@
+package com.wildducktheories.promise.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void testPercentiles()
+	{
+		final Histogram histogram = new Histogram();
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		Assert.assertEquals("count", 1000, histogram.getCount());
+		assertWithin(500000, histogram.getValueAtPercentile(50));
+		assertWithin(990000, histogram.getValueAtPercentile(99));
+		assertWithin(1000000, histogram.getValueAtPercentile(100));
+		assertWithin(1000, histogram.getValueAtPercentile(0));
+	}
+
+	@Test
+	public void testSmallValuesAreExact()
+	{
+		final Histogram histogram = new Histogram();
+		for (long i = 0; i < 32; i++) {
+			histogram.record(i);
+		}
+		Assert.assertEquals("median", 15, histogram.getValueAtPercentile(50));
+		Assert.assertEquals("max", 31, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testReset()
+	{
+		final Histogram histogram = new Histogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.reset();
+		Assert.assertEquals("count", 0, histogram.getCount());
+		Assert.assertEquals("empty", 0, histogram.getValueAtPercentile(50));
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		Assert.assertTrue("expected " + expected + " got " + actual, Math.abs(expected - actual) <= expected / 16);
+	}
+}
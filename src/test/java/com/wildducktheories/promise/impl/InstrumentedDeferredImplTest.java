@@ -0,0 +1,153 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.Call;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.Filter;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.promise.PromiseListener;
+
+public class InstrumentedDeferredImplTest {
+
+	/**
+	 * Records the events reported for one promise.
+	 */
+	private static class RecordingListener implements PromiseListener {
+		private final List<String> events = new ArrayList<String>();
+		private final List<Promise<?, ?>> created = new ArrayList<Promise<?, ?>>();
+		private Promise<?, ?> promise;
+
+		@Override
+		public synchronized void onCreated(Promise<?, ?> promise) {
+			created.add(promise);
+			if (this.promise == null) {
+				this.promise = promise;
+				events.add("created");
+			}
+		}
+
+		@Override
+		public synchronized void onSettled(Promise<?, ?> promise, boolean rejected, long pendingNanos) {
+			if (promise == this.promise) {
+				events.add(rejected ? "rejected" : "resolved");
+			}
+		}
+
+		@Override
+		public synchronized void onRegistered(Promise<?, ?> promise) {
+			if (promise == this.promise) {
+				events.add("registered");
+			}
+		}
+
+		@Override
+		public synchronized void onDelivered(Promise<?, ?> promise, long deliveryNanos, long executionNanos) {
+			if (promise == this.promise) {
+				events.add("delivered");
+			}
+		}
+	}
+
+	@Test
+	public void testThenIsInstrumented()
+	{
+		final RecordingListener listener = new RecordingListener();
+		final API api = new APIImpl(null, listener);
+		final Integer[] result = new Integer[] { null };
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				final Deferred<Integer, Exception> deferred = api.deferred();
+				deferred.promise()
+					.then(new Filter<Integer, Integer>() {
+						@Override
+						public Integer filter(Integer p) {
+							return p + 1;
+						}
+					})
+					.done(new DoneCallback<Integer>() {
+						@Override
+						public void onDone(Integer p) {
+							result[0] = p;
+						}
+					});
+				deferred.resolve(1);
+			}
+		});
+		Assert.assertEquals("result", Integer.valueOf(2), result[0]);
+		Assert.assertEquals("events", Arrays.asList("created", "registered", "resolved", "delivered"), listener.events);
+	}
+
+	@Test
+	public void testThenPromiseIsInstrumented()
+	{
+		final RecordingListener listener = new RecordingListener();
+		final API api = new APIImpl(null, listener);
+		final Integer[] result = new Integer[] { null };
+		api.run(new Runnable() {
+			@Override
+			public void run() {
+				final Deferred<Integer, Exception> deferred = api.deferred();
+				deferred.resolve(1);
+				deferred.promise()
+					.thenPromise(new Filter<Integer, Promise<Integer, Exception>>() {
+						@Override
+						public Promise<Integer, Exception> filter(Integer p) {
+							return api.resolved(p + 1, Integer.class, Exception.class);
+						}
+					})
+					.done(new DoneCallback<Integer>() {
+						@Override
+						public void onDone(Integer p) {
+							result[0] = p;
+						}
+					});
+			}
+		});
+		Assert.assertEquals("result", Integer.valueOf(2), result[0]);
+		Assert.assertEquals("events", Arrays.asList("created", "resolved", "registered", "delivered"), listener.events);
+	}
+
+	@Test
+	public void testDecoratorsAndTimeoutAreInstrumented()
+	{
+		final RecordingListener listener = new RecordingListener();
+		final API api = new APIImpl(null, listener);
+		final List<Promise<Integer, String>> results = new ArrayList<Promise<Integer, String>>();
+		final Call<Integer, String> call = new Call<Integer, String>() {
+			@Override
+			public Promise<Integer, String> call() {
+				return api.resolved(1, Integer.class, String.class);
+			}
+		};
+		PromiseAPI.with(api, new Runnable() {
+			@Override
+			public void run() {
+				results.add(new RetryingCallImpl<Integer, String>(call).call());
+				results.add(new ConcurrencyLimiterImpl<Integer, String>(1, 10, 10) {
+					@Override
+					protected String handle(Exception e) {
+						return e.getMessage();
+					}
+				}.call(call));
+				results.add(new CachingCallImplTest.TestCache(10, 1, TimeUnit.MINUTES).call("key", call));
+				final Deferred<Integer, String> deferred = api.deferred();
+				results.add(deferred.promise().timeout(1, TimeUnit.MINUTES, "timeout"));
+				deferred.resolve(1);
+			}
+		}).run();
+		for (Promise<Integer, String> result : results) {
+			Assert.assertTrue("created through the API", listener.created.contains(result));
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.Deferred;
+
+public class LeakDetectorTest {
+
+	private static class CountingLeakDetector extends LeakDetector {
+		private int collected;
+		private int overdue;
+
+		private CountingLeakDetector(double sampleRate, long threshold) {
+			super(sampleRate, threshold, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		protected void onCollected(Throwable site) {
+			collected++;
+		}
+
+		@Override
+		protected void onOverdue(Throwable site, long pendingNanos) {
+			overdue++;
+		}
+	}
+
+	@Test
+	public void testSettledPromisesAreNotTracked()
+	{
+		final CountingLeakDetector detector = new CountingLeakDetector(1.0, 60000);
+		final API api = new APIImpl(null, null, detector);
+		final Deferred<Integer, Exception> resolved = api.deferred();
+		final Deferred<Integer, Exception> rejected = api.deferred();
+		final Deferred<Integer, Exception> cancelled = api.deferred();
+		Assert.assertEquals("tracked", 3, detector.getTrackedCount());
+		resolved.resolve(1);
+		rejected.reject(new Exception());
+		cancelled.promise().cancel();
+		Assert.assertEquals("tracked", 0, detector.getTrackedCount());
+		detector.stop();
+	}
+
+	@Test
+	public void testOverduePromisesAreReportedOnce()
+	{
+		final CountingLeakDetector detector = new CountingLeakDetector(1.0, 0);
+		final Deferred<Integer, Exception> deferred = new APIImpl(null, null, detector).deferred();
+		detector.scan();
+		detector.scan();
+		Assert.assertEquals("overdue", 1, detector.overdue);
+		Assert.assertEquals("collected", 0, detector.collected);
+		deferred.resolve(1);
+		Assert.assertEquals("tracked", 0, detector.getTrackedCount());
+		detector.stop();
+	}
+
+	@Test
+	public void testCollectedPromisesAreReported() throws InterruptedException
+	{
+		final CountingLeakDetector detector = new CountingLeakDetector(1.0, 60000);
+		new APIImpl(null, null, detector).deferred();
+		for (int i = 0; i < 100 && detector.collected == 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+			detector.scan();
+		}
+		Assert.assertEquals("collected", 1, detector.collected);
+		Assert.assertEquals("tracked", 0, detector.getTrackedCount());
+		detector.stop();
+	}
+
+	@Test
+	public void testUnsampledPromisesAreNotTracked()
+	{
+		final CountingLeakDetector detector = new CountingLeakDetector(0, 0);
+		final API api = new APIImpl(null, null, detector);
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals("type", DeferredImpl.class, api.deferred().getClass());
+		}
+		Assert.assertEquals("tracked", 0, detector.getTrackedCount());
+		detector.stop();
+	}
+
+	@Test
+	public void testStop()
+	{
+		final CountingLeakDetector detector = new CountingLeakDetector(1.0, 0);
+		final API api = new APIImpl(null, null, detector);
+		api.deferred();
+		Assert.assertEquals("tracked", 1, detector.getTrackedCount());
+		detector.stop();
+		Assert.assertEquals("released", 0, detector.getTrackedCount());
+		Assert.assertEquals("not sampled", DeferredImpl.class, api.deferred().getClass());
+	}
+}
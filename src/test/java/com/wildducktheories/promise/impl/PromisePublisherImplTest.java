@@ -0,0 +1,201 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.promise.RejectedException;
+
+public class PromisePublisherImplTest {
+
+	/**
+	 * A subscriber that records its signals and requests elements only when told to.
+	 */
+	public static class TestSubscriber<T> implements Subscriber<T> {
+		private Subscription subscription;
+		private final List<T> elements = new ArrayList<T>();
+		private Throwable error;
+		private boolean completed;
+
+		@Override
+		public void onSubscribe(Subscription s) {
+			subscription = s;
+		}
+
+		@Override
+		public void onNext(T t) {
+			elements.add(t);
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			error = t;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+	/**
+	 * A publisher of the integers from 0 to size - 1 that records the demand signalled by its subscriber.
+	 */
+	public static class RangePublisher implements Publisher<Integer> {
+		private final int size;
+		private final List<Long> requests = new ArrayList<Long>();
+		private boolean cancelled;
+
+		public RangePublisher(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public void subscribe(final Subscriber<? super Integer> subscriber) {
+			subscriber.onSubscribe(new Subscription() {
+				private int next = 0;
+
+				@Override
+				public void request(long n) {
+					requests.add(n);
+					for (long i = 0; i < n && next < size && !cancelled; i++) {
+						subscriber.onNext(next++);
+					}
+					if (next == size && !cancelled) {
+						cancelled = true;
+						subscriber.onComplete();
+					}
+				}
+
+				@Override
+				public void cancel() {
+					cancelled = true;
+				}
+			});
+		}
+	}
+
+	@Test
+	public void testPublishHonoursDemand()
+	{
+		final Deferred<Integer, String> deferred = PromiseAPI.get().deferred();
+		final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+		PromiseAPI.get().asPublisher(deferred.promise()).subscribe(subscriber);
+		deferred.resolve(1);
+		Assert.assertTrue("not delivered before request", subscriber.elements.isEmpty());
+		subscriber.subscription.request(1);
+		Assert.assertEquals("delivered", 1, (int)subscriber.elements.get(0));
+		Assert.assertTrue("completed", subscriber.completed);
+		subscriber.subscription.request(1);
+		Assert.assertEquals("delivered once", 1, subscriber.elements.size());
+	}
+
+	@Test
+	public void testPublishVoid()
+	{
+		final Deferred<Void, String> deferred = PromiseAPI.get().deferred();
+		final TestSubscriber<Void> subscriber = new TestSubscriber<Void>() {
+			@Override
+			public void onNext(Void t) {
+				throw new NullPointerException("element");
+			}
+		};
+		PromiseAPI.get().asPublisher(deferred.promise()).subscribe(subscriber);
+		subscriber.subscription.request(1);
+		deferred.resolve(null);
+		Assert.assertTrue("completed", subscriber.completed);
+		Assert.assertNull("no error", subscriber.error);
+	}
+
+	@Test
+	public void testPublishRejection()
+	{
+		final Deferred<Integer, String> deferred = PromiseAPI.get().deferred();
+		final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+		PromiseAPI.get().asPublisher(deferred.promise()).subscribe(subscriber);
+		deferred.reject("failed");
+		Assert.assertEquals("rejection", "failed", ((RejectedException)subscriber.error).getRejection());
+		Assert.assertFalse("not completed", subscriber.completed);
+	}
+
+	@Test
+	public void testCancelSubscription()
+	{
+		final Deferred<Integer, String> deferred = PromiseAPI.get().deferred();
+		final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+		PromiseAPI.get().asPublisher(deferred.promise()).subscribe(subscriber);
+		subscriber.subscription.cancel();
+		Assert.assertTrue("promise cancelled", deferred.isCancelled());
+		Assert.assertNull("no error after cancel", subscriber.error);
+	}
+
+	@Test
+	public void testCollectPublisher()
+	{
+		final List<?>[] result = new List<?>[] { null };
+		final RangePublisher publisher = new RangePublisher(150);
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				PromiseAPI.get().<Integer>asStream(publisher).collect().done(new DoneCallback<List<Integer>>() {
+					@Override
+					public void onDone(List<Integer> p) {
+						result[0] = p;
+					}
+				});
+			}
+		});
+		Assert.assertEquals("count", 150, result[0].size());
+		Assert.assertEquals("last", 149, result[0].get(149));
+		for (Long n : publisher.requests) {
+			Assert.assertTrue("request bounded by batch", n <= PromiseStreamImpl.DEFAULT_BATCH_SIZE);
+		}
+	}
+
+	@Test
+	public void testTakeCancelsSubscription()
+	{
+		final RangePublisher publisher = new RangePublisher(1000);
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				PromiseAPI.get().<Integer>asStream(publisher).take(10).collect();
+			}
+		});
+		Assert.assertTrue("cancelled", publisher.cancelled);
+		Assert.assertEquals("requested", 10L, (long)publisher.requests.get(0));
+	}
+
+	@Test
+	public void testPublisherError()
+	{
+		final Throwable[] result = new Throwable[] { null };
+		final IllegalStateException error = new IllegalStateException();
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				PromiseAPI.get().<Integer>asStream(new Publisher<Integer>() {
+					@Override
+					public void subscribe(Subscriber<? super Integer> s) {
+						s.onError(error);
+					}
+				}).collect().fail(new FailCallback<Throwable>() {
+					@Override
+					public void onFail(Throwable f) {
+						result[0] = f;
+					}
+				});
+			}
+		});
+		Assert.assertSame("error", error, result[0]);
+	}
+}
@@ -0,0 +1,270 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.DeferredStream;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Filter;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+import com.wildducktheories.promise.PromiseStream;
+import com.wildducktheories.promise.Reducer;
+import com.wildducktheories.promise.StreamSource;
+
+public class PromiseStreamImplTest {
+
+	/**
+	 * A paged source of the integers from 0 to size - 1, whose pages are already resolved.
+	 */
+	public static class PagedSource implements StreamSource<Integer, String> {
+		private final int size;
+		private int next = 0;
+		private final List<Integer> requests = new ArrayList<Integer>();
+		private int closed = 0;
+
+		public PagedSource(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public Promise<List<Integer>, String> next(int max) {
+			requests.add(max);
+			final List<Integer> page = new ArrayList<Integer>();
+			while (page.size() < max && next < size) {
+				page.add(next++);
+			}
+			return PromiseAPI.get().<List<Integer>, String>deferred().resolve(page).promise();
+		}
+
+		@Override
+		public void close() {
+			closed++;
+		}
+	}
+
+	@Test
+	public void testMapFilterReduce()
+	{
+		final Integer[] result = new Integer[] { null };
+		final PagedSource source = new PagedSource(100);
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				PromiseAPI.get().stream(source, 10)
+					.filter(new Filter<Integer, Boolean>() {
+						@Override
+						public Boolean filter(Integer p) {
+							return p % 2 == 0;
+						}
+					})
+					.map(new Filter<Integer, Integer>() {
+						@Override
+						public Integer filter(Integer p) {
+							return p * 10;
+						}
+					})
+					.reduce(0, new Reducer<Integer, Integer>() {
+						@Override
+						public Integer reduce(Integer accumulator, Integer t) {
+							return accumulator + t;
+						}
+					})
+					.done(new DoneCallback<Integer>() {
+						@Override
+						public void onDone(Integer p) {
+							result[0] = p;
+						}
+					});
+			}
+		});
+		Assert.assertEquals("sum", 24500, (int)result[0]);
+		Assert.assertEquals("pages", 11, source.requests.size());
+		Assert.assertEquals("closed", 1, source.closed);
+	}
+
+	@Test
+	public void testTakeLimitsDemand()
+	{
+		final List<?>[] result = new List<?>[] { null };
+		final PagedSource source = new PagedSource(1000);
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				PromiseAPI.get().stream(source, 10).take(25).collect().done(new DoneCallback<List<Integer>>() {
+					@Override
+					public void onDone(List<Integer> p) {
+						result[0] = p;
+					}
+				});
+			}
+		});
+		Assert.assertEquals("taken", 25, result[0].size());
+		Assert.assertEquals("requests", Arrays.asList(10, 10, 5), source.requests);
+		Assert.assertEquals("closed", 1, source.closed);
+	}
+
+	@Test
+	public void testManyResolvedBatches()
+	{
+		final Integer[] result = new Integer[] { null };
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				PromiseAPI.get().stream(new PagedSource(100000), 1).reduce(0, new Reducer<Integer, Integer>() {
+					@Override
+					public Integer reduce(Integer accumulator, Integer t) {
+						return accumulator + 1;
+					}
+				}).done(new DoneCallback<Integer>() {
+					@Override
+					public void onDone(Integer p) {
+						result[0] = p;
+					}
+				});
+			}
+		});
+		Assert.assertEquals("count", 100000, (int)result[0]);
+	}
+
+	@Test
+	public void testDeferredStream() throws InterruptedException
+	{
+		final List<?>[] result = new List<?>[] { null };
+		final DeferredStream<Integer, String> deferred = PromiseAPI.get().deferredStream();
+		Assert.assertEquals("no demand until consumed", 0, deferred.getDemand());
+		final Thread producer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 1000; i++) {
+					while (deferred.getDemand() == 0) {
+						Thread.yield();
+					}
+					deferred.emit(i);
+				}
+				deferred.end();
+			}
+		};
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				deferred.stream().collect().done(new DoneCallback<List<Integer>>() {
+					@Override
+					public void onDone(List<Integer> p) {
+						result[0] = p;
+					}
+				});
+				producer.start();
+			}
+		});
+		producer.join();
+		Assert.assertEquals("count", 1000, result[0].size());
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals("order", i, result[0].get(i));
+		}
+		Assert.assertFalse("emit after end", deferred.emit(1000));
+	}
+
+	@Test
+	public void testFailure()
+	{
+		final Object[] result = new Object[] { null, null };
+		final DeferredStream<Integer, String> deferred = PromiseAPI.get().deferredStream();
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				deferred.stream().forEach(new DoneCallback<Integer>() {
+					@Override
+					public void onDone(Integer p) {
+						result[0] = p;
+					}
+				}).fail(new FailCallback<String>() {
+					@Override
+					public void onFail(String f) {
+						result[1] = f;
+					}
+				});
+				deferred.emit(1);
+				deferred.fail("failed");
+			}
+		});
+		Assert.assertEquals("emitted before failure", 1, result[0]);
+		Assert.assertEquals("failure", "failed", result[1]);
+	}
+
+	@Test
+	public void testCancel()
+	{
+		final DeferredStream<Integer, String> deferred = PromiseAPI.get().deferredStream();
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				final Promise<List<Integer>, String> collected = deferred.stream().collect();
+				Assert.assertTrue("cancelled", collected.cancel());
+			}
+		});
+		Assert.assertFalse("closed", deferred.emit(1));
+		Assert.assertEquals("no demand", 0, deferred.getDemand());
+	}
+
+	@Test
+	public void testMapThrows()
+	{
+		final RuntimeException failure = new IllegalArgumentException();
+		final Object[] result = new Object[] { null, null, null };
+		final DeferredStream<Integer, String> deferred = PromiseAPI.get().deferredStream();
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				final Promise<List<Integer>, String> collected = deferred.stream()
+					.map(new Filter<Integer, Integer>() {
+						@Override
+						public Integer filter(Integer p) {
+							throw failure;
+						}
+					})
+					.collect()
+					.done(new DoneCallback<List<Integer>>() {
+						@Override
+						public void onDone(List<Integer> p) {
+							result[0] = p;
+						}
+					})
+					.fail(new FailCallback<String>() {
+						@Override
+						public void onFail(String f) {
+							result[1] = f;
+						}
+					});
+				try {
+					deferred.emit(1);
+				} catch (IllegalArgumentException e) {
+					result[2] = e;
+				}
+				Assert.assertTrue("cancelled", collected.isCancelled());
+			}
+		});
+		Assert.assertNull("not resolved", result[0]);
+		Assert.assertNull("not rejected", result[1]);
+		Assert.assertSame("rethrown", failure, result[2]);
+		Assert.assertFalse("closed", deferred.emit(2));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testConsumedOnce()
+	{
+		PromiseAPI.get().run(new Runnable() {
+			@Override
+			public void run() {
+				final PromiseStream<Integer, String> stream = PromiseAPI.get().stream(new PagedSource(1));
+				stream.collect();
+				stream.take(1).collect();
+			}
+		});
+	}
+}
@@ -0,0 +1,61 @@
+package com.wildducktheories.promise.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.API;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.PromiseAPI;
+
+public class RaceImplTest {
+
+	@Test
+	public void testRepeatedRacesDoNotAccumulateWaiters()
+	{
+		final API api = PromiseAPI.get();
+		final Deferred<Integer, Exception> shutdown = api.deferred();
+		shutdown.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+			}
+		});
+		final int[] wins = new int[] { 0 };
+		for (int i = 0; i < 10000; i++) {
+			final Deferred<Integer, Exception> request = api.deferred();
+			api.race(request.promise(), shutdown.promise()).done(new DoneCallback<Integer>() {
+				@Override
+				public void onDone(Integer p) {
+					wins[0]++;
+				}
+			});
+			request.resolve(i);
+		}
+		Assert.assertEquals("wins", 10000, wins[0]);
+		Assert.assertFalse("still pending", shutdown.isCancelled());
+		Assert.assertEquals("waiters", 1, ((DeferredImpl<?, ?>)shutdown).getWaiterCount());
+	}
+
+	@Test
+	public void testInterleavedRacesDoNotAccumulateWaiters()
+	{
+		final API api = PromiseAPI.get();
+		final Deferred<Integer, Exception> shutdown = api.deferred();
+		shutdown.promise().done(new DoneCallback<Integer>() {
+			@Override
+			public void onDone(Integer p) {
+			}
+		});
+		Deferred<Integer, Exception> previous = null;
+		for (int i = 0; i < 10000; i++) {
+			final Deferred<Integer, Exception> request = api.deferred();
+			api.race(request.promise(), shutdown.promise());
+			if (previous != null) {
+				previous.resolve(i);
+			}
+			previous = request;
+		}
+		previous.resolve(0);
+		Assert.assertTrue("bounded", ((DeferredImpl<?, ?>)shutdown).getWaiterCount() <= 2);
+	}
+}
@@ -0,0 +1,194 @@
+package com.wildducktheories.promise.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wildducktheories.promise.Call;
+import com.wildducktheories.promise.Deferred;
+import com.wildducktheories.promise.DoneCallback;
+import com.wildducktheories.promise.FailCallback;
+import com.wildducktheories.promise.Promise;
+import com.wildducktheories.promise.PromiseAPI;
+
+public class RetryingCallImplTest {
+
+	/**
+	 * A call that is rejected a given number of times before it is resolved with the number of the attempt.
+	 */
+	public static class FlakyCall implements Call<Integer, String> {
+		private final int failures;
+		private int attempts = 0;
+
+		public FlakyCall(int failures) {
+			this.failures = failures;
+		}
+
+		@Override
+		public Promise<Integer, String> call() {
+			attempts++;
+			if (attempts <= failures) {
+				return PromiseAPI.get().rejected("attempt " + attempts, Integer.class, String.class);
+			} else {
+				return PromiseAPI.get().resolved(attempts, Integer.class, String.class);
+			}
+		}
+	}
+
+	public static class TestRetryingCall extends RetryingCallImpl<Integer, String> {
+		public TestRetryingCall(Call<Integer, String> call) {
+			super(call);
+		}
+
+		@Override
+		protected long getBaseBackoff() {
+			return 5;
+		}
+	}
+
+	private static <P> void call(final Call<P, String> call, final Object[] outcome) {
+		PromiseAPI.get().run(new Runnable() {
+			public void run() {
+				call.call()
+					.done(new DoneCallback<P>() {
+						@Override
+						public void onDone(P p) {
+							outcome[0] = p;
+						}
+					})
+					.fail(new FailCallback<String>() {
+						@Override
+						public void onFail(String f) {
+							outcome[1] = f;
+						}
+					});
+			}
+		});
+	}
+
+	@Test
+	public void testRetry()
+	{
+		final Object[] outcome = new Object[] { null, null };
+		call(new TestRetryingCall(new FlakyCall(2)), outcome);
+		Assert.assertEquals("resolved by third attempt", 3, outcome[0]);
+	}
+
+	@Test
+	public void testAttemptsExhausted()
+	{
+		final Object[] outcome = new Object[] { null, null };
+		call(new TestRetryingCall(new FlakyCall(3)), outcome);
+		Assert.assertNull("not resolved", outcome[0]);
+		Assert.assertEquals("last failure", "attempt 3", outcome[1]);
+	}
+
+	@Test
+	public void testNotRetryable()
+	{
+		final Object[] outcome = new Object[] { null, null };
+		final FlakyCall flaky = new FlakyCall(2);
+		call(new TestRetryingCall(flaky) {
+			@Override
+			protected boolean isRetryable(String failure) {
+				return false;
+			}
+		}, outcome);
+		Assert.assertEquals("first failure", "attempt 1", outcome[1]);
+		Assert.assertEquals("attempts", 1, flaky.attempts);
+	}
+
+	@Test
+	public void testHedge()
+	{
+		final List<Deferred<Integer, String>> slow = new ArrayList<Deferred<Integer, String>>();
+		final boolean[] stalled = new boolean[] { false };
+		final Call<Integer, String> call = new Call<Integer, String>() {
+			@Override
+			public Promise<Integer, String> call() {
+				if (stalled[0]) {
+					stalled[0] = false;
+					final Deferred<Integer, String> deferred = PromiseAPI.get().deferred();
+					slow.add(deferred);
+					return deferred.promise();
+				}
+				return PromiseAPI.get().resolved(2, Integer.class, String.class);
+			}
+		};
+		final RetryingCallImpl<Integer, String> hedged = new TestRetryingCall(call) {
+			@Override
+			protected double getHedgePercentile() {
+				return 0.95;
+			}
+		};
+
+		// record enough latencies to enable hedging.
+		for (int i = 0; i < 16; i++) {
+			call(hedged, new Object[] { null, null });
+		}
+
+		final Object[] outcome = new Object[] { null, null };
+		stalled[0] = true;
+		call(hedged, outcome);
+		Assert.assertEquals("resolved by hedge", 2, outcome[0]);
+		Assert.assertEquals("stalled", 1, slow.size());
+		Assert.assertTrue("stalled attempt cancelled", slow.get(0).isCancelled());
+	}
+
+	@Test
+	public void testSubMillisecondHedgeThreshold()
+	{
+		final RetryingCallImpl<Integer, String> hedged = new TestRetryingCall(new FlakyCall(0)) {
+			@Override
+			protected double getHedgePercentile() {
+				return 0.95;
+			}
+		};
+
+		// record more latencies, all far below 1ms, than the ring holds.
+		for (int i = 0; i < 300; i++) {
+			call(hedged, new Object[] { null, null });
+		}
+		final long threshold = hedged.getHedgeThreshold();
+		Assert.assertTrue("not truncated to 0", threshold > 0);
+		Assert.assertTrue("below 1ms", threshold < 1000000);
+	}
+
+	@Test
+	public void testRetryThrows()
+	{
+		final RuntimeException failure = new IllegalStateException();
+		final Object[] result = new Object[] { null, null, null };
+		final Call<Integer, String> call = new Call<Integer, String>() {
+			private int attempts = 0;
+
+			@Override
+			public Promise<Integer, String> call() {
+				if (++attempts > 1) {
+					throw failure;
+				}
+				return PromiseAPI.get().rejected("attempt 1", Integer.class, String.class);
+			}
+		};
+		try {
+			PromiseAPI.get().run(new Runnable() {
+				public void run() {
+					result[0] = new TestRetryingCall(call).call()
+						.fail(new FailCallback<String>() {
+							@Override
+							public void onFail(String f) {
+								result[1] = f;
+							}
+						});
+				}
+			});
+		} catch (IllegalStateException e) {
+			result[2] = e;
+		}
+		Assert.assertSame("rethrown", failure, result[2]);
+		Assert.assertTrue("cancelled", ((Promise<?, ?>)result[0]).isCancelled());
+		Assert.assertNull("not rejected", result[1]);
+	}
+}